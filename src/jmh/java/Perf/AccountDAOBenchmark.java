@@ -0,0 +1,73 @@
+package Perf;
+
+import DAO.AccountDAO;
+import Model.Account;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every AccountDAO method against a seeded database (see BenchmarkDatabase).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountDAOBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    public int messages;
+
+    BenchmarkDatabase database;
+    AccountDAO accountDAO;
+
+    //Usernames for registered accounts, unique across iterations of the trial
+    private final AtomicLong nextUsername = new AtomicLong(System.nanoTime());
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        database = BenchmarkDatabase.open(messages);
+        accountDAO = new AccountDAO();
+    }
+
+    @TearDown(Level.Iteration)
+    public void restore(){
+        database.restore();
+    }
+
+    @Benchmark
+    public Account registerAccount(){
+        return accountDAO.registerAccount(new Account("bench" + nextUsername.getAndIncrement(), BenchmarkDatabase.PASSWORD));
+    }
+
+    @Benchmark
+    public Account searchAccountByID(){
+        return accountDAO.searchAccountByID(database.randomAccountId());
+    }
+
+    @Benchmark
+    public boolean accountExists(){
+        return accountDAO.accountExists(database.randomAccountId());
+    }
+
+    @Benchmark
+    public Account searchAccountByUsername(){
+        return accountDAO.searchAccountByUsername(database.randomUsername());
+    }
+}
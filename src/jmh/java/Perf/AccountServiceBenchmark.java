@@ -0,0 +1,74 @@
+package Perf;
+
+import Model.Account;
+import Service.AccountService;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every AccountService operation against a seeded database (see BenchmarkDatabase), including its validation and the
+ * known account id cache.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountServiceBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    public int messages;
+
+    BenchmarkDatabase database;
+    AccountService accountService;
+
+    //Usernames for registered accounts, unique across iterations of the trial
+    private final AtomicLong nextUsername = new AtomicLong(System.nanoTime());
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        database = BenchmarkDatabase.open(messages);
+        accountService = new AccountService();
+    }
+
+    @TearDown(Level.Iteration)
+    public void restore(){
+        database.restore();
+    }
+
+    @Benchmark
+    public Account registerNewAccount(){
+        return accountService.registerNewAccount(new Account("bench" + nextUsername.getAndIncrement(), BenchmarkDatabase.PASSWORD));
+    }
+
+    @Benchmark
+    public Account registerTakenUsername(){
+        return accountService.registerNewAccount(new Account(database.randomUsername(), BenchmarkDatabase.PASSWORD));
+    }
+
+    @Benchmark
+    public Account loginAccount(){
+        return accountService.loginAccount(new Account(database.randomUsername(), BenchmarkDatabase.PASSWORD));
+    }
+
+    @Benchmark
+    public Account loginWrongPassword(){
+        return accountService.loginAccount(new Account(database.randomUsername(), "wrong password"));
+    }
+}
@@ -0,0 +1,252 @@
+package Perf;
+
+import DAO.H2MessageDAO;
+import DAO.MappedMessageDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.PageCursor;
+import Util.SchemaMigrator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * The H2 database the benchmarks run against, seeded with a given number of messages.
+ *
+ * Each size gets its own database file (./h2/bench-{messages}), separate from the one the tests reset, and the seed is
+ * kept between runs: a database is only dropped and seeded again if its row counts don't match. Seeding 10M messages
+ * takes a few minutes the first time.
+ *
+ * The seed has one account per 100 messages (at most 10000 accounts), named user1, user2, ... with the password
+ * "password". Messages are spread round-robin over the accounts and posted one second apart, so message ids and
+ * time_posted_epoch both run from 1 to the size. Benchmarks that add or remove rows call restore() after each
+ * iteration to bring the database back to the seed.
+ *
+ * The same messages can also be benchmarked in a memory-mapped store (see openMessageDAO()), in ./h2/bench-{messages}-mmap,
+ * which is copied from the database when its message count doesn't match.
+ *
+ * ConnectionUtil reads db.url once, so a JVM can only open one database. Keep forks at 1 or more (the default), which
+ * gives every @Param combination its own JVM.
+ */
+public class BenchmarkDatabase {
+
+    public static final String PASSWORD = "password";
+    public static final long FIRST_EPOCH = 1669947792;
+
+    private static final int MESSAGES_PER_ACCOUNT = 100;
+    private static final int MAX_ACCOUNTS = 10000;
+    private static final int SEED_CHUNK = 1000000;
+    private static final int COPY_CHUNK = 10000;
+
+    private static BenchmarkDatabase opened;
+
+    private final int messages;
+    private final int accounts;
+    private MappedMessageDAO mappedMessages;
+
+    private BenchmarkDatabase(int messages){
+        this.messages = messages;
+        this.accounts = Math.max(1, Math.min(MAX_ACCOUNTS, messages / MESSAGES_PER_ACCOUNT));
+    }
+
+    /**
+     * Points ConnectionUtil at the database for the given size, seeding it if needed.
+     * @param messages The number of messages to seed.
+     * @return The seeded database.
+     */
+    public static synchronized BenchmarkDatabase open(int messages){
+        if(opened != null){
+            if(opened.messages != messages)
+                throw new IllegalStateException("This JVM already benchmarks " + opened.messages + " messages; run with forks >= 1");
+            return opened;
+        }
+
+        System.setProperty("db.url", "jdbc:h2:./h2/bench-" + messages + ";");
+        BenchmarkDatabase database = new BenchmarkDatabase(messages);
+        try{
+            SchemaMigrator.migrate();
+            if(!database.isSeeded())
+                database.seed();
+        }
+        catch(SQLException e){
+            throw new IllegalStateException("Could not seed the benchmark database", e);
+        }
+        opened = database;
+        return database;
+    }
+
+    /**
+     * Opens the message store to benchmark.
+     * @param storage "h2" for the seeded database, or "mmap" for a memory-mapped store holding the same messages.
+     * @return The store. The memory-mapped store is opened once per JVM, seeded if needed, and shared.
+     */
+    public synchronized MessageDAO openMessageDAO(String storage){
+        if(storage.equals("h2"))
+            return new H2MessageDAO();
+        if(!storage.equals("mmap"))
+            throw new IllegalArgumentException("Unknown storage: " + storage);
+
+        if(mappedMessages == null){
+            Path directory = Paths.get("./h2/bench-" + messages + "-mmap");
+            System.setProperty("messages.storage.dir", directory.toString());
+            mappedMessages = MappedMessageDAO.fromSystemProperties();
+            if(mappedMessages.getMessageCount() != messages || mappedMessages.getMessageByMessageId(messages) == null){
+                mappedMessages.close();
+                deleteFiles(directory);
+                mappedMessages = MappedMessageDAO.fromSystemProperties();
+                copyMessages(mappedMessages);
+            }
+        }
+        return mappedMessages;
+    }
+
+    private static void deleteFiles(Path directory){
+        try(Stream<Path> files = Files.list(directory)){
+            for(Path file : (Iterable<Path>) files::iterator)
+                Files.delete(file);
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copies the seeded messages into an empty store, in message_id order so they keep their ids.
+     */
+    private void copyMessages(MessageDAO store){
+        System.out.println("Copying " + messages + " messages into the memory-mapped store");
+        H2MessageDAO database = new H2MessageDAO();
+        List<Message> page = database.getMessagePage(PageCursor.first(false), COPY_CHUNK);
+        while(!page.isEmpty()){
+            List<Message> created = store.createNewMessages(new ArrayList<>(page));
+            Message last = page.get(page.size() - 1);
+            if(created == null || created.get(created.size() - 1).getMessage_id() != last.getMessage_id())
+                throw new IllegalStateException("Could not copy the benchmark messages");
+            page = database.getMessagePage(PageCursor.after(false, 0, last.getMessage_id()), COPY_CHUNK);
+        }
+    }
+
+    private boolean isSeeded() throws SQLException{
+        try(Connection connection = ConnectionUtil.getConnection(); Statement statement = connection.createStatement()){
+            return count(statement, "SELECT COUNT(*) FROM account") == accounts
+                    && count(statement, "SELECT COUNT(*) FROM message") == messages;
+        }
+    }
+
+    private long count(Statement statement, String sql) throws SQLException{
+        try(ResultSet resultSet = statement.executeQuery(sql)){
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private void seed() throws SQLException{
+        System.out.println("Seeding " + messages + " messages from " + accounts + " accounts");
+        try(Connection connection = ConnectionUtil.getConnection()){
+            try(Statement statement = connection.createStatement()){
+                statement.execute("DROP ALL OBJECTS");
+            }
+        }
+        SchemaMigrator.migrate();
+
+        try(Connection connection = ConnectionUtil.getConnection()){
+            connection.setAutoCommit(false);
+            try(PreparedStatement insertAccounts = connection.prepareStatement(
+                    "INSERT INTO account (username, password) SELECT 'user' || X, ? FROM SYSTEM_RANGE(1, ?)")){
+                insertAccounts.setString(1, PASSWORD);
+                insertAccounts.setInt(2, accounts);
+                insertAccounts.executeUpdate();
+            }
+            connection.commit();
+
+            //Inserted in chunks so no single transaction has to hold millions of rows
+            try(PreparedStatement insertMessages = connection.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) " +
+                    "SELECT MOD(X - 1, ?) + 1, 'message ' || X, ? + X - 1 FROM SYSTEM_RANGE(?, ?)")){
+                for(int first = 1; first <= messages; first += SEED_CHUNK){
+                    insertMessages.setInt(1, accounts);
+                    insertMessages.setLong(2, FIRST_EPOCH);
+                    insertMessages.setInt(3, first);
+                    insertMessages.setInt(4, Math.min(messages, first + SEED_CHUNK - 1));
+                    insertMessages.executeUpdate();
+                    connection.commit();
+                }
+            }
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Removes every account and message added since the seed, from the database and the memory-mapped store if it is
+     * open. Update benchmarks write back each message's seeded text, so updated rows need no restoring.
+     */
+    public void restore(){
+        try(Connection connection = ConnectionUtil.getConnection(); Statement statement = connection.createStatement()){
+            statement.executeUpdate("DELETE FROM message WHERE message_id > " + messages);
+            statement.executeUpdate("DELETE FROM account WHERE account_id > " + accounts);
+        }
+        catch(SQLException e){
+            throw new IllegalStateException("Could not restore the benchmark database", e);
+        }
+
+        if(mappedMessages != null){
+            List<Message> added;
+            while(!(added = mappedMessages.getMessagePage(PageCursor.after(false, 0, messages), COPY_CHUNK)).isEmpty()){
+                List<Integer> ids = new ArrayList<>(added.size());
+                for(Message message : added)
+                    ids.add(message.getMessage_id());
+                mappedMessages.deleteMessages(ids, 0);
+            }
+        }
+    }
+
+    public int getMessages(){
+        return messages;
+    }
+
+    public int getAccounts(){
+        return accounts;
+    }
+
+    /**
+     * @return The id of a random seeded message.
+     */
+    public int randomMessageId(){
+        return ThreadLocalRandom.current().nextInt(messages) + 1;
+    }
+
+    /**
+     * @return The id of a random seeded account.
+     */
+    public int randomAccountId(){
+        return ThreadLocalRandom.current().nextInt(accounts) + 1;
+    }
+
+    /**
+     * @param message_id The id of a seeded message.
+     * @return The text the message was seeded with.
+     */
+    public static String seededText(int message_id){
+        return "message " + message_id;
+    }
+
+    /**
+     * @return The username of a random seeded account.
+     */
+    public String randomUsername(){
+        return "user" + randomAccountId();
+    }
+}
@@ -0,0 +1,77 @@
+package Perf;
+
+import DAO.H2MessageDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.GroupCommitWriter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Concurrent message inserts, each committed on its own versus through a GroupCommitWriter. Run with -t to change the
+ * number of writer threads; a single thread shows the cost of the linger time.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class GroupCommitBenchmark {
+
+    @Param({"100000"})
+    public int messages;
+
+    @Param({"64"})
+    public int maxBatchSize;
+
+    @Param({"200"})
+    public long lingerMicros;
+
+    BenchmarkDatabase database;
+    MessageDAO messageDAO;
+    GroupCommitWriter groupCommitWriter;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        database = BenchmarkDatabase.open(messages);
+        messageDAO = new H2MessageDAO();
+        groupCommitWriter = new GroupCommitWriter(messageDAO, maxBatchSize, lingerMicros);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown(){
+        groupCommitWriter.shutdown();
+    }
+
+    @TearDown(Level.Iteration)
+    public void restore(){
+        database.restore();
+    }
+
+    @Benchmark
+    public Message commitEach(){
+        return messageDAO.createNewMessage(new Message(database.randomAccountId(), "benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+    }
+
+    @Benchmark
+    public Message groupCommit(){
+        return groupCommitWriter.insert(new Message(database.randomAccountId(), "benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+    }
+}
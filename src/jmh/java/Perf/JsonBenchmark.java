@@ -0,0 +1,65 @@
+package Perf;
+
+import Model.Message;
+import Util.JsonCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a message body and writing the response, the way the handlers used to (a new ObjectMapper per request, the
+ * body decoded to a String and the result serialized to a String for ctx.json) against the shared JsonCodec reading
+ * bytes and writing to a stream, with and without Blackbird. Run with -prof gc to compare allocation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonBenchmark {
+
+    final byte[] body = "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}".getBytes(StandardCharsets.UTF_8);
+    final Message message = new Message(1, 1, "hello message", 1669947792);
+
+    final JsonCodec codec = new JsonCodec(false);
+    final JsonCodec blackbirdCodec = new JsonCodec(true);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+
+    @Benchmark
+    public String mapperPerRequest() throws IOException{
+        ObjectMapper om = new ObjectMapper();
+        Message newMessage = om.readValue(new String(body, StandardCharsets.UTF_8), Message.class);
+        return om.writeValueAsString(newMessage);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream sharedCodec() throws IOException{
+        return roundTrip(codec);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream sharedCodecBlackbird() throws IOException{
+        return roundTrip(blackbirdCodec);
+    }
+
+    private ByteArrayOutputStream roundTrip(JsonCodec json) throws IOException{
+        Message newMessage = json.getMessageReader().readValue(body);
+        out.reset();
+        json.getMessageWriter().writeValue(out, newMessage);
+        return out;
+    }
+}
@@ -0,0 +1,424 @@
+package Perf;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.H2MessageDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.ServerThreads;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.Javalin;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * An open-loop HTTP load generator for every route registered in SocialMediaController.startAPI().
+ *
+ * It seeds a separate database, starts the app on a random local port and sends requests at a fixed arrival rate,
+ * choosing each request's route from a weighted mix. Requests are sent on schedule whether or not earlier ones have
+ * finished, and each response time is measured from the time the request was scheduled to be sent, not from when it
+ * actually went out. A server that stalls therefore shows up in the histograms as every request that should have been
+ * sent during the stall waiting for it (no coordinated omission). The time from the actual send is recorded as well, as
+ * the service time.
+ *
+ * Settings are key=value arguments (defaults in DEFAULTS):
+ *  rate: requests per second
+ *  duration / warmup: seconds measured, and seconds run before measuring
+ *  mix: route weights, e.g. getMessage=50,createMessage=10 (routes left out are not sent)
+ *  accounts / messages: the seeded data
+ *  maxInFlight: outstanding requests allowed before new ones are dropped (and counted) instead of sent
+ *  report: where the JSON report is written
+ *  dbUrl: the H2 database to seed and serve from, which is reset first
+ *
+ * The report has, per route and in total, request and status counts, response time and service time percentiles in
+ * microseconds, and the full response time histogram (HdrHistogram, compressed and base64 encoded) so runs can be
+ * compared or merged exactly. It also records the Java version and whether the server handled requests on virtual
+ * threads (-Dserver.virtualThreads=true, see ServerThreads), so platform and virtual thread runs can be told apart.
+ */
+public class LoadGenerator {
+
+    static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    static {
+        DEFAULTS.put("rate", "500");
+        DEFAULTS.put("duration", "30");
+        DEFAULTS.put("warmup", "5");
+        DEFAULTS.put("mix", "register=2,login=8,createMessage=15,getAllMessages=5,getMessage=35,updateMessage=10,deleteMessage=5,getAccountMessages=20");
+        DEFAULTS.put("accounts", "100");
+        DEFAULTS.put("messages", "1000");
+        DEFAULTS.put("maxInFlight", "1000");
+        DEFAULTS.put("report", "target/load-report.json");
+        DEFAULTS.put("dbUrl", "jdbc:h2:./h2/load;");
+    }
+
+    static final String PASSWORD = "password";
+    static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    /**
+     * The routes of the app, named by their path templates.
+     */
+    enum Route {
+        register("POST /register"),
+        login("POST /login"),
+        createMessage("POST /messages"),
+        getAllMessages("GET /messages"),
+        getMessage("GET /messages/{message_id}"),
+        updateMessage("PATCH /messages/{message_id}"),
+        deleteMessage("DELETE /messages/{message_id}"),
+        getAccountMessages("GET /accounts/{account_id}/messages");
+
+        final String template;
+
+        Route(String template){
+            this.template = template;
+        }
+    }
+
+    /**
+     * What was measured for one route.
+     */
+    static class RouteStats {
+        final Histogram responseTime = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        final Histogram serviceTime = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        final Map<Integer, LongAdder> statusCounts = new TreeMap<>();
+        final LongAdder errors = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+
+        RouteStats(){
+            for(int status : new int[]{200, 304, 400, 401, 404, 500, 503})
+                statusCounts.put(status, new LongAdder());
+        }
+
+        void record(int status, long responseNanos, long serviceNanos){
+            responseTime.recordValue(Math.min(HIGHEST_MICROS, Math.max(1, TimeUnit.NANOSECONDS.toMicros(responseNanos))));
+            serviceTime.recordValue(Math.min(HIGHEST_MICROS, Math.max(1, TimeUnit.NANOSECONDS.toMicros(serviceNanos))));
+            LongAdder count = statusCounts.get(status);
+            if(count != null)
+                count.increment();
+            else
+                errors.increment();
+        }
+    }
+
+    private final Map<String, String> settings;
+    private final Route[] routes;
+    private final int[] cumulativeWeights;
+    private final int accounts;
+    private final int seededMessages;
+    private final int maxInFlight;
+
+    private final Map<Route, RouteStats> stats = new LinkedHashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxMessageId = new AtomicInteger();
+    private final AtomicLong nextUsername = new AtomicLong();
+
+    private HttpClient client;
+    private String baseUrl;
+
+    LoadGenerator(Map<String, String> settings){
+        this.settings = settings;
+        this.accounts = Integer.parseInt(settings.get("accounts"));
+        this.seededMessages = Integer.parseInt(settings.get("messages"));
+        this.maxInFlight = Integer.parseInt(settings.get("maxInFlight"));
+
+        List<Route> mixRoutes = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int total = 0;
+        for(String entry : settings.get("mix").split(",")){
+            String[] parts = entry.trim().split("=");
+            int weight = Integer.parseInt(parts[1].trim());
+            if(weight <= 0)
+                continue;
+            total += weight;
+            mixRoutes.add(Route.valueOf(parts[0].trim()));
+            weights.add(total);
+        }
+        if(mixRoutes.isEmpty())
+            throw new IllegalArgumentException("The mix has no routes: " + settings.get("mix"));
+
+        this.routes = mixRoutes.toArray(new Route[0]);
+        this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+        for(Route route : routes)
+            stats.put(route, new RouteStats());
+    }
+
+    public static void main(String[] args) throws Exception{
+        Map<String, String> settings = new LinkedHashMap<>(DEFAULTS);
+        for(String arg : args){
+            int equals = arg.indexOf('=');
+            if(equals < 0 || !DEFAULTS.containsKey(arg.substring(0, equals)))
+                throw new IllegalArgumentException("Unknown setting " + arg + ", expected one of " + DEFAULTS.keySet());
+            settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        //Must be set before ConnectionUtil is first used
+        System.setProperty("db.url", settings.get("dbUrl"));
+        new LoadGenerator(settings).run();
+        System.exit(0);
+    }
+
+    void run() throws IOException, InterruptedException{
+        seed();
+
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build();
+
+        Instant startedAt = Instant.now();
+        long interval = TimeUnit.SECONDS.toNanos(1) / Long.parseLong(settings.get("rate"));
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(Long.parseLong(settings.get("warmup")));
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(Long.parseLong(settings.get("duration")));
+        System.out.println("Sending " + settings.get("rate") + " requests/s to " + baseUrl + " for " + settings.get("warmup")
+                + "s warmup + " + settings.get("duration") + "s");
+
+        //Open loop: request i is due at start + i * interval, however long earlier requests take
+        long sent = 0;
+        for(long due = start; due < end; due = start + (++sent) * interval){
+            long wait;
+            while((wait = due - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+            send(pickRoute(), due, due >= measureFrom);
+        }
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while(inFlight.get() > 0 && System.nanoTime() < drainDeadline)
+            Thread.sleep(10);
+        app.stop();
+
+        writeReport(startedAt, sent);
+    }
+
+    /**
+     * Resets the database and fills it with the seeded accounts and messages.
+     */
+    private void seed(){
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accountDAO = new AccountDAO();
+        for(int i = 1; i <= accounts; i++)
+            accountDAO.registerAccount(new Account("loaduser" + i, PASSWORD));
+
+        MessageDAO messageDAO = new H2MessageDAO();
+        List<Message> batch = new ArrayList<>();
+        for(int i = 1; i <= seededMessages; i++){
+            batch.add(new Message(randomAccountId(), "load message " + i, 1669947792L + i));
+            if(batch.size() == 1000 || i == seededMessages){
+                messageDAO.createNewMessages(batch);
+                batch.clear();
+            }
+        }
+        maxMessageId.set(seededMessages);
+    }
+
+    private Route pickRoute(){
+        int ticket = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for(int i = 0; i < routes.length; i++)
+            if(ticket < cumulativeWeights[i])
+                return routes[i];
+        return routes[routes.length - 1];
+    }
+
+    private int randomAccountId(){
+        return ThreadLocalRandom.current().nextInt(accounts) + 1;
+    }
+
+    private int randomMessageId(){
+        return ThreadLocalRandom.current().nextInt(Math.max(1, maxMessageId.get())) + 1;
+    }
+
+    /**
+     * @return A message created during the run if there is one, so that deletes don't drain the seed.
+     */
+    private int createdMessageId(){
+        int max = maxMessageId.get();
+        if(max <= seededMessages)
+            return randomMessageId();
+        return seededMessages + 1 + ThreadLocalRandom.current().nextInt(max - seededMessages);
+    }
+
+    private HttpRequest buildRequest(Route route){
+        HttpRequest.Builder builder;
+        switch(route){
+            case register:
+                builder = post("/register", "{\"username\":\"load" + nextUsername.incrementAndGet() + "\",\"password\":\"" + PASSWORD + "\"}");
+                break;
+            case login:
+                builder = post("/login", "{\"username\":\"loaduser" + randomAccountId() + "\",\"password\":\"" + PASSWORD + "\"}");
+                break;
+            case createMessage:
+                builder = post("/messages", "{\"posted_by\":" + randomAccountId() + ",\"message_text\":\"load test message\",\"time_posted_epoch\":1669947792}");
+                break;
+            case getAllMessages:
+                builder = HttpRequest.newBuilder(uri("/messages")).GET();
+                break;
+            case getMessage:
+                builder = HttpRequest.newBuilder(uri("/messages/" + randomMessageId())).GET();
+                break;
+            case updateMessage:
+                builder = HttpRequest.newBuilder(uri("/messages/" + randomMessageId()))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated by load test\"}"));
+                break;
+            case deleteMessage:
+                builder = HttpRequest.newBuilder(uri("/messages/" + createdMessageId())).DELETE();
+                break;
+            default:
+                builder = HttpRequest.newBuilder(uri("/accounts/" + randomAccountId() + "/messages")).GET();
+        }
+        return builder.timeout(Duration.ofSeconds(30)).build();
+    }
+
+    private HttpRequest.Builder post(String path, String body){
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private URI uri(String path){
+        return URI.create(baseUrl + path);
+    }
+
+    private void send(Route route, long due, boolean measured){
+        RouteStats routeStats = stats.get(route);
+        if(inFlight.incrementAndGet() > maxInFlight){
+            inFlight.decrementAndGet();
+            if(measured)
+                routeStats.dropped.increment();
+            return;
+        }
+
+        HttpRequest request = buildRequest(route);
+        long sentAt = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            long done = System.nanoTime();
+            try{
+                if(measured)
+                    routeStats.record(response == null ? -1 : response.statusCode(), done - due, done - sentAt);
+                if(route == Route.createMessage && response != null && response.statusCode() == 200)
+                    noteCreated(response.body());
+            }
+            finally{
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    private void noteCreated(String body){
+        try{
+            int messageId = mapper.readTree(body).path("message_id").asInt();
+            maxMessageId.accumulateAndGet(messageId, Math::max);
+        }
+        catch(IOException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void writeReport(Instant startedAt, long sent) throws IOException{
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("settings", settings);
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("virtualThreads", ServerThreads.isVirtual());
+        report.put("scheduledRequests", sent);
+
+        Histogram totalResponse = new Histogram(HIGHEST_MICROS, 3);
+        Histogram totalService = new Histogram(HIGHEST_MICROS, 3);
+        long totalDropped = 0, totalErrors = 0;
+        Map<String, Object> routeReports = new LinkedHashMap<>();
+        for(Map.Entry<Route, RouteStats> entry : stats.entrySet()){
+            RouteStats routeStats = entry.getValue();
+            totalResponse.add(routeStats.responseTime);
+            totalService.add(routeStats.serviceTime);
+            totalDropped += routeStats.dropped.sum();
+            totalErrors += routeStats.errors.sum();
+
+            Map<String, Object> routeReport = new LinkedHashMap<>();
+            Map<String, Long> statuses = new LinkedHashMap<>();
+            routeStats.statusCounts.forEach((status, count) -> {
+                if(count.sum() > 0)
+                    statuses.put(String.valueOf(status), count.sum());
+            });
+            routeReport.put("requests", routeStats.responseTime.getTotalCount());
+            routeReport.put("statusCounts", statuses);
+            routeReport.put("errors", routeStats.errors.sum());
+            routeReport.put("dropped", routeStats.dropped.sum());
+            routeReport.put("responseTimeMicros", summarize(routeStats.responseTime));
+            routeReport.put("serviceTimeMicros", summarize(routeStats.serviceTime));
+            routeReport.put("responseTimeHistogram", encode(routeStats.responseTime));
+            routeReports.put(entry.getKey().template, routeReport);
+        }
+
+        Map<String, Object> total = new LinkedHashMap<>();
+        total.put("requests", totalResponse.getTotalCount());
+        total.put("throughputPerSecond", totalResponse.getTotalCount() / Double.parseDouble(settings.get("duration")));
+        total.put("errors", totalErrors);
+        total.put("dropped", totalDropped);
+        total.put("responseTimeMicros", summarize(totalResponse));
+        total.put("serviceTimeMicros", summarize(totalService));
+        total.put("responseTimeHistogram", encode(totalResponse));
+        report.put("total", total);
+        report.put("routes", routeReports);
+
+        File reportFile = new File(settings.get("report"));
+        if(reportFile.getParentFile() != null)
+            reportFile.getParentFile().mkdirs();
+        mapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+
+        System.out.printf("%-36s %8s %9s %9s %9s %9s %9s%n", "route", "requests", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for(Map.Entry<Route, RouteStats> entry : stats.entrySet())
+            printRow(entry.getKey().template, entry.getValue().responseTime);
+        printRow("total", totalResponse);
+        System.out.println("Dropped " + totalDropped + ", errors " + totalErrors + ". Report written to " + reportFile.getPath());
+    }
+
+    private static Map<String, Object> summarize(Histogram histogram){
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("min", histogram.getTotalCount() == 0 ? 0 : histogram.getMinValue());
+        summary.put("mean", histogram.getMean());
+        for(double percentile : new double[]{50, 90, 99, 99.9, 99.99})
+            summary.put("p" + (percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile)),
+                    histogram.getValueAtPercentile(percentile));
+        summary.put("max", histogram.getMaxValue());
+        return summary;
+    }
+
+    private static String encode(Histogram histogram){
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        byte[] bytes = new byte[length];
+        buffer.flip();
+        buffer.get(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static void printRow(String name, Histogram histogram){
+        System.out.printf("%-36s %8d %9d %9d %9d %9d %9d%n", name, histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+    }
+}
@@ -0,0 +1,88 @@
+package Perf;
+
+import Cache.KnownAccountIds;
+import DAO.AccountDAO;
+import DAO.H2MessageDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Util.Bulkhead;
+import Util.PasswordHasher;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Login latency under concurrent load, for a range of PBKDF2 work factors. Eight threads log in at once while two
+ * threads look up messages, so the SampleTime percentiles show both the login p99 and whether hashing, confined to its
+ * CPU-sized executor, holds up unrelated database reads.
+ *
+ * This calls the service directly. To see whether logins hold up reads through the server's bulkheads, run logins and
+ * reads together over HTTP with LoadGenerator, e.g. -Dload.args="rate=100 mix=login=5,getMessage=95".
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoginBenchmark {
+
+    @Param({"1000"})
+    public int messages;
+
+    @Param({"100000", "600000"})
+    public int iterations;
+
+    BenchmarkDatabase database;
+    AccountService accountService;
+    PasswordHasher passwordHasher;
+    MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        database = BenchmarkDatabase.open(messages);
+        passwordHasher = new PasswordHasher(iterations, new Bulkhead("hash", Runtime.getRuntime().availableProcessors(), 64));
+        accountService = new AccountService(new AccountDAO(), new KnownAccountIds(), passwordHasher);
+        messageDAO = new H2MessageDAO();
+
+        //Hash every seeded password with this work factor before measuring
+        for(int account = 1; account <= database.getAccounts(); account++)
+            accountService.loginAccount(new Account("user" + account, BenchmarkDatabase.PASSWORD));
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown(){
+        passwordHasher.getExecutor().shutdown();
+    }
+
+    @Benchmark
+    @Group("concurrentLogin")
+    @GroupThreads(8)
+    public Account login(){
+        return accountService.loginAccount(new Account(database.randomUsername(), BenchmarkDatabase.PASSWORD));
+    }
+
+    @Benchmark
+    @Group("concurrentLogin")
+    @GroupThreads(2)
+    public Message getMessageByMessageId(){
+        return messageDAO.getMessageByMessageId(database.randomMessageId());
+    }
+}
@@ -0,0 +1,161 @@
+package Perf;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.PageCursor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Every MessageDAO method against a seeded database (see BenchmarkDatabase), in each storage engine: the H2 message
+ * table, and the memory-mapped store holding the same messages (see MappedMessageDAO).
+ *
+ * Throughput and sampled latency (mean and percentiles) are measured for each method; add -prof gc for the allocation
+ * rate. The unpaged list methods read the whole table, so at 10M messages they need the larger heap set below.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class MessageDAOBenchmark {
+
+    static final int PAGE_SIZE = 100;
+    static final int BATCH_SIZE = 64;
+
+    @Param({"1000", "100000", "10000000"})
+    public int messages;
+
+    @Param({"h2", "mmap"})
+    public String storage;
+
+    BenchmarkDatabase database;
+    MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        database = BenchmarkDatabase.open(messages);
+        messageDAO = database.openMessageDAO(storage);
+    }
+
+    @TearDown(Level.Iteration)
+    public void restore(){
+        database.restore();
+    }
+
+    /**
+     * A message created just before each call of the delete benchmark, so that deleting never touches the seed.
+     */
+    @State(Scope.Thread)
+    public static class NewMessage {
+        Message message;
+
+        @Setup(Level.Invocation)
+        public void create(MessageDAOBenchmark benchmark){
+            message = benchmark.messageDAO.createNewMessage(
+                    new Message(benchmark.database.randomAccountId(), "to be deleted", BenchmarkDatabase.FIRST_EPOCH));
+        }
+    }
+
+    @Benchmark
+    public Message createNewMessage(){
+        return messageDAO.createNewMessage(new Message(database.randomAccountId(), "benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+    }
+
+    @Benchmark
+    public List<Message> createNewMessages(){
+        List<Message> newMessages = new ArrayList<>(BATCH_SIZE);
+        for(int i = 0; i < BATCH_SIZE; i++)
+            newMessages.add(new Message(database.randomAccountId(), "benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+        return messageDAO.createNewMessages(newMessages);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages(){
+        return messageDAO.getAllMessages();
+    }
+
+    @Benchmark
+    public List<Message> getNewestMessages(){
+        return messageDAO.getNewestMessages(PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Message getMessageByMessageId(){
+        return messageDAO.getMessageByMessageId(database.randomMessageId());
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByIds(){
+        List<Integer> ids = new ArrayList<>(PAGE_SIZE);
+        for(int i = 0; i < PAGE_SIZE; i++)
+            ids.add(database.randomMessageId());
+        return messageDAO.getMessagesByIds(ids);
+    }
+
+    @Benchmark
+    public Message deleteMessage(NewMessage newMessage){
+        return messageDAO.deleteMessage(newMessage.message.getMessage_id());
+    }
+
+    @Benchmark
+    public Message updateMessage(){
+        int messageId = database.randomMessageId();
+        return messageDAO.updateMessage(messageId, BenchmarkDatabase.seededText(messageId));
+    }
+
+    @Benchmark
+    public List<Message> getAllMessagesByAccountId(){
+        return messageDAO.getAllMessagesByAccountId(database.randomAccountId());
+    }
+
+    @Benchmark
+    public void streamAllMessages(Blackhole blackhole) throws IOException{
+        messageDAO.streamAllMessages(blackhole::consume);
+    }
+
+    @Benchmark
+    public void streamAllMessagesByAccountId(Blackhole blackhole) throws IOException{
+        messageDAO.streamAllMessagesByAccountId(database.randomAccountId(), blackhole::consume);
+    }
+
+    @Benchmark
+    public List<Message> getMessagePage(){
+        return messageDAO.getMessagePage(PageCursor.after(false, 0, database.randomMessageId()), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getMessagePageByTime(){
+        long epoch = BenchmarkDatabase.FIRST_EPOCH + database.randomMessageId();
+        return messageDAO.getMessagePage(PageCursor.after(true, epoch, 0), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getMessagePageByAccountId(){
+        return messageDAO.getMessagePageByAccountId(database.randomAccountId(), PageCursor.first(false), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getMessagePageByAccountIdByTime(){
+        return messageDAO.getMessagePageByAccountId(database.randomAccountId(), PageCursor.first(true), PAGE_SIZE);
+    }
+}
@@ -0,0 +1,137 @@
+package Perf;
+
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Util.PageCursor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Every MessageService operation against a seeded database (see BenchmarkDatabase), including its validation and
+ * caches. The service is built from the system properties of the forked JVM, so caches and group commit can be tuned
+ * with -jvmArgsAppend, e.g. -jvmArgsAppend -Dmessages.cache.maxSize=100000.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class MessageServiceBenchmark {
+
+    static final int PAGE_SIZE = 100;
+    //Message ids read by getMessageByMessageIdHot, small enough to stay cached
+    static final int HOT_MESSAGES = 1000;
+
+    @Param({"1000", "100000", "10000000"})
+    public int messages;
+
+    BenchmarkDatabase database;
+    MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        database = BenchmarkDatabase.open(messages);
+        messageService = new MessageService();
+        messageService.primeRecentMessages();
+    }
+
+    @TearDown(Level.Iteration)
+    public void restore(){
+        database.restore();
+    }
+
+    /**
+     * A message created just before each call of the delete benchmark, so that deleting never touches the seed.
+     */
+    @State(Scope.Thread)
+    public static class NewMessage {
+        Message message;
+
+        @Setup(Level.Invocation)
+        public void create(MessageServiceBenchmark benchmark){
+            message = benchmark.messageService.createMessage(
+                    new Message(benchmark.database.randomAccountId(), "to be deleted", BenchmarkDatabase.FIRST_EPOCH));
+        }
+    }
+
+    @Benchmark
+    public Message createMessage(){
+        return messageService.createMessage(new Message(database.randomAccountId(), "benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages(){
+        return messageService.getAllMessages();
+    }
+
+    @Benchmark
+    public List<Message> getLatestMessages(){
+        return messageService.getLatestMessages(PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Message getMessageByMessageId(){
+        return messageService.getMessageByMessageId(database.randomMessageId());
+    }
+
+    @Benchmark
+    public Message getMessageByMessageIdHot(){
+        return messageService.getMessageByMessageId(ThreadLocalRandom.current().nextInt(Math.min(HOT_MESSAGES, messages)) + 1);
+    }
+
+    @Benchmark
+    public Message deleteMessage(NewMessage newMessage){
+        return messageService.deleteMessage(newMessage.message.getMessage_id());
+    }
+
+    @Benchmark
+    public Message updateMessage(){
+        int messageId = database.randomMessageId();
+        return messageService.updateMessage(messageId, BenchmarkDatabase.seededText(messageId));
+    }
+
+    @Benchmark
+    public List<Message> getAllMessagesByAccountId(){
+        return messageService.getAllMessagesByAccountId(database.randomAccountId());
+    }
+
+    @Benchmark
+    public void streamAllMessages(Blackhole blackhole) throws IOException{
+        messageService.streamAllMessages(blackhole::consume);
+    }
+
+    @Benchmark
+    public void streamAllMessagesByAccountId(Blackhole blackhole) throws IOException{
+        messageService.streamAllMessagesByAccountId(database.randomAccountId(), blackhole::consume);
+    }
+
+    @Benchmark
+    public MessagePage getMessagePage(){
+        return messageService.getMessagePage(PageCursor.after(false, 0, database.randomMessageId()), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public MessagePage getMessagePageByAccountId(){
+        return messageService.getMessagePageByAccountId(database.randomAccountId(), PageCursor.first(false), PAGE_SIZE);
+    }
+}
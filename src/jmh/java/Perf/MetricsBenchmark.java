@@ -0,0 +1,72 @@
+package Perf;
+
+import Metrics.DbMetrics;
+import Metrics.LatencyHistogram;
+import Metrics.PrometheusWriter;
+import Metrics.RequestMetrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost the /metrics instrumentation adds to each request: recording a request in RequestMetrics and a DAO call in
+ * DbMetrics, alone and with several threads recording at once. The target is well under a microsecond per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    static final String[][] ROUTES = {
+            {"POST", "/register"}, {"POST", "/login"}, {"POST", "/messages"}, {"GET", "/messages"},
+            {"GET", "/messages/{message_id}"}, {"DELETE", "/messages/{message_id}"},
+            {"PATCH", "/messages/{message_id}"}, {"GET", "/accounts/{account_id}/messages"}
+    };
+
+    final RequestMetrics requestMetrics = new RequestMetrics();
+    final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Benchmark
+    public void recordRequest(){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String[] route = ROUTES[random.nextInt(ROUTES.length)];
+        requestMetrics.record(route[0], route[1], 200, random.nextLong(50000, 5000000));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordRequestContended(){
+        recordRequest();
+    }
+
+    @Benchmark
+    public void recordDbOperation(){
+        DbMetrics.record("MessageDAO.getMessageByMessageId", ThreadLocalRandom.current().nextLong(5000, 500000));
+    }
+
+    @Benchmark
+    public void recordHistogram(){
+        histogram.record(ThreadLocalRandom.current().nextLong(50000, 5000000));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String writeHistogram(){
+        return new PrometheusWriter().histogram("http_request_duration_seconds", PrometheusWriter.labels("route", "/messages"), histogram).toString();
+    }
+}
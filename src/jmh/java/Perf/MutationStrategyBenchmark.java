@@ -0,0 +1,112 @@
+package Perf;
+
+import DAO.H2MessageDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.UnitOfWork;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the single-statement update and delete in H2MessageDAO (H2's FINAL TABLE / OLD TABLE) with the way they
+ * used to be done: read the message, change it, and for an update read it again, all on one connection.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MutationStrategyBenchmark {
+
+    static final String LEGACY_UPDATE = "UPDATE message SET message_text = ? WHERE message_id = ?";
+    static final String LEGACY_DELETE = "DELETE FROM message WHERE message_id = ?";
+
+    @Param({"1000", "100000", "10000000"})
+    public int messages;
+
+    BenchmarkDatabase database;
+    MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        database = BenchmarkDatabase.open(messages);
+        messageDAO = new H2MessageDAO();
+    }
+
+    @TearDown(Level.Iteration)
+    public void restore(){
+        database.restore();
+    }
+
+    /**
+     * A message created just before each call of a delete benchmark, so that deleting never touches the seed.
+     */
+    @State(Scope.Thread)
+    public static class NewMessage {
+        Message message;
+
+        @Setup(Level.Invocation)
+        public void create(MutationStrategyBenchmark benchmark){
+            message = benchmark.messageDAO.createNewMessage(
+                    new Message(benchmark.database.randomAccountId(), "to be deleted", BenchmarkDatabase.FIRST_EPOCH));
+        }
+    }
+
+    @Benchmark
+    public Message updateFinalTable(){
+        int messageId = database.randomMessageId();
+        return messageDAO.updateMessage(messageId, BenchmarkDatabase.seededText(messageId));
+    }
+
+    @Benchmark
+    public Message updateThreeStatements() throws SQLException{
+        int messageId = database.randomMessageId();
+        try(UnitOfWork unitOfWork = UnitOfWork.begin()){
+            if(messageDAO.getMessageByMessageId(messageId) == null)
+                return null;
+
+            PreparedStatement preparedStatement = unitOfWork.prepare(LEGACY_UPDATE);
+            preparedStatement.setString(1, BenchmarkDatabase.seededText(messageId));
+            preparedStatement.setInt(2, messageId);
+            if(preparedStatement.executeUpdate() == 0)
+                return null;
+            return messageDAO.getMessageByMessageId(messageId);
+        }
+    }
+
+    @Benchmark
+    public Message deleteOldTable(NewMessage newMessage){
+        return messageDAO.deleteMessage(newMessage.message.getMessage_id());
+    }
+
+    @Benchmark
+    public Message deleteTwoStatements(NewMessage newMessage) throws SQLException{
+        int messageId = newMessage.message.getMessage_id();
+        try(UnitOfWork unitOfWork = UnitOfWork.begin()){
+            Message messageToDelete = messageDAO.getMessageByMessageId(messageId);
+            if(messageToDelete == null)
+                return null;
+
+            PreparedStatement preparedStatement = unitOfWork.prepare(LEGACY_DELETE);
+            preparedStatement.setInt(1, messageId);
+            return preparedStatement.executeUpdate() > 0 ? messageToDelete : null;
+        }
+    }
+}
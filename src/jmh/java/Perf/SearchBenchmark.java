@@ -0,0 +1,129 @@
+package Perf;
+
+import Cache.SearchIndex;
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SearchIndex queries and updates over synthetic messages. The seeded database's text ("message N") has a single
+ * useful term, so the index is built directly from text generated from each message id instead: 6 to 15 words drawn
+ * from a Zipf-distributed vocabulary, like natural language. The loader regenerates messages from their ids, so the
+ * times cover the intersection and the check against the text but not the database read.
+ *
+ * The queries are two of the most common words, a rare word, a rare word with a common one, and a phrase of two
+ * common words. SampleTime reports the percentiles, e.g. for 10M messages:
+ * -p messages=10000000 -jvmArgsAppend -Xmx12g.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    static final int VOCABULARY = 50000;
+    static final int LIMIT = 20;
+
+    @Param({"1000000", "10000000"})
+    public int messages;
+
+    @Param({"common", "rare", "mixed", "phrase"})
+    public String query;
+
+    //Cumulative Zipf (s = 1) probabilities of the words by rank
+    static final double[] ZIPF = new double[VOCABULARY];
+
+    static {
+        double total = 0;
+        for(int i = 0; i < VOCABULARY; i++)
+            ZIPF[i] = total += 1.0 / (i + 1);
+        for(int i = 0; i < VOCABULARY; i++)
+            ZIPF[i] /= total;
+    }
+
+    SearchIndex index;
+    SearchIndex.Query parsed;
+    int nextId;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        index = new SearchIndex();
+        index.beginBuild();
+        for(int id = 1; id <= messages; id++)
+            index.index(message(id));
+        index.finishBuild(true);
+        nextId = messages + 1;
+
+        switch(query){
+            case "common": parsed = SearchIndex.Query.parse(word(0) + " " + word(1)); break;
+            case "rare": parsed = SearchIndex.Query.parse(word(5000)); break;
+            case "mixed": parsed = SearchIndex.Query.parse(word(2000) + " " + word(0)); break;
+            default: parsed = SearchIndex.Query.parse("\"" + word(0) + " " + word(1) + "\""); break;
+        }
+    }
+
+    /**
+     * @return A word made from its rank, distinct for every rank.
+     */
+    static String word(int rank){
+        return "w" + Integer.toString(rank, 36);
+    }
+
+    /**
+     * @return The message with the id given, with text generated from the id alone.
+     */
+    static Message message(int id){
+        SplittableRandom random = new SplittableRandom(id);
+        int words = 6 + random.nextInt(10);
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < words; i++){
+            int rank = Arrays.binarySearch(ZIPF, random.nextDouble());
+            text.append(i == 0 ? "" : " ").append(word(Math.min(rank < 0 ? -rank - 1 : rank, VOCABULARY - 1)));
+        }
+        return new Message(id, 1 + id % 1000, text.toString(), BenchmarkDatabase.FIRST_EPOCH + id);
+    }
+
+    static List<Message> load(List<Integer> ids){
+        List<Message> loaded = new ArrayList<>(ids.size());
+        for(int id : ids)
+            loaded.add(message(id));
+        return loaded;
+    }
+
+    @Benchmark
+    public List<Message> search(){
+        return index.search(parsed, LIMIT, SearchBenchmark::load);
+    }
+
+    /**
+     * Indexes one new message, as MessageService does after every create.
+     */
+    @Benchmark
+    public int indexNewMessage(){
+        int id;
+        synchronized(this){
+            id = nextId++;
+        }
+        index.messageCreated(message(id));
+        return id;
+    }
+}
@@ -0,0 +1,115 @@
+package Cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent Bloom filter of strings. mightContain() never answers false for a string that was put(), and answers
+ * true for a string that was never put() with roughly the false positive rate the filter was sized for, as long as no
+ * more than expectedInsertions strings have been added.
+ *
+ * The bits live in an AtomicLongArray like KnownAccountIds, so put() and mightContain() need no locking. Each string is
+ * hashed once to 128 bits, and its k bit positions are derived from the two halves (Kirsch-Mitzenmacher double
+ * hashing).
+ */
+public class BloomFilter {
+
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicLongArray bits;
+
+    private final LongAdder positives = new LongAdder();
+    private final LongAdder negatives = new LongAdder();
+
+    /**
+     * @param expectedInsertions The number of strings the filter is sized for.
+     * @param falsePositiveRate The false positive rate wanted at that size, between 0 and 1.
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate){
+        if(expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("Invalid Bloom filter: expectedInsertions=" + expectedInsertions
+                    + ", falsePositiveRate=" + falsePositiveRate);
+
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) >>> 6);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * ln2));
+    }
+
+    /**
+     * Adds a string to the filter.
+     * @param value The string.
+     */
+    public void put(String value){
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+        for(int i = 0; i < hashCount; i++){
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while(((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * Checks the filter, counting a positive or a negative answer.
+     * @param value The string.
+     * @return false if the string was definitely never added. true means "probably added".
+     */
+    public boolean mightContain(String value){
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+        for(int i = 0; i < hashCount; i++){
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0){
+                negatives.increment();
+                return false;
+            }
+        }
+        positives.increment();
+        return true;
+    }
+
+    /**
+     * A seeded 64-bit hash of the string's characters, finished with the MurmurHash3 mixer.
+     */
+    private static long hash(String value, long seed){
+        long hash = seed ^ value.length();
+        for(int i = 0; i < value.length(); i++)
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L + seed;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return The size of the filter, in bits.
+     */
+    public long getBitCount(){
+        return bitCount;
+    }
+
+    public int getHashCount(){
+        return hashCount;
+    }
+
+    /**
+     * @return The number of lookups answered "probably added".
+     */
+    public long getPositiveCount(){
+        return positives.sum();
+    }
+
+    /**
+     * @return The number of lookups answered "definitely not added".
+     */
+    public long getNegativeCount(){
+        return negatives.sum();
+    }
+}
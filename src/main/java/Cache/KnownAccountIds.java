@@ -0,0 +1,80 @@
+package Cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent bitmap of account ids known to exist. Accounts are never deleted, so once an id has been seen in the
+ * database it can be trusted forever; ids that were not found are never recorded, since they may be registered later.
+ *
+ * The bitmap covers ids 1 to maxAccountId, one bit each, so its memory is fixed up front (512KB for the default of
+ * about 4 million ids). Ids outside that range are simply never cached.
+ */
+public class KnownAccountIds {
+
+    private final int maxAccountId;
+    private final AtomicLongArray bits;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public KnownAccountIds(){
+        this(Integer.getInteger("accounts.cache.maxAccountId", 1 << 22));
+    }
+
+    public KnownAccountIds(int maxAccountId){
+        this.maxAccountId = maxAccountId;
+        this.bits = new AtomicLongArray((maxAccountId >> 6) + 1);
+    }
+
+    /**
+     * Checks the bitmap, counting a hit or a miss.
+     * @param account_id The account id to check.
+     * @return true if the account is known to exist. false means "unknown", not "does not exist".
+     */
+    public boolean contains(int account_id){
+        if(account_id >= 1 && account_id <= maxAccountId && (bits.get(account_id >> 6) & (1L << account_id)) != 0){
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Records that an account exists.
+     * @param account_id The account id. Ids outside the bitmap are ignored.
+     */
+    public void add(int account_id){
+        if(account_id < 1 || account_id > maxAccountId)
+            return;
+
+        int word = account_id >> 6;
+        long mask = 1L << account_id;
+        long current;
+        while(((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+    }
+
+    /**
+     * @return The number of lookups answered from the bitmap.
+     */
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that had to go to the database.
+     */
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    /**
+     * @return The fraction of lookups answered from the bitmap.
+     */
+    public double getHitRatio(){
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+}
@@ -0,0 +1,223 @@
+package Cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A size-bounded, concurrent read-through cache with least-recently-used eviction.
+ *
+ * Keys are spread over independently locked stripes, each an access-ordered LinkedHashMap, so readers of different
+ * keys rarely contend. Entries can optionally expire after a fixed time, and a loader result of null can optionally
+ * be cached as well (negative caching) so that repeated lookups of a missing key don't reach the loader.
+ *
+ * Invalidation is exact: once invalidate(key) returns, no value loaded before the call can be stored. Each stripe
+ * keeps a generation number that invalidation bumps, and a load only stores its result if the generation it saw
+ * before loading is still current. Callers must invalidate after the change is visible to the loader (after commit).
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public class LruCache<K, V> {
+
+    //Each stripe evicts on its own, so it needs room for a few keys that hash together
+    static final int MIN_STRIPE_CAPACITY = 8;
+
+    private final Stripe<K, V>[] stripes;
+    private final long ttlNanos;
+    private final boolean cacheNulls;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * @param maxSize The maximum number of entries held at once.
+     * @param ttlMillis How long an entry stays valid after it was loaded, or 0 to keep it until it is evicted.
+     * @param cacheNulls true to cache null loader results.
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(int maxSize, long ttlMillis, boolean cacheNulls){
+        if(maxSize < 1)
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+
+        //Small caches get fewer stripes, down to one, and the entries left over after an even split go one each to
+        //the first stripes, so the capacities add up to maxSize
+        int stripeCount = Math.min(16, Integer.highestOneBit(Math.max(1, maxSize / MIN_STRIPE_CAPACITY)));
+        this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[stripeCount];
+        for(int i = 0; i < stripeCount; i++)
+            this.stripes[i] = new Stripe<>(maxSize / stripeCount + (i < maxSize % stripeCount ? 1 : 0), evictions);
+
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.cacheNulls = cacheNulls;
+    }
+
+    /**
+     * Returns the cached value for the key, loading and caching it on a miss.
+     * @param key The key.
+     * @param loader Loads the value for a key that is not cached. May return null.
+     * @return The value, or null if the loader found none.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader){
+        Stripe<K, V> stripe = stripeFor(key);
+        long generation;
+        synchronized(stripe){
+            Entry<V> entry = stripe.map.get(key);
+            if(entry != null && (ttlNanos == 0 || System.nanoTime() < entry.expiresAtNanos)){
+                hits.increment();
+                return entry.value;
+            }
+            if(entry != null)
+                stripe.map.remove(key);
+            generation = stripe.generation;
+        }
+
+        misses.increment();
+        long start = System.nanoTime();
+        V value = loader.apply(key);
+        long loaded = System.nanoTime();
+        loads.increment();
+        loadNanos.add(loaded - start);
+
+        if(value == null && !cacheNulls)
+            return null;
+
+        synchronized(stripe){
+            //Skip storing if the key's stripe was invalidated while we were loading
+            if(stripe.generation == generation)
+                stripe.map.put(key, new Entry<>(value, loaded + ttlNanos));
+        }
+        return value;
+    }
+
+    /**
+     * @param key The key.
+     * @return The cached value, or null if the key is not cached (or is cached as missing). Does not load.
+     */
+    public V getIfPresent(K key){
+        Stripe<K, V> stripe = stripeFor(key);
+        synchronized(stripe){
+            Entry<V> entry = stripe.map.get(key);
+            if(entry == null || (ttlNanos != 0 && System.nanoTime() >= entry.expiresAtNanos))
+                return null;
+            return entry.value;
+        }
+    }
+
+    /**
+     * Removes the key, and stops any load of it that is already in progress from being stored.
+     * @param key The key.
+     */
+    public void invalidate(K key){
+        Stripe<K, V> stripe = stripeFor(key);
+        synchronized(stripe){
+            stripe.generation++;
+            stripe.map.remove(key);
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void invalidateAll(){
+        for(Stripe<K, V> stripe : stripes){
+            synchronized(stripe){
+                stripe.generation++;
+                stripe.map.clear();
+            }
+        }
+    }
+
+    private Stripe<K, V> stripeFor(K key){
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    /**
+     * @return The number of entries currently cached.
+     */
+    public int size(){
+        int size = 0;
+        for(Stripe<K, V> stripe : stripes){
+            synchronized(stripe){
+                size += stripe.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    /**
+     * @return The fraction of lookups answered from the cache.
+     */
+    public double getHitRatio(){
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return The number of entries dropped to make room for new ones.
+     */
+    public long getEvictionCount(){
+        return evictions.sum();
+    }
+
+    public long getLoadCount(){
+        return loads.sum();
+    }
+
+    /**
+     * @return The total time spent in the loader, in nanoseconds.
+     */
+    public long getTotalLoadNanos(){
+        return loadNanos.sum();
+    }
+
+    /**
+     * @return The mean time spent in the loader, in nanoseconds.
+     */
+    public double getMeanLoadNanos(){
+        long count = loads.sum();
+        return count == 0 ? 0 : (double) loadNanos.sum() / count;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAtNanos;
+
+        Entry(V value, long expiresAtNanos){
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private static class Stripe<K, V> {
+        private final LinkedHashMap<K, Entry<V>> map;
+        private long generation;
+
+        Stripe(int capacity, LongAdder evictions){
+            this.map = new LinkedHashMap<>(16, 0.75f, true){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest){
+                    if(size() <= capacity)
+                        return false;
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+    }
+}
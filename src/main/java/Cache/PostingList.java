@@ -0,0 +1,306 @@
+package Cache;
+
+import java.util.Arrays;
+
+/**
+ * The sorted message ids of one search term, compressed.
+ *
+ * Ids are kept in blocks of up to BLOCK_SIZE: each block stores its first and last id and the gaps between the
+ * following ids as varints, so a dense list costs about a byte per id. New ids almost always arrive in increasing
+ * order and collect in a small uncompressed tail, which is sealed into a block once it is full. An id older than the
+ * tail (a late insert, or a removal) re-encodes the one block that holds it.
+ *
+ * Readers never lock. Every change publishes a new State holding the block array, the number of blocks in use and the
+ * tail. The block array is shared between states: a new block is written past the end the older states can see, and
+ * a re-encoded block replaces its slot with an equally valid immutable block. Changes must be made holding the list's
+ * lock, which SearchIndex takes per term.
+ */
+final class PostingList {
+
+    static final int BLOCK_SIZE = 128;
+
+    private static final State EMPTY = new State(new Block[4], 0, new int[0], 0);
+
+    private volatile State state = EMPTY;
+
+    /**
+     * Adds an id, unless it is already in the list. Call holding the list's lock.
+     * @return true if the id was added.
+     */
+    boolean add(int id){
+        State current = state;
+        Block last = current.blockCount == 0 ? null : current.blocks[current.blockCount - 1];
+        if(last == null || id > last.last){
+            int index = Arrays.binarySearch(current.tail, id);
+            if(index >= 0)
+                return false;
+            int[] tail = insert(current.tail, -index - 1, id);
+            if(tail.length < BLOCK_SIZE)
+                state = new State(current.blocks, current.blockCount, tail, current.size + 1);
+            else
+                state = current.append(Block.encode(tail), new int[0], current.size + 1);
+            return true;
+        }
+
+        //Older than the tail: re-encode the block it belongs in
+        int blockIndex = blockFor(current, id);
+        int[] ids = current.blocks[blockIndex].decode();
+        int index = Arrays.binarySearch(ids, id);
+        if(index >= 0)
+            return false;
+        current.blocks[blockIndex] = Block.encode(insert(ids, -index - 1, id));
+        state = new State(current.blocks, current.blockCount, current.tail, current.size + 1);
+        return true;
+    }
+
+    /**
+     * Removes an id, if it is in the list. Call holding the list's lock.
+     * @return true if the id was removed.
+     */
+    boolean remove(int id){
+        State current = state;
+        int index = Arrays.binarySearch(current.tail, id);
+        if(index >= 0){
+            int[] tail = new int[current.tail.length - 1];
+            System.arraycopy(current.tail, 0, tail, 0, index);
+            System.arraycopy(current.tail, index + 1, tail, index, tail.length - index);
+            state = new State(current.blocks, current.blockCount, tail, current.size - 1);
+            return true;
+        }
+        if(current.blockCount == 0 || id > current.blocks[current.blockCount - 1].last)
+            return false;
+
+        int blockIndex = blockFor(current, id);
+        Block block = current.blocks[blockIndex];
+        int[] ids = block.decode();
+        index = Arrays.binarySearch(ids, id);
+        if(index < 0)
+            return false;
+        int[] remaining = new int[ids.length - 1];
+        System.arraycopy(ids, 0, remaining, 0, index);
+        System.arraycopy(ids, index + 1, remaining, index, remaining.length - index);
+        //An emptied block keeps its place, so the blocks stay ordered for the binary searches
+        current.blocks[blockIndex] = remaining.length == 0 ? Block.empty(block.last) : Block.encode(remaining);
+        state = new State(current.blocks, current.blockCount, current.tail, current.size - 1);
+        return true;
+    }
+
+    /**
+     * @return The index of the first block whose last id is at least id. There must be one.
+     */
+    private static int blockFor(State state, int id){
+        int low = 0;
+        int high = state.blockCount - 1;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(state.blocks[middle].last < id)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static int[] insert(int[] ids, int index, int id){
+        int[] inserted = new int[ids.length + 1];
+        System.arraycopy(ids, 0, inserted, 0, index);
+        inserted[index] = id;
+        System.arraycopy(ids, index, inserted, index + 1, ids.length - index);
+        return inserted;
+    }
+
+    /**
+     * @return The number of ids in the list.
+     */
+    int size(){
+        return state.size;
+    }
+
+    /**
+     * @return The estimated memory used by the list, in bytes.
+     */
+    long bytes(){
+        State current = state;
+        long bytes = 32 + 4L * current.tail.length + 8L * current.blocks.length;
+        for(int i = 0; i < current.blockCount; i++)
+            bytes += 32 + current.blocks[i].gaps.length;
+        return bytes;
+    }
+
+    /**
+     * @return A cursor over the ids as they are now, newest (highest) first.
+     */
+    Cursor cursor(){
+        return new Cursor(state);
+    }
+
+    /**
+     * An immutable view of the list.
+     */
+    private static final class State {
+        private final Block[] blocks;
+        private final int blockCount;
+        private final int[] tail;
+        private final int size;
+
+        private State(Block[] blocks, int blockCount, int[] tail, int size){
+            this.blocks = blocks;
+            this.blockCount = blockCount;
+            this.tail = tail;
+            this.size = size;
+        }
+
+        private State append(Block block, int[] tail, int size){
+            Block[] grown = blockCount < blocks.length ? blocks : Arrays.copyOf(blocks, blocks.length * 2);
+            grown[blockCount] = block;
+            return new State(grown, blockCount + 1, tail, size);
+        }
+    }
+
+    /**
+     * Up to BLOCK_SIZE sorted ids: the first and last in full, and the gaps after the first as varints.
+     */
+    private static final class Block {
+        private final int first;
+        private final int last;
+        private final int count;
+        private final byte[] gaps;
+
+        private Block(int first, int last, int count, byte[] gaps){
+            this.first = first;
+            this.last = last;
+            this.count = count;
+            this.gaps = gaps;
+        }
+
+        static Block empty(int position){
+            return new Block(position, position, 0, new byte[0]);
+        }
+
+        static Block encode(int[] ids){
+            byte[] gaps = new byte[(ids.length - 1) * 5];
+            int length = 0;
+            for(int i = 1; i < ids.length; i++){
+                int gap = ids[i] - ids[i - 1];
+                while((gap & ~0x7F) != 0){
+                    gaps[length++] = (byte) ((gap & 0x7F) | 0x80);
+                    gap >>>= 7;
+                }
+                gaps[length++] = (byte) gap;
+            }
+            return new Block(ids[0], ids[ids.length - 1], ids.length, Arrays.copyOf(gaps, length));
+        }
+
+        int[] decode(){
+            int[] ids = new int[count];
+            if(count == 0)
+                return ids;
+            ids[0] = first;
+            int position = 0;
+            for(int i = 1; i < count; i++){
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do{
+                    b = gaps[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                }while(b < 0);
+                ids[i] = ids[i - 1] + gap;
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Walks the ids from the highest down, decoding one block at a time and skipping whole blocks when asked to
+     * advance past them.
+     */
+    static final class Cursor {
+        private final State state;
+        //The segment being read: a block index, or blockCount for the tail
+        private int segment;
+        private int[] ids;
+        private int position;
+        private int current = -1;
+
+        private Cursor(State state){
+            this.state = state;
+            this.segment = state.blockCount;
+            this.ids = state.tail;
+            this.position = state.tail.length;
+        }
+
+        /**
+         * @return The id the cursor is on, or -1 before the first call to next() and once it is exhausted.
+         */
+        int current(){
+            return current;
+        }
+
+        /**
+         * @return The number of ids in the list the cursor walks.
+         */
+        int size(){
+            return state.size;
+        }
+
+        /**
+         * Moves to the next lower id.
+         * @return false if there is none.
+         */
+        boolean next(){
+            while(--position < 0){
+                if(--segment < 0){
+                    current = -1;
+                    return false;
+                }
+                ids = state.blocks[segment].decode();
+                position = ids.length;
+            }
+            current = ids[position];
+            return true;
+        }
+
+        /**
+         * Moves down to the highest id no greater than target. Does nothing if the cursor is already there or lower.
+         * @return false if there is no such id.
+         */
+        boolean advanceTo(int target){
+            if(current == -1 && segment < 0)
+                return false;
+            if(current != -1 && current <= target)
+                return true;
+
+            //Skip straight to the last block starting at or below the target if it is not in this segment
+            int segmentFirst = ids.length == 0 ? Integer.MAX_VALUE : ids[0];
+            if(target < segmentFirst){
+                int low = 0;
+                int high = Math.min(segment, state.blockCount) - 1;
+                int found = -1;
+                while(low <= high){
+                    int middle = (low + high) >>> 1;
+                    if(state.blocks[middle].first <= target){
+                        found = middle;
+                        low = middle + 1;
+                    }
+                    else
+                        high = middle - 1;
+                }
+                if(found < 0){
+                    segment = -1;
+                    current = -1;
+                    return false;
+                }
+                segment = found;
+                ids = state.blocks[found].decode();
+                position = ids.length;
+            }
+
+            //The highest id at or below the target in this segment, searching below the current position
+            int index = Arrays.binarySearch(ids, 0, Math.min(position, ids.length), target);
+            position = index >= 0 ? index + 1 : -index - 1;
+            return next();
+        }
+    }
+}
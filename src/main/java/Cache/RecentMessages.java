@@ -0,0 +1,197 @@
+package Cache;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * A fixed-size, lock-free ring of the newest messages, so the newest N messages of the global feed are served without
+ * a query.
+ *
+ * Message ids are handed out in increasing order, so each id has a fixed slot: id modulo the capacity. The ring covers
+ * the window of ids from maxId - capacity + 1 up to the highest id it has seen, and every message in that window is
+ * either in its slot or does not exist (it was deleted, or its insert was rolled back). A slot only ever moves to a
+ * higher id, or changes for the id it already holds, and every change is a compare-and-set, so writers never wait for
+ * each other or for readers.
+ *
+ * Until prime() has loaded the newest messages, and whenever the window cannot answer a request (more messages are
+ * asked for than it holds, or writers moved it while it was being read), reads go to the loader instead.
+ * messageCreated(), messageUpdated() and messageDeleted() must be called once the change has been committed.
+ */
+public class RecentMessages {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Slot> slots;
+    //The highest message id in the ring, raised once its slot has been written
+    private final AtomicInteger maxId = new AtomicInteger();
+    private volatile boolean primed;
+
+    //Statistics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity The number of message ids the ring covers. Rounded up to a power of two.
+     */
+    public RecentMessages(int capacity){
+        if(capacity < 1 || capacity > 1 << 24)
+            throw new IllegalArgumentException("Invalid ring capacity: " + capacity);
+
+        int size = 1;
+        while(size < capacity)
+            size <<= 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * @return A ring covering messages.recent.capacity ids (1024 by default).
+     */
+    public static RecentMessages fromSystemProperties(){
+        return new RecentMessages(Integer.getInteger("messages.recent.capacity", 1024));
+    }
+
+    /**
+     * Fills the ring with the newest messages and starts serving reads from it. Must be called before messages are
+     * written, since a message deleted between loading and priming would come back.
+     * @param newest The newest messages, at least as many as the capacity if there are that many, in any order.
+     */
+    public void prime(List<Message> newest){
+        for(Message message : newest)
+            messageCreated(message);
+        this.primed = true;
+    }
+
+    /**
+     * Returns the newest messages, from the ring when it can answer for them.
+     * @param count The number of messages wanted.
+     * @param loader Reads the newest messages from the database, newest first, given how many are wanted.
+     * @return Up to count messages, newest (highest message_id) first.
+     */
+    public List<Message> getLatest(int count, IntFunction<List<Message>> loader){
+        List<Message> latest = primed ? read(count) : null;
+        if(latest == null){
+            misses.increment();
+            return loader.apply(count);
+        }
+        hits.increment();
+        return latest;
+    }
+
+    /**
+     * Walks the window from the highest id down.
+     * @return The messages, or null if the window does not hold enough of them or moved while being read.
+     */
+    private List<Message> read(int count){
+        int highest = maxId.get();
+        //Ids start at 1, so a window reaching below that holds every message there is
+        int lowest = Math.max(1, highest - capacity + 1);
+        boolean whole = highest - capacity + 1 <= 1;
+
+        List<Message> latest = new ArrayList<>(Math.min(count, capacity));
+        for(int id = highest; id >= lowest && latest.size() < count; id--){
+            Slot slot = slots.get(id & mask);
+            //A newer id took the slot, so this part of the window is gone
+            if(slot != null && slot.id > id)
+                return null;
+            //A lower id means this one was deleted, rolled back, or is still being published
+            if(slot != null && slot.id == id && slot.message != null)
+                latest.add(slot.message);
+        }
+        return latest.size() == count || whole ? latest : null;
+    }
+
+    /**
+     * Puts a new message in its slot, unless a newer message already holds it.
+     * @param message The message as it was created.
+     */
+    public void messageCreated(Message message){
+        int id = message.getMessage_id();
+        Slot created = new Slot(id, message);
+        while(true){
+            Slot slot = slots.get(id & mask);
+            if(slot != null && slot.id >= id)
+                break;
+            if(slots.compareAndSet(id & mask, slot, created))
+                break;
+        }
+        maxId.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Replaces a message in its slot, unless it has been deleted or a newer message holds the slot. If its create has
+     * not been published yet, the updated message takes the slot, so the late create cannot bring back the old text.
+     * @param message The message as it is after the update.
+     */
+    public void messageUpdated(Message message){
+        replace(message.getMessage_id(), message);
+    }
+
+    /**
+     * Marks a message's slot as deleted, unless a newer message holds the slot. If its create has not been published
+     * yet, the slot is marked anyway, so the late create cannot bring the message back. A deleted message is never
+     * brought back by an update published late either.
+     * @param message The message as it was before the delete.
+     */
+    public void messageDeleted(Message message){
+        replace(message.getMessage_id(), null);
+    }
+
+    private void replace(int id, Message message){
+        Slot replacement = new Slot(id, message);
+        while(true){
+            Slot slot = slots.get(id & mask);
+            if(slot != null && (slot.id > id || slot.id == id && slot.message == null))
+                return;
+            if(slots.compareAndSet(id & mask, slot, replacement))
+                break;
+        }
+        maxId.accumulateAndGet(id, Math::max);
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * @return true once the ring has been primed and serves reads.
+     */
+    public boolean isPrimed(){
+        return primed;
+    }
+
+    /**
+     * @return The number of reads answered from the ring.
+     */
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of reads that went to the database.
+     */
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    /**
+     * One slot of the ring: a message id and the message, or null once the message has been deleted. Slots are never
+     * modified; a change replaces the slot.
+     */
+    private static final class Slot {
+        private final int id;
+        private final Message message;
+
+        private Slot(int id, Message message){
+            this.id = id;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package Cache;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * An in-memory inverted index over message_text: for every term, the ids of the messages containing it, as a
+ * compressed PostingList.
+ *
+ * Text is split into terms at every character that is not a letter or digit, and lowercased. A query matches the
+ * messages containing all of its terms, and every quoted phrase in it as consecutive terms. Results are ranked by
+ * recency: the highest message ids first.
+ *
+ * A search intersects the posting lists of its terms from the highest id down, rarest term first, and stops as soon
+ * as it has enough results, so it never reads more of the lists than it needs. Candidates are then loaded (one query
+ * per batch of ids) and checked against their current text. That check is what makes phrases work without storing
+ * positions, and it also lets the index be loose in one direction: an id may stay under a term the message no longer
+ * has, but a message is never missing from a term it has. Updates add the new text's terms before removing the ones
+ * only the old text had, and deletes remove the deleted text's terms. Updates of one message must be passed in the
+ * order they were committed (MessageService passes each one inside the transaction that makes it), or a late one
+ * could remove a term a newer text has.
+ *
+ * The index is built once from every message (see beginBuild()), and kept current afterwards by messageCreated(),
+ * messageUpdated() and messageDeleted(), called once the change has been committed (or, for updates, as it is
+ * committed). Changes made while it is being built are queued and applied when the build finishes; changes made
+ * before a build has started are ignored, since the build reads them from the database.
+ */
+public class SearchIndex {
+
+    //Longer runs of letters and digits are not indexed, and cannot be searched for
+    static final int MAX_TERM_LENGTH = 64;
+
+    private enum Status { EMPTY, BUILDING, READY }
+
+    private final ConcurrentHashMap<String, PostingList> postings = new ConcurrentHashMap<>();
+    private volatile Status status = Status.EMPTY;
+    //Changes made during a build, applied once it finishes. Guarded by this.
+    private final List<Runnable> pending = new ArrayList<>();
+
+    //Statistics
+    private final LongAdder postingCount = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * A parsed search: the distinct terms every result must contain, and the phrases it must contain in order.
+     */
+    public static final class Query {
+        private final List<String> terms;
+        private final List<List<String>> phrases;
+
+        private Query(List<String> terms, List<List<String>> phrases){
+            this.terms = terms;
+            this.phrases = phrases;
+        }
+
+        /**
+         * Parses a query: terms separated by anything that is not a letter or digit, with "double quotes" around
+         * phrases.
+         * @param query The query text.
+         * @return The query, or null if it has no terms.
+         */
+        public static Query parse(String query){
+            if(query == null)
+                return null;
+
+            Set<String> terms = new LinkedHashSet<>();
+            List<List<String>> phrases = new ArrayList<>();
+            String[] parts = query.split("\"", -1);
+            for(int i = 0; i < parts.length; i++){
+                List<String> tokens = tokenize(parts[i]);
+                terms.addAll(tokens);
+                //Odd parts were between quotes
+                if(i % 2 == 1 && tokens.size() > 1)
+                    phrases.add(tokens);
+            }
+            return terms.isEmpty() ? null : new Query(new ArrayList<>(terms), phrases);
+        }
+
+        /**
+         * @param text A message's text.
+         * @return true if the text contains every term and every phrase.
+         */
+        public boolean matches(String text){
+            List<String> tokens = tokenize(text);
+            if(!new HashSet<>(tokens).containsAll(terms))
+                return false;
+            for(List<String> phrase : phrases){
+                if(Collections.indexOfSubList(tokens, phrase) < 0)
+                    return false;
+            }
+            return true;
+        }
+
+        public List<String> getTerms(){
+            return terms;
+        }
+    }
+
+    /**
+     * Splits text into lowercased terms.
+     * @param text The text.
+     * @return The terms, in order, with repeats.
+     */
+    public static List<String> tokenize(String text){
+        List<String> tokens = new ArrayList<>();
+        if(text == null)
+            return tokens;
+
+        int start = -1;
+        for(int i = 0; i <= text.length(); ){
+            int codePoint = i < text.length() ? text.codePointAt(i) : ' ';
+            if(Character.isLetterOrDigit(codePoint)){
+                if(start < 0)
+                    start = i;
+            }
+            else if(start >= 0){
+                if(i - start <= MAX_TERM_LENGTH)
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+            i += i < text.length() ? Character.charCount(codePoint) : 1;
+        }
+        return tokens;
+    }
+
+    /**
+     * Starts a build: changes are queued from now on, until finishBuild().
+     * @return false if the index is already built or being built.
+     */
+    public synchronized boolean beginBuild(){
+        if(status != Status.EMPTY)
+            return false;
+        status = Status.BUILDING;
+        return true;
+    }
+
+    /**
+     * Indexes one message while building.
+     * @param message A message read from the database.
+     */
+    public void index(Message message){
+        add(message.getMessage_id(), message.getMessage_text());
+    }
+
+    /**
+     * Finishes a build, applying the changes made during it.
+     * @param complete false if reading the messages failed, which empties the index so the next search builds it
+     * again.
+     */
+    public synchronized void finishBuild(boolean complete){
+        if(complete){
+            pending.forEach(Runnable::run);
+            status = Status.READY;
+        }
+        else{
+            postings.clear();
+            postingCount.reset();
+            status = Status.EMPTY;
+        }
+        pending.clear();
+    }
+
+    /**
+     * @return true once the index has been built and can be searched.
+     */
+    public boolean isReady(){
+        return status == Status.READY;
+    }
+
+    /**
+     * Indexes a new message.
+     * @param message The message as it was created.
+     */
+    public void messageCreated(Message message){
+        apply(() -> add(message.getMessage_id(), message.getMessage_text()));
+    }
+
+    /**
+     * Indexes the terms of a message's new text, then removes the terms only its old text had.
+     * @param previous The message as it was before the update.
+     * @param message The message as it is after the update.
+     */
+    public void messageUpdated(Message previous, Message message){
+        apply(() -> {
+            add(message.getMessage_id(), message.getMessage_text());
+            Set<String> dropped = new HashSet<>(tokenize(previous.getMessage_text()));
+            dropped.removeAll(tokenize(message.getMessage_text()));
+            remove(message.getMessage_id(), dropped);
+        });
+    }
+
+    /**
+     * Removes a deleted message from the index.
+     * @param message The message as it was before the delete.
+     */
+    public void messageDeleted(Message message){
+        apply(() -> remove(message.getMessage_id(), message.getMessage_text()));
+    }
+
+    private void apply(Runnable change){
+        if(status == Status.READY){
+            change.run();
+            return;
+        }
+        synchronized(this){
+            if(status == Status.BUILDING)
+                pending.add(change);
+            else if(status == Status.READY)
+                change.run();
+        }
+    }
+
+    private void add(int id, String text){
+        for(String term : new HashSet<>(tokenize(text))){
+            PostingList list = postings.computeIfAbsent(term, key -> new PostingList());
+            synchronized(list){
+                if(list.add(id))
+                    postingCount.increment();
+            }
+        }
+    }
+
+    private void remove(int id, String text){
+        remove(id, new HashSet<>(tokenize(text)));
+    }
+
+    private void remove(int id, Set<String> terms){
+        for(String term : terms){
+            PostingList list = postings.get(term);
+            if(list == null)
+                continue;
+            synchronized(list){
+                if(list.remove(id))
+                    postingCount.decrement();
+            }
+        }
+    }
+
+    /**
+     * Finds the newest messages matching a query.
+     * @param query The query.
+     * @param limit The most results wanted.
+     * @param loader Loads the messages with the ids given, in any order, leaving out ids that no longer exist.
+     * @return Up to limit matching messages, newest (highest message_id) first.
+     */
+    public List<Message> search(Query query, int limit, Function<List<Integer>, List<Message>> loader){
+        queries.increment();
+        List<PostingList.Cursor> cursors = new ArrayList<>(query.terms.size());
+        for(String term : query.terms){
+            PostingList list = postings.get(term);
+            if(list == null)
+                return new ArrayList<>();
+            cursors.add(list.cursor());
+        }
+        //The rarest term leads, so the others are mostly skipped over
+        cursors.sort(Comparator.comparingInt(PostingList.Cursor::size));
+
+        List<Message> results = new ArrayList<>(limit);
+        List<Integer> candidates = new ArrayList<>();
+        int batchSize = limit;
+        PostingList.Cursor lead = cursors.get(0);
+        if(!lead.next())
+            return results;
+
+        //Leapfrog intersection, from the highest id down
+        int target = lead.current();
+        int agreeing = 1;
+        int turn = 1;
+        while(true){
+            if(agreeing == cursors.size()){
+                candidates.add(target);
+                if(candidates.size() >= batchSize){
+                    verify(query, candidates, loader, results, limit);
+                    if(results.size() >= limit)
+                        return results;
+                    candidates.clear();
+                    batchSize *= 2;
+                }
+                if(!lead.next())
+                    break;
+                target = lead.current();
+                agreeing = 1;
+                turn = 1;
+                continue;
+            }
+
+            PostingList.Cursor cursor = cursors.get(turn % cursors.size());
+            if(!cursor.advanceTo(target))
+                break;
+            if(cursor.current() == target)
+                agreeing++;
+            else{
+                target = cursor.current();
+                agreeing = 1;
+            }
+            turn++;
+        }
+
+        if(!candidates.isEmpty())
+            verify(query, candidates, loader, results, limit);
+        return results;
+    }
+
+    /**
+     * Loads a batch of candidates and keeps those whose current text matches, in candidate order.
+     */
+    private void verify(Query query, List<Integer> candidates, Function<List<Integer>, List<Message>> loader,
+            List<Message> results, int limit){
+        Map<Integer, Message> loaded = new HashMap<>();
+        for(Message message : loader.apply(candidates))
+            loaded.put(message.getMessage_id(), message);
+
+        for(int id : candidates){
+            Message message = loaded.get(id);
+            if(message != null && query.matches(message.getMessage_text())){
+                matches.increment();
+                if(results.size() < limit)
+                    results.add(message);
+            }
+            else
+                rejected.increment();
+        }
+    }
+
+    /**
+     * @return The number of distinct terms.
+     */
+    public int getTermCount(){
+        return postings.size();
+    }
+
+    /**
+     * @return The number of (term, message) entries.
+     */
+    public long getPostingCount(){
+        return postingCount.sum();
+    }
+
+    /**
+     * @return The estimated memory used by the posting lists, in bytes. Walks every list, so it is not free.
+     */
+    public long getBytes(){
+        long bytes = 0;
+        for(Map.Entry<String, PostingList> entry : postings.entrySet())
+            bytes += 48 + 2L * entry.getKey().length() + entry.getValue().bytes();
+        return bytes;
+    }
+
+    public long getQueryCount(){
+        return queries.sum();
+    }
+
+    /**
+     * @return The number of candidates that matched when checked against their text.
+     */
+    public long getMatchCount(){
+        return matches.sum();
+    }
+
+    /**
+     * @return The number of candidates that did not match when checked, because of a phrase, an update, or a delete.
+     */
+    public long getRejectedCount(){
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,399 @@
+package Cache;
+
+import Model.Message;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Precomputed timelines: for each account, the messages it posted, newest (highest message_id) first, capped at
+ * maxMessages. Reading an account's messages from a timeline needs no query and no copying.
+ *
+ * Timelines are filled lazily from a loader the first time an account is read, and kept current afterwards by
+ * messageCreated(), messageUpdated() and messageDeleted(), which must be called once the change has been committed.
+ * An account that has posted more than maxMessages keeps only its newest ones, and is marked incomplete: its full
+ * list is read from the database instead.
+ *
+ * Memory is bounded by maxBytes, an estimate of the size of the cached messages. Like LruCache, accounts are spread over
+ * locked stripes, each an access-ordered LinkedHashMap with an equal share of the budget, and the least recently read
+ * timelines are evicted first. Each stripe keeps a generation number that every change bumps, and a load only stores
+ * its timeline if the generation it saw before loading is still current, so a load can never overwrite a newer change.
+ */
+public class TimelineStore {
+
+    //Rough heap cost of a cached Message without its text, and of a timeline without its messages
+    static final int MESSAGE_OVERHEAD_BYTES = 96;
+    static final int TIMELINE_OVERHEAD_BYTES = 64;
+    //Deleted message ids remembered per stripe, so that a create published after the delete is not added back
+    static final int RECENT_DELETES = 256;
+    //Updates of messages not found in their timeline, remembered per stripe, so that a create published after the
+    //update adds the updated text
+    static final int RECENT_UPDATES = 256;
+
+    private final int maxMessages;
+    private final long stripeBudget;
+    private final Stripe[] stripes;
+
+    //Statistics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder incompleteReads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxMessages The most messages kept for one account.
+     * @param maxBytes The estimated memory all timelines may use together.
+     */
+    public TimelineStore(int maxMessages, long maxBytes){
+        if(maxMessages < 1 || maxBytes < 1)
+            throw new IllegalArgumentException("Invalid timeline store: maxMessages=" + maxMessages + ", maxBytes=" + maxBytes);
+
+        this.maxMessages = maxMessages;
+        this.stripes = new Stripe[16];
+        for(int i = 0; i < stripes.length; i++)
+            this.stripes[i] = new Stripe();
+        this.stripeBudget = Math.max(1, maxBytes / stripes.length);
+    }
+
+    /**
+     * @return A store sized with messages.timeline.maxMessages (1000 by default) and messages.timeline.maxBytes (64MB by
+     * default).
+     */
+    public static TimelineStore fromSystemProperties(){
+        return new TimelineStore(Integer.getInteger("messages.timeline.maxMessages", 1000),
+                Long.getLong("messages.timeline.maxBytes", 64L << 20));
+    }
+
+    /**
+     * Returns every message posted by an account, oldest first, from its timeline when it holds all of them.
+     * @param accountId The account id.
+     * @param loader Reads every message posted by an account from the database, oldest first.
+     * @return The messages, oldest first. The list must not be modified.
+     */
+    public List<Message> getMessages(int accountId, IntFunction<List<Message>> loader){
+        Stripe stripe = stripeFor(accountId);
+        long generation;
+        synchronized(stripe){
+            Timeline timeline = stripe.map.get(accountId);
+            if(timeline != null && timeline.complete){
+                hits.increment();
+                return timeline.oldestFirst();
+            }
+            generation = timeline == null ? stripe.generation : -1;
+        }
+        if(generation < 0){
+            //Older messages are missing from the timeline, and are only in the database
+            incompleteReads.increment();
+            return loader.apply(accountId);
+        }
+
+        misses.increment();
+        List<Message> messages = loader.apply(accountId);
+        if(messages == null)
+            return null;
+
+        Timeline timeline = Timeline.of(messages, maxMessages);
+        synchronized(stripe){
+            //Skip storing if a message in this stripe changed while we were loading
+            if(stripe.generation == generation)
+                stripe.put(accountId, timeline);
+        }
+        return messages;
+    }
+
+    /**
+     * Adds a new message to its account's timeline, if the timeline is cached and the message has not already been
+     * deleted. If the message has already been updated, the updated message is added instead.
+     * @param message The message as it was created.
+     */
+    public void messageCreated(Message message){
+        Stripe stripe = stripeFor(message.getPosted_by());
+        synchronized(stripe){
+            stripe.generation++;
+            //The delete was published first, and ids are never reused, so this is the only create to skip
+            if(stripe.recentDeletes.remove(message.getMessage_id()))
+                return;
+            Message updated = stripe.recentUpdates.remove(message.getMessage_id());
+            if(updated != null)
+                message = updated;
+            Timeline timeline = stripe.map.get(message.getPosted_by());
+            if(timeline != null)
+                stripe.put(message.getPosted_by(), timeline.with(message, maxMessages));
+        }
+    }
+
+    /**
+     * Replaces a message in its account's timeline, if the timeline is cached and holds it. Otherwise the update is
+     * remembered, since the message's create may not have been published yet.
+     * @param message The message as it is after the update.
+     */
+    public void messageUpdated(Message message){
+        Stripe stripe = stripeFor(message.getPosted_by());
+        synchronized(stripe){
+            stripe.generation++;
+            Timeline timeline = stripe.map.get(message.getPosted_by());
+            if(timeline != null && timeline.indexOf(message.getMessage_id()) >= 0)
+                stripe.put(message.getPosted_by(), timeline.with(message, maxMessages));
+            else
+                stripe.rememberUpdate(message);
+        }
+    }
+
+    /**
+     * Removes a message from its account's timeline, if the timeline is cached. The deletion is also remembered, since
+     * the message's create may not have been published yet.
+     * @param message The message as it was before the delete.
+     */
+    public void messageDeleted(Message message){
+        Stripe stripe = stripeFor(message.getPosted_by());
+        synchronized(stripe){
+            stripe.generation++;
+            stripe.rememberDelete(message.getMessage_id());
+            stripe.recentUpdates.remove(message.getMessage_id());
+            Timeline timeline = stripe.map.get(message.getPosted_by());
+            if(timeline != null)
+                stripe.put(message.getPosted_by(), timeline.without(message.getMessage_id()));
+        }
+    }
+
+    /**
+     * Drops every timeline.
+     */
+    public void clear(){
+        for(Stripe stripe : stripes){
+            synchronized(stripe){
+                stripe.generation++;
+                stripe.map.clear();
+                stripe.bytes = 0;
+            }
+        }
+    }
+
+    private Stripe stripeFor(int accountId){
+        int hash = accountId * 0x9E3779B9;
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * @return The number of accounts with a cached timeline.
+     */
+    public int size(){
+        int size = 0;
+        for(Stripe stripe : stripes){
+            synchronized(stripe){
+                size += stripe.map.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The estimated memory used by the cached timelines, in bytes.
+     */
+    public long getBytes(){
+        long bytes = 0;
+        for(Stripe stripe : stripes){
+            synchronized(stripe){
+                bytes += stripe.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return The number of reads answered from a complete timeline.
+     */
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of reads that had to load a timeline.
+     */
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of reads of accounts with more than maxMessages messages, which go to the database.
+     */
+    public long getIncompleteReadCount(){
+        return incompleteReads.sum();
+    }
+
+    /**
+     * @return The number of timelines evicted to stay within the memory budget.
+     */
+    public long getEvictionCount(){
+        return evictions.sum();
+    }
+
+    /**
+     * One account's newest messages. Timelines are never modified; a change replaces the account's timeline with a
+     * new one.
+     */
+    private static final class Timeline {
+        private final Message[] newestFirst;
+        //False if the account had more messages than the cap, so older ones are missing
+        private final boolean complete;
+        private final long bytes;
+
+        private Timeline(Message[] newestFirst, boolean complete){
+            this.newestFirst = newestFirst;
+            this.complete = complete;
+            long size = TIMELINE_OVERHEAD_BYTES + 8L * newestFirst.length;
+            for(Message message : newestFirst)
+                size += sizeOf(message);
+            this.bytes = size;
+        }
+
+        /**
+         * @param oldestFirst Every message of the account, oldest first, as the loader returns them.
+         */
+        static Timeline of(List<Message> oldestFirst, int maxMessages){
+            int count = Math.min(oldestFirst.size(), maxMessages);
+            Message[] newestFirst = new Message[count];
+            ListIterator<Message> newest = oldestFirst.listIterator(oldestFirst.size());
+            for(int i = 0; i < count; i++)
+                newestFirst[i] = newest.previous();
+            return new Timeline(newestFirst, oldestFirst.size() <= maxMessages);
+        }
+
+        /**
+         * @return A copy of this timeline with the message added, or replaced if its id is already there.
+         */
+        Timeline with(Message message, int maxMessages){
+            int index = indexOf(message.getMessage_id());
+            if(index >= 0){
+                Message[] replaced = newestFirst.clone();
+                replaced[index] = message;
+                return new Timeline(replaced, complete);
+            }
+
+            //Ids grow with time, so a new message almost always goes first
+            int position = 0;
+            while(position < newestFirst.length && newestFirst[position].getMessage_id() > message.getMessage_id())
+                position++;
+            if(position >= maxMessages)
+                return new Timeline(newestFirst, false);
+
+            int count = Math.min(newestFirst.length + 1, maxMessages);
+            Message[] added = new Message[count];
+            System.arraycopy(newestFirst, 0, added, 0, position);
+            added[position] = message;
+            System.arraycopy(newestFirst, position, added, position + 1, count - position - 1);
+            return new Timeline(added, complete && newestFirst.length < maxMessages);
+        }
+
+        /**
+         * @return A copy of this timeline without the message, or this timeline if it does not hold it.
+         */
+        Timeline without(int messageId){
+            int index = indexOf(messageId);
+            if(index < 0)
+                return this;
+
+            Message[] removed = new Message[newestFirst.length - 1];
+            System.arraycopy(newestFirst, 0, removed, 0, index);
+            System.arraycopy(newestFirst, index + 1, removed, index, removed.length - index);
+            return new Timeline(removed, complete);
+        }
+
+        int indexOf(int messageId){
+            for(int i = 0; i < newestFirst.length; i++)
+                if(newestFirst[i].getMessage_id() == messageId)
+                    return i;
+            return -1;
+        }
+
+        /**
+         * @return A read-only view of the messages, oldest first.
+         */
+        List<Message> oldestFirst(){
+            return new AbstractList<Message>(){
+                @Override
+                public Message get(int index){
+                    return newestFirst[newestFirst.length - 1 - index];
+                }
+
+                @Override
+                public int size(){
+                    return newestFirst.length;
+                }
+            };
+        }
+
+        private static long sizeOf(Message message){
+            String text = message.getMessage_text();
+            return MESSAGE_OVERHEAD_BYTES + (text == null ? 0 : text.length());
+        }
+    }
+
+    private final class Stripe {
+        private final LinkedHashMap<Integer, Timeline> map = new LinkedHashMap<>(16, 0.75f, true);
+        //The last RECENT_DELETES message ids deleted in this stripe, oldest first
+        private final LinkedHashSet<Integer> recentDeletes = new LinkedHashSet<>();
+        //The last RECENT_UPDATES messages updated in this stripe that were not in their timeline, oldest first
+        private final LinkedHashMap<Integer, Message> recentUpdates = new LinkedHashMap<>();
+        private long generation;
+        private long bytes;
+
+        /**
+         * Remembers a deleted message id, forgetting the oldest one once there are too many. Must be called holding
+         * the stripe's lock.
+         */
+        void rememberDelete(int messageId){
+            recentDeletes.add(messageId);
+            if(recentDeletes.size() > RECENT_DELETES){
+                Iterator<Integer> oldest = recentDeletes.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+
+        /**
+         * Remembers an updated message, replacing an earlier update of it and forgetting the oldest one once there are
+         * too many. Must be called holding the stripe's lock.
+         */
+        void rememberUpdate(Message message){
+            recentUpdates.remove(message.getMessage_id());
+            recentUpdates.put(message.getMessage_id(), message);
+            if(recentUpdates.size() > RECENT_UPDATES){
+                Iterator<Integer> oldest = recentUpdates.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+
+        /**
+         * Stores a timeline and evicts the least recently read ones until the stripe is within its budget. A timeline
+         * larger than the whole budget is not stored. Must be called holding the stripe's lock.
+         */
+        void put(int accountId, Timeline timeline){
+            Timeline previous = map.remove(accountId);
+            if(previous != null)
+                bytes -= previous.bytes;
+            if(timeline.bytes > stripeBudget)
+                return;
+
+            map.put(accountId, timeline);
+            bytes += timeline.bytes;
+            Iterator<Map.Entry<Integer, Timeline>> eldest = map.entrySet().iterator();
+            while(bytes > stripeBudget && eldest.hasNext()){
+                Map.Entry<Integer, Timeline> entry = eldest.next();
+                if(entry.getKey() == accountId)
+                    continue;
+                bytes -= entry.getValue().bytes;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+}
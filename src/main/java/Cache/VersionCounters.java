@@ -0,0 +1,76 @@
+package Cache;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Version numbers for the message table as a whole and for each account's messages, so a client can be told that a
+ * list has not changed without reading it.
+ *
+ * Every committed change to a message takes the next number from one global sequence. The global version is the
+ * number of the latest change, and an account's version is the number of the latest change to one of its messages.
+ * Accounts are spread over a fixed number of stripes, so accounts sharing a stripe also share changes: a change to
+ * one makes the others look changed too, which only costs a full response, never a stale one.
+ *
+ * changed() must be called once the change has been committed and every in-memory copy of the messages has been
+ * updated, and a reader must read the version before reading the messages. Then a reader that sees a version also
+ * sees every change that version includes. At worst the messages are newer than their version, and the next request
+ * gets a full response it did not strictly need.
+ *
+ * Versions start again from 0 when the application restarts, so each instance has a random boot id that must be part
+ * of anything built from a version.
+ */
+public class VersionCounters {
+
+    private static final int STRIPES = 4096;
+
+    private final String bootId;
+    private final AtomicLong global = new AtomicLong();
+    private final AtomicLongArray accounts = new AtomicLongArray(STRIPES);
+
+    public VersionCounters(){
+        byte[] id = new byte[6];
+        new SecureRandom().nextBytes(id);
+        this.bootId = Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+    }
+
+    /**
+     * Records a committed change to one of an account's messages.
+     * @param accountId The account that posted the message.
+     * @return The new global version.
+     */
+    public long changed(int accountId){
+        long version = global.incrementAndGet();
+        accounts.accumulateAndGet(stripeOf(accountId), version, Math::max);
+        return version;
+    }
+
+    /**
+     * @return The version of the whole message table.
+     */
+    public long getGlobalVersion(){
+        return global.get();
+    }
+
+    /**
+     * @param accountId The account id.
+     * @return The version of the messages posted by the account.
+     */
+    public long getAccountVersion(int accountId){
+        return accounts.get(stripeOf(accountId));
+    }
+
+    /**
+     * @return A random id for this instance, which tells versions from before a restart apart from current ones.
+     */
+    public String getBootId(){
+        return bootId;
+    }
+
+    private static int stripeOf(int accountId){
+        int hash = accountId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -1,15 +1,54 @@
 package Controller;
 
+import Cache.BloomFilter;
+import Cache.KnownAccountIds;
+import Cache.LruCache;
+import Cache.RecentMessages;
+import Cache.SearchIndex;
+import Cache.TimelineStore;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import DAO.MessageSink;
+import Metrics.DbMetrics;
+import Metrics.PrometheusWriter;
+import Metrics.RequestMetrics;
 import Model.Account;
 import Model.Message;
+import Model.MessagePage;
+import Model.MessageResult;
 import Service.AccountService;
+import Service.GroupCommitWriter;
 import Service.MessageService;
+import Util.Bulkhead;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.DbLimiter;
+import Util.JsonCodec;
+import Util.PageCursor;
+import Util.PasswordHasher;
+import Util.ResponseEncoder;
+import Util.SchemaMigrator;
+import Util.ServerThreads;
+import Util.SessionTokens;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -18,12 +57,48 @@ import io.javalin.http.Context;
  */
 public class SocialMediaController {
 
+    //One shared mapper with ready-made readers and writers, also used by ctx.json()
+    private static final JsonCodec JSON = new JsonCodec();
+
     private AccountService accountService;
     private MessageService messageService;
 
+    //Request counts, status codes and latency per route, exposed on /metrics
+    private final RequestMetrics requestMetrics = new RequestMetrics();
+
+    //Response header carrying the token issued by /login. Requests send it back as "Authorization: Bearer <token>".
+    public static final String TOKEN_HEADER = "X-Session-Token";
+
+    //Signs the tokens issued by /login and checks the ones sent to mutating routes (see checkCaller)
+    private final SessionTokens sessionTokens = SessionTokens.fromSystemProperties();
+
+    //Negotiates and compresses response bodies, and counts the bytes saved and the CPU spent per encoding
+    private final ResponseEncoder responseEncoder = ResponseEncoder.fromSystemProperties();
+
+    //Encoded list bodies by path and ETag, so an unchanged list is serialized and compressed once (see writeCacheable)
+    private final LruCache<String, ResponseEncoder.Encoded> responseCache = new LruCache<>(
+            Integer.getInteger("responses.cache.maxSize", 16), 0, false);
+
+    //Handlers run on one of these depending on the work they do (see runAsync)
+    private final Bulkhead reads;
+    private final Bulkhead writes;
+    private final Bulkhead bulk;
+    private final Bulkhead auth;
+
     public SocialMediaController(){
-        this.accountService = new AccountService();
-        this.messageService = new MessageService();
+        //Both services share the DAO and the cache of account ids known to exist
+        AccountDAO accountDAO = new AccountDAO();
+        KnownAccountIds knownAccountIds = new KnownAccountIds();
+        this.accountService = new AccountService(accountDAO, knownAccountIds);
+        this.messageService = new MessageService(accountDAO, MessageDAO.fromSystemProperties(), knownAccountIds);
+
+        //Together the bulkheads use no more threads than the default connection pool has connections
+        this.reads = Bulkhead.fromSystemProperties("read", 5, 200);
+        this.writes = Bulkhead.fromSystemProperties("write", 3, 100);
+        this.bulk = Bulkhead.fromSystemProperties("bulk", 2, 10);
+        //Logins and registrations wait on password hashing, so they get threads of their own, one per hashing thread.
+        //They hold a connection only for the lookup before the hash and the write after it.
+        this.auth = Bulkhead.fromSystemProperties("auth", Runtime.getRuntime().availableProcessors(), 64);
     }
 
     /**
@@ -32,36 +107,235 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        SchemaMigrator.migrate();
+        this.accountService.rebuildUsernameFilter();
+        this.messageService.primeRecentMessages();
+        this.messageService.buildSearchIndex();
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(JSON);
+            config.requestLogger.http(this::recordRequest);
+            config.jetty.server(ServerThreads::createServer);
+            //List responses are compressed once and cached by the controller (see writeCacheable)
+            config.compression.none();
+        });
 
         //Javalin functions
-        app.post("/register", this::registerHandler);
-        app.post("/login", this::loginHandler);
-        app.post("/messages", this::createMessageHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{message_id}", this::findMessageByIdHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageHandler);
-        app.patch("/messages/{message_id}", this::updateMessageHandler);
-        app.get("/accounts/{account_id}/messages", this::getAllMessagesFromAccountIdHandler);
+        app.post("/register", ctx -> runAsync(ctx, this.auth, this::registerHandler));
+        app.post("/login", ctx -> runAsync(ctx, this.auth, this::loginHandler));
+        app.post("/messages", ctx -> runAsync(ctx, this.writes, this::createMessageHandler));
+        //Registered before the /messages/{message_id} routes, so "batch" and "search" are never read as message ids
+        app.post("/messages/batch", ctx -> runAsync(ctx, this.writes, this::createMessagesHandler));
+        app.delete("/messages", ctx -> runAsync(ctx, this.writes, this::deleteMessagesHandler));
+        app.get("/messages", ctx -> {
+            if(!isNotModified(ctx, this.messageService.getVersions().getGlobalVersion()))
+                runAsync(ctx, listBulkhead(ctx), this::getAllMessagesHandler);
+        });
+        app.get("/messages/search", ctx -> {
+            if(!isNotModified(ctx, this.messageService.getVersions().getGlobalVersion()))
+                runAsync(ctx, this.reads, this::searchMessagesHandler);
+        });
+        app.get("/messages/{message_id}", ctx -> runAsync(ctx, this.reads, this::findMessageByIdHandler));
+        app.delete("/messages/{message_id}", ctx -> runAsync(ctx, this.writes, this::deleteMessageHandler));
+        app.patch("/messages/{message_id}", ctx -> runAsync(ctx, this.writes, this::updateMessageHandler));
+        app.get("/accounts/{account_id}/messages", ctx -> {
+            if(!isNotModified(ctx, getAccountVersion(ctx)))
+                runAsync(ctx, listBulkhead(ctx), this::getAllMessagesFromAccountIdHandler);
+        });
+        app.get("/metrics", this::metricsHandler);
+
+        //Password hashing runs on its own bulkhead (see PasswordHasher), which can also be full
+        app.exception(RejectedExecutionException.class, (e, ctx) -> {
+            ctx.status(503);
+            ctx.header("Retry-After", "1");
+        });
+
+        app.events(event -> event.serverStopped(() -> {
+            this.reads.shutdown();
+            this.writes.shutdown();
+            this.bulk.shutdown();
+            this.auth.shutdown();
+            this.accountService.getPasswordHasher().getExecutor().shutdown();
+            //Let the flusher write what is queued before the DAO goes away
+            GroupCommitWriter groupCommitWriter = this.messageService.getGroupCommitWriter();
+            if(groupCommitWriter != null)
+                groupCommitWriter.shutdown();
+            this.messageService.messageDAO.close();
+        }));
 
         return app;
     }
 
+    /**
+     * Runs a handler on a bulkhead and completes the request when it finishes, freeing the request thread while the
+     * handler waits on the database. Reads, writes and bulk list queries each have their own bulkhead, so a burst of
+     * full table scans cannot hold up single message lookups. If the bulkhead is full, the request is answered with
+     * Status 503 straight away. Logins and registrations have a bulkhead of their own, so a burst of password hashing
+     * cannot hold up either. With virtual threads the bulkheads are inline: the handler stays on the request's own
+     * virtual thread and the bulkhead only limits how many run at once (see Bulkhead).
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param bulkhead The bulkhead to run the handler on.
+     * @param handler The handler.
+     */
+    private void runAsync(Context ctx, Bulkhead bulkhead, Handler handler){
+        ctx.future(() -> {
+            try{
+                return bulkhead.submit(() -> handler.handle(ctx));
+            }
+            catch(RejectedExecutionException e){
+                ctx.status(503);
+                ctx.header("Retry-After", "1");
+                return CompletableFuture.completedFuture(null);
+            }
+        });
+    }
+
+    /**
+     * Verifies the session token sent as "Authorization: Bearer <token>", in memory without touching the database.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return The id of the account the token was issued to, 0 if no token was sent and auth.tokens.required is not
+     * set, or -1 if the request has been answered with Status 401 (missing, invalid or expired token).
+     */
+    private int authenticate(Context ctx){
+        String authorization = ctx.header("Authorization");
+        if(authorization == null && !this.sessionTokens.isRequired())
+            return 0;
+
+        int caller = authorization != null && authorization.startsWith("Bearer ")
+                ? this.sessionTokens.verify(authorization.substring(7)) : -1;
+        if(caller < 0)
+            ctx.status(401);
+        return caller;
+    }
+
+    /**
+     * Checks that a request acting for an account is allowed to (see authenticate).
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param accountId The account the request acts for.
+     * @return true if the request may go ahead. If not, the status has been set: 401 for a bad token, 403 for a token
+     * issued to another account.
+     */
+    private boolean checkCaller(Context ctx, int accountId){
+        int caller = authenticate(ctx);
+        if(caller <= 0)
+            return caller == 0;
+        if(caller != accountId){
+            ctx.status(403);
+            return false;
+        }
+
+        //Tokens are only issued to accounts that exist, so posting as this account needs no lookup
+        this.messageService.getKnownAccountIds().add(caller);
+        return true;
+    }
+
+    /**
+     * Checks that a request changing a message is allowed to: its token must have been issued to the account that
+     * posted the message (see authenticate). A message that does not exist is left for the handler to answer as usual.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param messageId The id of the message the request changes.
+     * @return true if the request may go ahead. If not, the status has been set.
+     */
+    private boolean checkMessageOwner(Context ctx, int messageId){
+        int caller = authenticate(ctx);
+        if(caller <= 0)
+            return caller == 0;
+
+        Message message = this.messageService.getMessageByMessageId(messageId);
+        if(message != null && message.getPosted_by() != caller){
+            ctx.status(403);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives a list response a strong ETag and answers Status 304 if the client already has it, before any query or
+     * serialization. The ETag is made of the instance's boot id, the version of the messages the list covers, a
+     * digest of the query string, since each query returns a different list, and the negotiated encoding. The version is read before the handler
+     * reads the messages, so an ETag never claims a change the response does not include (see VersionCounters).
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param version The version of the messages the list covers, or -1 to skip the check.
+     * @return true if the response is Status 304 and the handler should not run.
+     */
+    private boolean isNotModified(Context ctx, long version){
+        if(version < 0)
+            return false;
+
+        String query = ctx.queryString();
+        //Each encoding is a different representation, so it gets its own strong ETag
+        ResponseEncoder.Encoding encoding = this.responseEncoder.negotiate(ctx.header("Accept-Encoding"));
+        String etag = "\"" + this.messageService.getVersions().getBootId() + "-" + version
+                + (query == null || query.isEmpty() ? "" : "-" + digest(query))
+                + (encoding == ResponseEncoder.Encoding.IDENTITY ? "" : "-" + encoding.getToken()) + "\"";
+        ctx.header("ETag", etag);
+        ctx.header("Vary", "Accept-Encoding");
+
+        String ifNoneMatch = ctx.header("If-None-Match");
+        if(ifNoneMatch == null)
+            return false;
+        for(String candidate : ifNoneMatch.split(",")){
+            candidate = candidate.trim();
+            //If-None-Match uses the weak comparison, which ignores the W/ prefix
+            if(candidate.startsWith("W/"))
+                candidate = candidate.substring(2);
+            if(candidate.equals("*") || candidate.equals(etag)){
+                ctx.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return The version of the messages posted by the account in the path, or -1 if the account id is invalid.
+     */
+    private long getAccountVersion(Context ctx){
+        try{
+            return this.messageService.getVersions().getAccountVersion(Integer.parseInt(ctx.pathParam("account_id")));
+        }
+        catch(NumberFormatException e){
+            return -1;
+        }
+    }
+
+    /**
+     * @return The first 72 bits of the SHA-256 of a string, base64url encoded.
+     */
+    private static String digest(String value){
+        try{
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 9));
+        }
+        catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Pages, latest=N and ids requests are bounded by their size and run with the other reads. Full and streamed lists read
+     * every matching row and run on the bulk bulkhead.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return The bulkhead for a list request.
+     */
+    private Bulkhead listBulkhead(Context ctx){
+        return isPageRequest(ctx) || ctx.queryParam("latest") != null || ctx.queryParam("ids") != null ? this.reads : this.bulk;
+    }
+
     /**
      * Registers the user to the database.
      * Status 200 if successful, Status 400 if unsuccessful.
      * @param ctx The Javalin Context object, which provides information about the HTTP request and response.
-     * @throws JsonProcessingException
+     * @throws IOException
      */
-    private void registerHandler(Context ctx) throws JsonProcessingException{
-        ObjectMapper om = new ObjectMapper();
-        Account newAccount = om.readValue(ctx.body(), Account.class);
+    private void registerHandler(Context ctx) throws IOException{
+        Account newAccount = JSON.getAccountReader().readValue(ctx.bodyAsBytes());
         Account registeredAccount = this.accountService.registerNewAccount(newAccount);
 
         //If the registered account is not null, it has been successfully registered.
         if(registeredAccount != null){
-            ctx.json(om.writeValueAsString(registeredAccount));
             ctx.status(200);
+            writeJson(ctx, JSON.getAccountWriter(), registeredAccount);
         }
         else
             ctx.status(400);
@@ -71,17 +345,17 @@ public class SocialMediaController {
      * Verifies the login of a user in the database.
      * Status 200 if successful, Status 401 if unsuccessful.
      * @param ctx The Javalin Context object, which provides information about the HTTP request and response.
-     * @throws JsonProcessingException
+     * @throws IOException
      */
-    private void loginHandler(Context ctx) throws JsonProcessingException{
-        ObjectMapper om = new ObjectMapper();
-        Account loginAccount = om.readValue(ctx.body(), Account.class);
+    private void loginHandler(Context ctx) throws IOException{
+        Account loginAccount = JSON.getAccountReader().readValue(ctx.bodyAsBytes());
         Account validatedAccount = this.accountService.loginAccount(loginAccount);
 
         //If the validated account is not null, it has been successfully found.
         if(validatedAccount != null){
-            ctx.json(om.writeValueAsString(validatedAccount));
             ctx.status(200);
+            ctx.header(TOKEN_HEADER, this.sessionTokens.issue(validatedAccount.getAccount_id()));
+            writeJson(ctx, JSON.getAccountWriter(), validatedAccount);
         }
 
         //If not, the account information is incorrect.
@@ -92,89 +366,224 @@ public class SocialMediaController {
     /**
      * Creates a new message in the database.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException
+     * @throws IOException
      */
-    private void createMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper om = new ObjectMapper();
-        Message newMessage = om.readValue(ctx.body(), Message.class);
+    private void createMessageHandler(Context ctx) throws IOException {
+        Message newMessage = JSON.getMessageReader().readValue(ctx.bodyAsBytes());
+        if(!checkCaller(ctx, newMessage.getPosted_by()))
+            return;
         Message validatedNewMessage = this.messageService.createMessage(newMessage);
 
         //If the validated message is not null, it has been successfully registered.
         if(validatedNewMessage != null){
-            ctx.json(om.writeValueAsString(validatedNewMessage));
             ctx.status(200);
+            writeJson(ctx, JSON.getMessageWriter(), validatedNewMessage);
         }
         else
             ctx.status(400);
     }
 
+    /**
+     * Creates several messages in the database with one batch insert. The body is a JSON array of messages (at most
+     * MessageService.MAX_BATCH_SIZE), and the response is one MessageResult per message, in the same order.
+     * Status 200 with the results, even if some messages failed. Status 400 if the body is not a valid array.
+     * With a session token, each message must be posted by the caller, or its result is 403.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException
+     */
+    private void createMessagesHandler(Context ctx) throws IOException {
+        List<Message> newMessages;
+        try{
+            newMessages = JSON.getMessageListReader().readValue(ctx.bodyAsBytes());
+        }
+        catch(IOException e){
+            ctx.status(400);
+            return;
+        }
+        if(newMessages == null || newMessages.isEmpty() || newMessages.size() > MessageService.MAX_BATCH_SIZE){
+            ctx.status(400);
+            return;
+        }
+        int caller = authenticate(ctx);
+        if(caller < 0)
+            return;
+
+        //Messages posted as someone else are answered 403 here, and the rest go to the service in one batch
+        MessageResult[] results = new MessageResult[newMessages.size()];
+        List<Message> allowedMessages = new ArrayList<>();
+        List<Integer> allowedIndexes = new ArrayList<>();
+        for(int i = 0; i < results.length; i++){
+            Message newMessage = newMessages.get(i);
+            if(caller > 0 && newMessage != null && newMessage.getPosted_by() != caller)
+                results[i] = MessageResult.failed(403, "posted_by is not the caller's account");
+            else{
+                allowedMessages.add(newMessage);
+                allowedIndexes.add(i);
+            }
+        }
+        if(caller > 0)
+            this.messageService.getKnownAccountIds().add(caller);
+
+        List<MessageResult> createdResults = this.messageService.createMessages(allowedMessages);
+        for(int i = 0; i < allowedIndexes.size(); i++)
+            results[allowedIndexes.get(i)] = createdResults.get(i);
+
+        ctx.status(200);
+        writeJson(ctx, JSON.getMessageResultListWriter(), Arrays.asList(results));
+    }
+
+    /**
+     * Deletes the messages with the ids given by the ids query parameter (at most MessageService.MAX_BATCH_SIZE) with
+     * a single statement. Status 200 with one MessageResult per id, in the same order. Status 400 if the ids are
+     * invalid. With a session token, only the caller's messages are deleted, and the others' results are 403.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException
+     */
+    private void deleteMessagesHandler(Context ctx) throws IOException {
+        List<Integer> ids = getIds(ctx);
+        if(ids == null){
+            ctx.status(400);
+            return;
+        }
+        int caller = authenticate(ctx);
+        if(caller < 0)
+            return;
+
+        ctx.status(200);
+        writeJson(ctx, JSON.getMessageResultListWriter(), this.messageService.deleteMessages(ids, caller));
+    }
+
     /**
      * Creates a list of all messages in the database.
+     * If paging query parameters are given, returns one page of messages instead (see isPageRequest).
+     * With latest=N (at most MessageService.MAX_PAGE_SIZE), returns the newest N messages, newest first, which are
+     * usually served from memory (see RecentMessages).
+     * With ids=1,2,3 (at most MessageService.MAX_BATCH_SIZE), returns one MessageResult per id, read with a single
+     * query.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        if(ctx.queryParam("ids") != null){
+            List<Integer> ids = getIds(ctx);
+            if(ids == null){
+                ctx.status(400);
+                return;
+            }
+            ctx.status(200);
+            writeCacheable(ctx, JSON.getMessageResultListWriter(), () -> this.messageService.getMessagesByIds(ids));
+            return;
+        }
+        if(ctx.queryParam("latest") != null){
+            Integer count = getLatestCount(ctx);
+            if(count == null){
+                ctx.status(400);
+                return;
+            }
+            ctx.status(200);
+            writeCacheable(ctx, JSON.getMessageListWriter(), () -> this.messageService.getLatestMessages(count));
+            return;
+        }
+        if(isPageRequest(ctx)){
+            PageCursor after = getPageCursor(ctx);
+            Integer limit = getPageLimit(ctx);
+            if(after == null || limit == null){
+                ctx.status(400);
+                return;
+            }
+            ctx.status(200);
+            writeCacheable(ctx, JSON.getMessagePageWriter(), () -> this.messageService.getMessagePage(after, limit));
+            return;
+        }
+        if(isStreamRequest(ctx)){
+            streamMessages(ctx, sink -> this.messageService.streamAllMessages(sink));
+            return;
+        }
+
+        ctx.status(200);
+        writeCacheable(ctx, JSON.getMessageListWriter(), () -> this.messageService.getAllMessages());
+    }
+
+    /**
+     * Finds the newest messages containing every term of the q query parameter, and every "quoted phrase" in it (see
+     * SearchIndex). At most limit messages are returned (100 by default, at most MessageService.MAX_PAGE_SIZE), newest
+     * first. Answers Status 400 if q has no terms or the limit is invalid, and Status 503 if the search index could
+     * not be built.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException
      */
-    private void getAllMessagesHandler(Context ctx) {
-        List<Message> allMessages = this.messageService.getAllMessages();
-        ctx.json(allMessages);
+    private void searchMessagesHandler(Context ctx) throws IOException {
+        SearchIndex.Query query = SearchIndex.Query.parse(ctx.queryParam("q"));
+        Integer limit = getPageLimit(ctx);
+        if(query == null || limit == null){
+            ctx.status(400);
+            return;
+        }
+        if(!this.messageService.getSearchIndex().isReady() && !this.messageService.buildSearchIndex()){
+            ctx.status(503);
+            ctx.header("Retry-After", "1");
+            return;
+        }
+
         ctx.status(200);
+        writeCacheable(ctx, JSON.getMessageListWriter(), () -> this.messageService.searchMessages(query, limit));
     }
 
     /**
      * Finds message information based on the message id.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException
+     * @throws IOException
      */
-    private void findMessageByIdHandler(Context ctx) throws JsonProcessingException{
-        ObjectMapper om = new ObjectMapper();
+    private void findMessageByIdHandler(Context ctx) throws IOException{
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
         Message currentMessage = this.messageService.getMessageByMessageId(messageId);
 
         //If there is message information, it has been successfully found.
+        ctx.status(200);
         if(currentMessage != null){
-            ctx.json(om.writeValueAsString(currentMessage));
+            writeJson(ctx, JSON.getMessageWriter(), currentMessage);
         }
         //If not, there is no message.
         else
             ctx.json("");
-
-        ctx.status(200);
     }
 
     /**
      * Deletes a message based on the message id.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException
+     * @throws IOException
      */
-    private void deleteMessageHandler(Context ctx) throws JsonProcessingException{
-        ObjectMapper om = new ObjectMapper();
+    private void deleteMessageHandler(Context ctx) throws IOException{
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
+        if(!checkMessageOwner(ctx, messageId))
+            return;
         Message currentMessage = this.messageService.deleteMessage(messageId);
 
         //If there is message information, a message has been successfully deleted.
+        ctx.status(200);
         if(currentMessage != null){
-            ctx.json(om.writeValueAsString(currentMessage));
+            writeJson(ctx, JSON.getMessageWriter(), currentMessage);
         }
         //If not, no message was deleted.
         else
             ctx.json("");
-
-        ctx.status(200);
     }
 
     /**
      * Updates a message based on the message id and message text provided.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException
+     * @throws IOException
      */
-    private void updateMessageHandler(Context ctx) throws JsonProcessingException{
-        ObjectMapper om = new ObjectMapper();
+    private void updateMessageHandler(Context ctx) throws IOException{
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Message messageText = om.readValue(ctx.body().toString(), Message.class);
+        Message messageText = JSON.getMessageReader().readValue(ctx.bodyAsBytes());
+        if(!checkMessageOwner(ctx, messageId))
+            return;
         Message currentMessage = this.messageService.updateMessage(messageId, messageText.getMessage_text());
 
         //If there is message information, a message has been successfully updated.
         if(currentMessage != null){
-            ctx.json(om.writeValueAsString(currentMessage));
             ctx.status(200);
+            writeJson(ctx, JSON.getMessageWriter(), currentMessage);
         }
         //If not, no message was updated.
         else{
@@ -185,11 +594,424 @@ public class SocialMediaController {
 
     /**
      * Creates a list of all messages in the database posted by the account id given.
+     * If paging query parameters are given, returns one page of messages instead (see isPageRequest).
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getAllMessagesFromAccountIdHandler(Context ctx) throws IOException {
+        int accountId = Integer.parseInt(ctx.pathParam("account_id"));
+        if(isPageRequest(ctx)){
+            PageCursor after = getPageCursor(ctx);
+            Integer limit = getPageLimit(ctx);
+            if(after == null || limit == null){
+                ctx.status(400);
+                return;
+            }
+            ctx.status(200);
+            writeCacheable(ctx, JSON.getMessagePageWriter(), () -> this.messageService.getMessagePageByAccountId(accountId, after, limit));
+            return;
+        }
+        if(isStreamRequest(ctx)){
+            streamMessages(ctx, sink -> this.messageService.streamAllMessagesByAccountId(accountId, sink));
+            return;
+        }
+
+        ctx.status(200);
+        writeCacheable(ctx, JSON.getMessageListWriter(), () -> this.messageService.getAllMessagesByAccountId(accountId));
+    }
+
+    /**
+     * Records a finished request in the route metrics. Javalin calls this after the response has been written.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param executionTimeMs The time Javalin spent on the request, in milliseconds.
      */
-    private void getAllMessagesFromAccountIdHandler(Context ctx) {
-        List<Message> allMessages = this.messageService.getAllMessagesByAccountId(Integer.parseInt(ctx.pathParam("account_id")));
-        ctx.json(allMessages);
+    private void recordRequest(Context ctx, Float executionTimeMs){
+        //A request that matched no route never gets past the before handlers
+        String route = ctx.handlerType() == HandlerType.BEFORE ? "unmatched" : ctx.endpointHandlerPath();
+        this.requestMetrics.record(ctx.method().name(), route, ctx.statusCode(),
+                (long) (executionTimeMs * 1000000));
+    }
+
+    /**
+     * Writes every metric of the app in the Prometheus text format: requests and latency per route, time spent in each
+     * DAO method, and the state of the connection pool and caches.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void metricsHandler(Context ctx){
+        PrometheusWriter metrics = new PrometheusWriter();
+
+        metrics.family("http_requests_total", "counter", "HTTP requests by route and status code.");
+        this.requestMetrics.forEach((method, route, routeMetrics) -> {
+            for(int status = 0; status < 600; status++){
+                long count = routeMetrics.getStatusCount(status);
+                if(count > 0)
+                    metrics.sample("http_requests_total",
+                            PrometheusWriter.labels("method", method, "route", route, "status", String.valueOf(status)), count);
+            }
+        });
+        metrics.family("http_request_duration_seconds", "histogram", "Time spent handling HTTP requests by route.");
+        this.requestMetrics.forEach((method, route, routeMetrics) -> metrics.histogram("http_request_duration_seconds",
+                PrometheusWriter.labels("method", method, "route", route), routeMetrics.getLatency()));
+
+        metrics.family("db_operation_duration_seconds", "histogram", "Time spent in each DAO method, including borrowing a connection.");
+        DbMetrics.forEach((operation, latency) ->
+                metrics.histogram("db_operation_duration_seconds", PrometheusWriter.labels("operation", operation), latency));
+
+        ConnectionPool pool = ConnectionUtil.getPool();
+        metrics.family("db_pool_connections", "gauge", "Pooled connections by state.")
+                .sample("db_pool_connections", PrometheusWriter.labels("state", "active"), pool.getActiveCount())
+                .sample("db_pool_connections", PrometheusWriter.labels("state", "idle"), pool.getIdleCount());
+        metrics.family("db_pool_max_connections", "gauge", "Maximum size of the connection pool.")
+                .sample("db_pool_max_connections", "", pool.getMaxSize());
+        metrics.family("db_pool_waiting_threads", "gauge", "Threads waiting for a connection.")
+                .sample("db_pool_waiting_threads", "", pool.getWaitingCount());
+        metrics.family("db_pool_acquire_total", "counter", "Connections borrowed from the pool.")
+                .sample("db_pool_acquire_total", "", pool.getAcquireCount());
+        metrics.family("db_pool_acquire_seconds_total", "counter", "Time spent waiting to borrow connections.")
+                .sample("db_pool_acquire_seconds_total", "", pool.getTotalAcquireNanos() / 1e9);
+        metrics.family("db_pool_acquire_timeouts_total", "counter", "Borrows that timed out.")
+                .sample("db_pool_acquire_timeouts_total", "", pool.getAcquireTimeoutCount());
+        metrics.family("db_pool_leaks_total", "counter", "Connections held past the leak threshold.")
+                .sample("db_pool_leaks_total", "", pool.getLeakCount());
+        metrics.family("db_statement_cache_requests_total", "counter", "Prepared statement cache lookups by result.")
+                .sample("db_statement_cache_requests_total", PrometheusWriter.labels("result", "hit"), pool.getStatementCacheHits())
+                .sample("db_statement_cache_requests_total", PrometheusWriter.labels("result", "miss"), pool.getStatementCacheMisses());
+
+        DbLimiter limiter = ConnectionUtil.getLimiter();
+        if(limiter != null){
+            metrics.family("db_limiter_permits", "gauge", "Database permits by state.")
+                    .sample("db_limiter_permits", PrometheusWriter.labels("state", "active"), limiter.getActiveCount())
+                    .sample("db_limiter_permits", PrometheusWriter.labels("state", "max"), limiter.getMaxConcurrent());
+            metrics.family("db_limiter_waiting_threads", "gauge", "Threads waiting for a database permit.")
+                    .sample("db_limiter_waiting_threads", "", limiter.getWaitingCount());
+            metrics.family("db_limiter_rejected_total", "counter", "Callers turned away without a database permit, by reason.")
+                    .sample("db_limiter_rejected_total", PrometheusWriter.labels("reason", "queue_full"), limiter.getRejectedCount())
+                    .sample("db_limiter_rejected_total", PrometheusWriter.labels("reason", "timeout"), limiter.getTimeoutCount());
+        }
+
+        LruCache<Integer, Message> messageCache = this.messageService.getMessageCache();
+        metrics.family("message_cache_requests_total", "counter", "Message cache lookups by result.")
+                .sample("message_cache_requests_total", PrometheusWriter.labels("result", "hit"), messageCache.getHitCount())
+                .sample("message_cache_requests_total", PrometheusWriter.labels("result", "miss"), messageCache.getMissCount());
+        metrics.family("message_cache_evictions_total", "counter", "Messages evicted from the cache.")
+                .sample("message_cache_evictions_total", "", messageCache.getEvictionCount());
+        metrics.family("message_cache_entries", "gauge", "Messages currently cached.")
+                .sample("message_cache_entries", "", messageCache.size());
+        metrics.family("message_cache_load_seconds", "summary", "Time spent loading messages missing from the cache.")
+                .sample("message_cache_load_seconds_sum", "", messageCache.getTotalLoadNanos() / 1e9)
+                .sample("message_cache_load_seconds_count", "", messageCache.getLoadCount());
+
+        PasswordHasher passwordHasher = this.accountService.getPasswordHasher();
+        Bulkhead[] bulkheads = {this.reads, this.writes, this.bulk, this.auth, passwordHasher.getExecutor()};
+        metrics.family("executor_threads", "gauge", "Handler threads per bulkhead by state.");
+        for(Bulkhead bulkhead : bulkheads)
+            metrics.sample("executor_threads", PrometheusWriter.labels("executor", bulkhead.getName(), "state", "active"), bulkhead.getActiveCount())
+                    .sample("executor_threads", PrometheusWriter.labels("executor", bulkhead.getName(), "state", "max"), bulkhead.getThreads());
+        metrics.family("executor_queued_tasks", "gauge", "Handlers waiting for a bulkhead thread.");
+        for(Bulkhead bulkhead : bulkheads)
+            metrics.sample("executor_queued_tasks", PrometheusWriter.labels("executor", bulkhead.getName()), bulkhead.getQueuedCount());
+        metrics.family("executor_queue_capacity", "gauge", "Handlers that may wait for a bulkhead thread.");
+        for(Bulkhead bulkhead : bulkheads)
+            metrics.sample("executor_queue_capacity", PrometheusWriter.labels("executor", bulkhead.getName()), bulkhead.getQueueCapacity());
+        metrics.family("executor_rejected_total", "counter", "Requests answered with 503 because the bulkhead was full.");
+        for(Bulkhead bulkhead : bulkheads)
+            metrics.sample("executor_rejected_total", PrometheusWriter.labels("executor", bulkhead.getName()), bulkhead.getRejectedCount());
+        metrics.family("executor_queue_wait_seconds_total", "counter", "Time handlers spent waiting for a bulkhead thread.");
+        for(Bulkhead bulkhead : bulkheads)
+            metrics.sample("executor_queue_wait_seconds_total", PrometheusWriter.labels("executor", bulkhead.getName()), bulkhead.getTotalQueueWaitNanos() / 1e9);
+
+        TimelineStore timelines = this.messageService.getTimelines();
+        metrics.family("timeline_requests_total", "counter", "Account message list reads by result.")
+                .sample("timeline_requests_total", PrometheusWriter.labels("result", "hit"), timelines.getHitCount())
+                .sample("timeline_requests_total", PrometheusWriter.labels("result", "miss"), timelines.getMissCount())
+                .sample("timeline_requests_total", PrometheusWriter.labels("result", "incomplete"), timelines.getIncompleteReadCount());
+        metrics.family("timeline_evictions_total", "counter", "Timelines evicted to stay within the memory budget.")
+                .sample("timeline_evictions_total", "", timelines.getEvictionCount());
+        metrics.family("timeline_entries", "gauge", "Accounts with a cached timeline.")
+                .sample("timeline_entries", "", timelines.size());
+        metrics.family("timeline_bytes", "gauge", "Estimated memory used by cached timelines.")
+                .sample("timeline_bytes", "", timelines.getBytes());
+
+        RecentMessages recentMessages = this.messageService.getRecentMessages();
+        metrics.family("recent_messages_requests_total", "counter", "Newest-message reads by result.")
+                .sample("recent_messages_requests_total", PrometheusWriter.labels("result", "hit"), recentMessages.getHitCount())
+                .sample("recent_messages_requests_total", PrometheusWriter.labels("result", "miss"), recentMessages.getMissCount());
+
+        SearchIndex searchIndex = this.messageService.getSearchIndex();
+        metrics.family("search_queries_total", "counter", "Searches run against the index.")
+                .sample("search_queries_total", "", searchIndex.getQueryCount());
+        metrics.family("search_candidates_total", "counter", "Messages found in the index and checked against their text, by result.")
+                .sample("search_candidates_total", PrometheusWriter.labels("result", "match"), searchIndex.getMatchCount())
+                .sample("search_candidates_total", PrometheusWriter.labels("result", "rejected"), searchIndex.getRejectedCount());
+        metrics.family("search_index_terms", "gauge", "Distinct terms in the search index.")
+                .sample("search_index_terms", "", searchIndex.getTermCount());
+        metrics.family("search_index_postings", "gauge", "Term and message pairs in the search index.")
+                .sample("search_index_postings", "", searchIndex.getPostingCount());
+        metrics.family("search_index_bytes", "gauge", "Estimated memory used by the search index.")
+                .sample("search_index_bytes", "", searchIndex.getBytes());
+
+        metrics.family("response_bodies_total", "counter", "List response bodies by encoding, encoded for the request or reused from the cache.");
+        for(ResponseEncoder.Encoding encoding : ResponseEncoder.Encoding.values()){
+            metrics.sample("response_bodies_total", PrometheusWriter.labels("encoding", encoding.getToken(), "source", "encoded"), this.responseEncoder.getEncodedCount(encoding))
+                    .sample("response_bodies_total", PrometheusWriter.labels("encoding", encoding.getToken(), "source", "cache"), this.responseEncoder.getReusedCount(encoding));
+        }
+        metrics.family("response_uncompressed_bytes_total", "counter", "Size of list response bodies before compression, by encoding.");
+        for(ResponseEncoder.Encoding encoding : ResponseEncoder.Encoding.values())
+            metrics.sample("response_uncompressed_bytes_total", PrometheusWriter.labels("encoding", encoding.getToken()), this.responseEncoder.getUncompressedBytes(encoding));
+        metrics.family("response_sent_bytes_total", "counter", "Size of list response bodies as sent, by encoding.");
+        for(ResponseEncoder.Encoding encoding : ResponseEncoder.Encoding.values())
+            metrics.sample("response_sent_bytes_total", PrometheusWriter.labels("encoding", encoding.getToken()), this.responseEncoder.getSentBytes(encoding));
+        metrics.family("response_compression_cpu_seconds_total", "counter", "CPU time spent compressing list response bodies, by encoding.");
+        for(ResponseEncoder.Encoding encoding : ResponseEncoder.Encoding.values())
+            metrics.sample("response_compression_cpu_seconds_total", PrometheusWriter.labels("encoding", encoding.getToken()), this.responseEncoder.getCpuNanos(encoding) / 1e9);
+        metrics.family("response_cache_entries", "gauge", "Encoded list bodies held in the response cache.")
+                .sample("response_cache_entries", "", this.responseCache.size());
+
+        KnownAccountIds knownAccountIds = this.messageService.getKnownAccountIds();
+        metrics.family("account_id_cache_requests_total", "counter", "Known account id lookups by result.")
+                .sample("account_id_cache_requests_total", PrometheusWriter.labels("result", "hit"), knownAccountIds.getHitCount())
+                .sample("account_id_cache_requests_total", PrometheusWriter.labels("result", "miss"), knownAccountIds.getMissCount());
+
+        BloomFilter usernameFilter = this.accountService.getUsernameFilter();
+        metrics.family("username_filter_requests_total", "counter", "Taken username filter lookups by answer.")
+                .sample("username_filter_requests_total", PrometheusWriter.labels("result", "maybe"), usernameFilter.getPositiveCount())
+                .sample("username_filter_requests_total", PrometheusWriter.labels("result", "absent"), usernameFilter.getNegativeCount());
+        LruCache<String, Boolean> usernameCache = this.accountService.getUsernameCache();
+        metrics.family("username_cache_requests_total", "counter", "Taken username cache lookups by result.")
+                .sample("username_cache_requests_total", PrometheusWriter.labels("result", "hit"), usernameCache.getHitCount())
+                .sample("username_cache_requests_total", PrometheusWriter.labels("result", "miss"), usernameCache.getMissCount());
+
+        metrics.family("password_hashes_total", "counter", "PBKDF2 computations, for hashing and verifying passwords.")
+                .sample("password_hashes_total", "", passwordHasher.getHashCount());
+        metrics.family("password_hash_seconds_total", "counter", "Time spent computing PBKDF2.")
+                .sample("password_hash_seconds_total", "", passwordHasher.getTotalHashNanos() / 1e9);
+        metrics.family("password_hash_iterations", "gauge", "PBKDF2 iterations used for new password hashes.")
+                .sample("password_hash_iterations", "", passwordHasher.getIterations());
+        metrics.family("auth_tokens_issued_total", "counter", "Session tokens issued by /login.")
+                .sample("auth_tokens_issued_total", "", this.sessionTokens.getIssuedCount());
+        metrics.family("auth_tokens_verified_total", "counter", "Session tokens checked, by result.")
+                .sample("auth_tokens_verified_total", PrometheusWriter.labels("result", "valid"), this.sessionTokens.getValidCount())
+                .sample("auth_tokens_verified_total", PrometheusWriter.labels("result", "invalid"), this.sessionTokens.getInvalidCount())
+                .sample("auth_tokens_verified_total", PrometheusWriter.labels("result", "expired"), this.sessionTokens.getExpiredCount());
+        metrics.family("auth_token_keys", "gauge", "Keys that currently verify session tokens.")
+                .sample("auth_token_keys", "", this.sessionTokens.getKeyCount());
+
+        GroupCommitWriter groupCommitWriter = this.messageService.getGroupCommitWriter();
+        if(groupCommitWriter != null){
+            metrics.family("message_group_commit_batches_total", "counter", "Batches written by group commit.")
+                    .sample("message_group_commit_batches_total", "", groupCommitWriter.getBatchCount());
+            metrics.family("message_group_commit_messages_total", "counter", "Messages written by group commit.")
+                    .sample("message_group_commit_messages_total", "", groupCommitWriter.getMessageCount());
+            metrics.family("message_group_commit_fallbacks_total", "counter", "Batches retried one message at a time.")
+                    .sample("message_group_commit_fallbacks_total", "", groupCommitWriter.getFallbackCount());
+        }
+
+        ctx.contentType(PrometheusWriter.CONTENT_TYPE);
+        ctx.result(metrics.toString());
         ctx.status(200);
     }
-}
\ No newline at end of file
+
+    /**
+     * List routes return a plain JSON array unless the client asks for a page with any of these query parameters:
+     *  limit: the page size (default 100, at most MessageService.MAX_PAGE_SIZE)
+     *  after: the next_cursor of the previous page, or a plain message_id / time_posted_epoch to start after
+     *  order_by: message_id (default) or time_posted_epoch
+     * A page is returned as a MessagePage object.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return true if the request asks for a page.
+     */
+    private boolean isPageRequest(Context ctx){
+        return ctx.queryParam("limit") != null || ctx.queryParam("after") != null || ctx.queryParam("order_by") != null;
+    }
+
+    /**
+     * An unpaged list request with stream=true is written to the response row by row as the query reads it, using
+     * chunked transfer, instead of being collected into a list first.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return true if the request asks for a streamed list.
+     */
+    private boolean isStreamRequest(Context ctx){
+        return "true".equals(ctx.queryParam("stream"));
+    }
+
+    /**
+     * A query that hands its rows to a MessageSink.
+     */
+    private interface MessageQuery {
+        void run(MessageSink sink) throws IOException;
+    }
+
+    /**
+     * Writes the messages produced by a query to the response as a JSON array, one message at a time. The first row
+     * is flushed straight away so the client starts receiving data before the query finishes.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param query The query producing the messages.
+     */
+    private void streamMessages(Context ctx, MessageQuery query){
+        ctx.status(200);
+        ctx.contentType("application/json");
+        ResponseEncoder.Encoding encoding = this.responseEncoder.negotiate(ctx.header("Accept-Encoding"));
+        if(encoding != ResponseEncoder.Encoding.IDENTITY)
+            ctx.header("Content-Encoding", encoding.getToken());
+        try(JsonGenerator generator = JSON.getFactory().createGenerator(encoding == ResponseEncoder.Encoding.IDENTITY
+                ? ctx.outputStream() : this.responseEncoder.compress(ctx.outputStream()))){
+            generator.writeStartArray();
+            query.run(new MessageSink(){
+                private boolean first = true;
+
+                @Override
+                public void accept(Message message) throws IOException {
+                    generator.writeStartObject();
+                    generator.writeNumberField("message_id", message.getMessage_id());
+                    generator.writeNumberField("posted_by", message.getPosted_by());
+                    generator.writeStringField("message_text", message.getMessage_text());
+                    generator.writeNumberField("time_posted_epoch", message.getTime_posted_epoch());
+                    generator.writeEndObject();
+                    if(first){
+                        generator.flush();
+                        first = false;
+                    }
+                }
+            });
+            generator.writeEndArray();
+        }
+        catch(IOException e){
+            //The response has already started, so the client sees a truncated body
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Serializes a value straight into the response body, without building an intermediate String. The status must
+     * be set before calling this, since writing the body commits the response.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param writer The prebuilt writer for the value's type.
+     * @param value The value to send.
+     * @throws IOException
+     */
+    private void writeJson(Context ctx, ObjectWriter writer, Object value) throws IOException {
+        ctx.contentType("application/json");
+        writer.writeValue(ctx.outputStream(), value);
+    }
+
+    /**
+     * Sends a list response in the negotiated encoding. The encoded body is cached under the request path and the
+     * response's ETag (see isNotModified), which covers the version of the data, the query and the encoding, so
+     * every later request for the same list at the same version is answered with the cached bytes, without a query,
+     * serialization or compression. Old versions are never asked for again and age out of the cache. The status must
+     * be set before calling this.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param writer The prebuilt writer for the value's type.
+     * @param value Reads the value to send. Not called if the body is cached.
+     * @throws IOException
+     */
+    private void writeCacheable(Context ctx, ObjectWriter writer, Supplier<Object> value) throws IOException {
+        ResponseEncoder.Encoding encoding = this.responseEncoder.negotiate(ctx.header("Accept-Encoding"));
+        String etag = ctx.res().getHeader("ETag");
+        ResponseEncoder.Encoded body = etag == null ? null : this.responseCache.getIfPresent(ctx.path() + " " + etag);
+        if(body != null)
+            this.responseEncoder.reused(body);
+        else{
+            try{
+                if(etag == null)
+                    body = encode(writer, value, encoding);
+                else
+                    body = this.responseCache.get(ctx.path() + " " + etag, key -> encode(writer, value, encoding));
+            }
+            catch(UncheckedIOException e){
+                throw e.getCause();
+            }
+        }
+
+        ctx.contentType("application/json");
+        if(body.getEncoding() != ResponseEncoder.Encoding.IDENTITY)
+            ctx.header("Content-Encoding", body.getEncoding().getToken());
+        ctx.res().setContentLength(body.getBody().length);
+        ctx.outputStream().write(body.getBody());
+    }
+
+    private ResponseEncoder.Encoded encode(ObjectWriter writer, Supplier<Object> value, ResponseEncoder.Encoding encoding){
+        try{
+            return this.responseEncoder.encode(writer.writeValueAsBytes(value.get()), encoding);
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return The cursor given by the order_by and after query parameters, or null if they are invalid.
+     */
+    private PageCursor getPageCursor(Context ctx){
+        String orderBy = ctx.queryParam("order_by");
+        if(orderBy != null && !orderBy.equals("message_id") && !orderBy.equals("time_posted_epoch"))
+            return null;
+
+        try{
+            return PageCursor.parse(ctx.queryParam("after"), "time_posted_epoch".equals(orderBy));
+        }
+        catch(IllegalArgumentException e){
+            return null;
+        }
+    }
+
+    /**
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return The page size given by the limit query parameter, or null if it is invalid.
+     */
+    private Integer getPageLimit(Context ctx){
+        String limit = ctx.queryParam("limit");
+        if(limit == null)
+            return 100;
+
+        try{
+            int pageSize = Integer.parseInt(limit);
+            if(pageSize < 1 || pageSize > MessageService.MAX_PAGE_SIZE)
+                return null;
+            return pageSize;
+        }
+        catch(NumberFormatException e){
+            return null;
+        }
+    }
+
+    /**
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return The number of messages given by the latest query parameter, or null if it is invalid.
+     */
+    private Integer getLatestCount(Context ctx){
+        try{
+            int count = Integer.parseInt(ctx.queryParam("latest"));
+            if(count < 1 || count > MessageService.MAX_PAGE_SIZE)
+                return null;
+            return count;
+        }
+        catch(NumberFormatException e){
+            return null;
+        }
+    }
+
+    /**
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return The message ids given by the ids query parameter, comma separated, or null if they are missing, invalid
+     * or more than MessageService.MAX_BATCH_SIZE.
+     */
+    private List<Integer> getIds(Context ctx){
+        String ids = ctx.queryParam("ids");
+        if(ids == null || ids.isBlank())
+            return null;
+
+        String[] values = ids.split(",");
+        if(values.length > MessageService.MAX_BATCH_SIZE)
+            return null;
+        List<Integer> messageIds = new ArrayList<>(values.length);
+        try{
+            for(String value : values)
+                messageIds.add(Integer.parseInt(value.trim()));
+        }
+        catch(NumberFormatException e){
+            return null;
+        }
+        return messageIds;
+    }
+}
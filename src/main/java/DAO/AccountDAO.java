@@ -2,21 +2,35 @@ package DAO;
 
 import Model.Account;
 import java.sql.*;
-import Util.ConnectionUtil;
+import java.util.function.Consumer;
+import Util.UnitOfWork;
 
 public class AccountDAO {
 
+    //SQL run by this DAO. Every query is expected to use an index (see QueryPlanTest).
+    public static final String INSERT_ACCOUNT = "INSERT INTO account (username, password) VALUES (?, ?)";
+    public static final String SELECT_ACCOUNT_BY_ID = "SELECT * FROM account WHERE account_id = ?";
+    public static final String ACCOUNT_EXISTS = "SELECT 1 FROM account WHERE account_id = ?";
+    public static final String SELECT_ACCOUNT_BY_USERNAME = "SELECT * FROM account WHERE username = ?";
+    //Replaces a password only if it has not changed since it was read
+    public static final String UPDATE_PASSWORD = "UPDATE account SET password = ? WHERE account_id = ? AND password = ?";
+    public static final String USERNAME_EXISTS = "SELECT 1 FROM account WHERE username = ?";
+    //Reads the whole table, once at startup
+    public static final String SELECT_ALL_USERNAMES = "SELECT username FROM account";
+
+    //SQLState of a unique constraint violation, such as a username that is already taken
+    public static final String UNIQUE_VIOLATION = "23505";
+
     /**
-     * Registers an account to the database.
+     * Registers an account to the database. The unique constraint on username decides whether the username is free,
+     * so there is no separate lookup to race with.
      * @param newAccount The account information for the new account.
-     * @return Returns the registered account information if successful. Returns null if not successful.
+     * @return Returns the registered account information if successful. Returns null if not successful, including when
+     * the username is already taken.
      */
     public Account registerAccount(Account newAccount){
-        //Connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("AccountDAO.registerAccount")){
+            PreparedStatement preparedStatement = unitOfWork.prepareInsert(INSERT_ACCOUNT);
 
             //Sets the parameters of the account in the SQL statement
             preparedStatement.setString(1, newAccount.getUsername());
@@ -25,14 +39,17 @@ public class AccountDAO {
             preparedStatement.executeUpdate();
 
             //Grabs the auto-incremented account id and creates a new Account object
-            ResultSet accountResult = preparedStatement.getGeneratedKeys();
-            if(accountResult.next()){
-                int generated_account_id = (int) accountResult.getLong(1);
-                return new Account(generated_account_id, newAccount.getUsername(), newAccount.getPassword());
-            }        
+            try(ResultSet accountResult = preparedStatement.getGeneratedKeys()){
+                if(accountResult.next()){
+                    int generated_account_id = (int) accountResult.getLong(1);
+                    return new Account(generated_account_id, newAccount.getUsername(), newAccount.getPassword());
+                }
+            }
         }
         catch(SQLException e){
-            System.out.println(e.getMessage());
+            //A taken username is an expected outcome, not an error
+            if(!UNIQUE_VIOLATION.equals(e.getSQLState()))
+                System.out.println(e.getMessage());
         }
 
         return null;
@@ -44,21 +61,15 @@ public class AccountDAO {
      * @return Returns the account information if found. Returns null if no user found.
      */
     public Account searchAccountByID(int id){
-        //Connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "SELECT * FROM account WHERE account_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("AccountDAO.searchAccountByID")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(SELECT_ACCOUNT_BY_ID);
 
             //Sets the parameters of the account in the SQL statement
             preparedStatement.setInt(1, id);
 
-            ResultSet accountResult = preparedStatement.executeQuery();
-            while(accountResult.next()){
-                Account account = new Account(accountResult.getInt("account_id"),
-                accountResult.getString("username"),
-                accountResult.getString("password"));
-                return account;
+            try(ResultSet accountResult = preparedStatement.executeQuery()){
+                if(accountResult.next())
+                    return mapAccount(accountResult);
             }
         }
         catch(SQLException e){
@@ -68,27 +79,44 @@ public class AccountDAO {
         return null;
     }
 
+    /**
+     * Checks whether an account with the id given exists, without reading the rest of the row.
+     * @param id The id to search for in the database.
+     * @return Returns true if the account exists.
+     */
+    public boolean accountExists(int id){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("AccountDAO.accountExists")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(ACCOUNT_EXISTS);
+
+            //Sets the parameters of the account in the SQL statement
+            preparedStatement.setInt(1, id);
+
+            try(ResultSet accountResult = preparedStatement.executeQuery()){
+                return accountResult.next();
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+
+        return false;
+    }
+
     /**
      * Searches for an account in the database based on the username given.
      * @param username The username to search for in the database.
      * @return Returns the account information if found. Returns null if no user found.
      */
     public Account searchAccountByUsername(String username){
-        //Connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "SELECT * FROM account WHERE username = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("AccountDAO.searchAccountByUsername")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(SELECT_ACCOUNT_BY_USERNAME);
 
             //Sets the parameters of the account in the SQL statement
             preparedStatement.setString(1, username);
 
-            ResultSet accountResult = preparedStatement.executeQuery();
-            while(accountResult.next()){
-                Account account = new Account(accountResult.getInt("account_id"),
-                accountResult.getString("username"),
-                accountResult.getString("password"));
-                return account;
+            try(ResultSet accountResult = preparedStatement.executeQuery()){
+                if(accountResult.next())
+                    return mapAccount(accountResult);
             }
         }
         catch(SQLException e){
@@ -99,35 +127,81 @@ public class AccountDAO {
     }
 
     /**
-     * Checks the database to see if the current username and password credentials are in the database.
-     * @param username The username of the account.
-     * @param password The password of the account.
-     * @return Returns the account info if successful. Returns null if not successful.
+     * Checks whether an account with the username given exists, without reading the rest of the row.
+     * @param username The username to search for in the database.
+     * @return Returns true if the username is taken.
      */
-    public Account checkAccountCredentials(String username, String password){
-                //Connect to the database
-                Connection connection = ConnectionUtil.getConnection();
-                try{
-                    String sql = "SELECT * FROM account WHERE username = ? AND password = ?";
-                    PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-        
-                    //Sets the parameters of the account in the SQL statement
-                    preparedStatement.setString(1, username);
-                    preparedStatement.setString(2, password);
-        
-                    ResultSet accountResult = preparedStatement.executeQuery();
-                    while(accountResult.next()){
-                        Account account = new Account(accountResult.getInt("account_id"),
-                        accountResult.getString("username"),
-                        accountResult.getString("password"));
-                        return account;
-                    }
-                }
-                catch(SQLException e){
-                    System.out.println(e.getMessage());
-                }
-        
-                return null;
+    public boolean usernameExists(String username){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("AccountDAO.usernameExists")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(USERNAME_EXISTS);
+
+            //Sets the parameters of the account in the SQL statement
+            preparedStatement.setString(1, username);
+
+            try(ResultSet accountResult = preparedStatement.executeQuery()){
+                return accountResult.next();
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Hands every username in the database to a consumer, one row at a time.
+     * @param consumer Receives each username.
+     */
+    public void forEachUsername(Consumer<String> consumer){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("AccountDAO.forEachUsername")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(SELECT_ALL_USERNAMES);
+
+            try(ResultSet accountResult = preparedStatement.executeQuery()){
+                while(accountResult.next())
+                    consumer.accept(accountResult.getString(1));
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the stored password of an account, if it is still the one the caller read.
+     * @param accountId The id of the account.
+     * @param expectedPassword The stored password the caller read.
+     * @param newPassword The password to store instead.
+     * @return Returns true if the password was replaced.
+     */
+    public boolean updatePassword(int accountId, String expectedPassword, String newPassword){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("AccountDAO.updatePassword")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(UPDATE_PASSWORD);
+
+            //Sets the parameters of the account in the SQL statement
+            preparedStatement.setString(1, newPassword);
+            preparedStatement.setInt(2, accountId);
+            preparedStatement.setString(3, expectedPassword);
+
+            return preparedStatement.executeUpdate() == 1;
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates an Account object from the current row of a result set.
+     * @param accountResult The result set, positioned on an account row.
+     * @return The account information in the row.
+     * @throws SQLException If a column could not be read.
+     */
+    private Account mapAccount(ResultSet accountResult) throws SQLException{
+        return new Account(accountResult.getInt("account_id"),
+                accountResult.getString("username"),
+                accountResult.getString("password"));
     }
 
 }
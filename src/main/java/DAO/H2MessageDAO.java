@@ -0,0 +1,488 @@
+package DAO;
+
+import Model.Message;
+import java.io.IOException;
+import java.sql.*;
+import Util.PageCursor;
+import Util.UnitOfWork;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MessageDAO that stores messages in the H2 message table, through the shared connection pool (see UnitOfWork).
+ * Every method runs in the caller's unit of work if there is one, so it joins the caller's transaction.
+ */
+public class H2MessageDAO implements MessageDAO {
+
+    //SQL run by this DAO. Every query except SELECT_ALL_MESSAGES is expected to use an index (see QueryPlanTest).
+    public static final String INSERT_MESSAGE = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+    public static final String SELECT_ALL_MESSAGES = "SELECT * FROM message";
+    public static final String SELECT_MESSAGE_BY_ID = "SELECT * FROM message WHERE message_id = ?";
+    public static final String DELETE_MESSAGE_BY_ID = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
+    public static final String UPDATE_MESSAGE_TEXT = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
+    public static final String REPLACE_MESSAGE_TEXT = "SELECT * FROM OLD TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
+    public static final String SELECT_MESSAGES_BY_ACCOUNT = "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id";
+    public static final String SELECT_PAGE_BY_TIME = "SELECT * FROM message WHERE time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?) ORDER BY time_posted_epoch, message_id LIMIT ?";
+    public static final String SELECT_PAGE_BY_ID = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+    public static final String SELECT_ACCOUNT_PAGE_BY_TIME = "SELECT * FROM message WHERE posted_by = ? AND time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?) ORDER BY time_posted_epoch, message_id LIMIT ?";
+    public static final String SELECT_ACCOUNT_PAGE_BY_ID = "SELECT * FROM message WHERE posted_by = ? AND message_id > ? ORDER BY message_id LIMIT ?";
+    public static final String SELECT_NEWEST_MESSAGES = "SELECT * FROM message ORDER BY message_id DESC LIMIT ?";
+    //Id lists are bound as one array parameter, so each statement has a single shape whatever the number of ids
+    public static final String SELECT_MESSAGES_BY_IDS = "SELECT * FROM message WHERE message_id = ANY(?)";
+    public static final String DELETE_MESSAGES_BY_IDS = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ANY(?))";
+    public static final String DELETE_OWN_MESSAGES_BY_IDS = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ANY(?) AND posted_by = ?)";
+
+    /**
+     * Creates a new message and stores it in the database.
+     * @param newMessage The information for the message.
+     * @return Returns the message information if successful. Returns null if unsuccessful.
+     */
+    @Override
+    public Message createNewMessage(Message newMessage){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.createNewMessage")){
+            PreparedStatement preparedStatement = unitOfWork.prepareInsert(INSERT_MESSAGE);
+
+            //Sets the parameters of the message in the SQL statement
+            preparedStatement.setInt(1, newMessage.getPosted_by());
+            preparedStatement.setString(2, newMessage.getMessage_text());
+            preparedStatement.setLong(3, newMessage.getTime_posted_epoch());
+
+            preparedStatement.executeUpdate();
+
+            //Grabs the auto-incremented message id and creates a new Message object
+            try(ResultSet messageResult = preparedStatement.getGeneratedKeys()){
+                if(messageResult.next()){
+                    int generated_message_id = (int) messageResult.getLong(1);
+                    return new Message(generated_message_id, newMessage.getPosted_by(), newMessage.getMessage_text(), newMessage.getTime_posted_epoch());
+                }
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates several messages with one JDBC batch in a single transaction. Either every message is stored or none is.
+     * @param newMessages The information for the messages.
+     * @return Returns the stored messages, in the same order, with their generated ids. Returns null if unsuccessful.
+     */
+    @Override
+    public List<Message> createNewMessages(List<Message> newMessages){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.createNewMessages")){
+            Connection connection = unitOfWork.getConnection();
+            PreparedStatement preparedStatement = unitOfWork.prepareInsert(INSERT_MESSAGE);
+
+            //Only manage the transaction if the caller is not already running one
+            boolean ownTransaction = connection.getAutoCommit();
+            if(ownTransaction)
+                connection.setAutoCommit(false);
+            try{
+                for(Message newMessage : newMessages){
+                    preparedStatement.setInt(1, newMessage.getPosted_by());
+                    preparedStatement.setString(2, newMessage.getMessage_text());
+                    preparedStatement.setLong(3, newMessage.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                //Generated ids come back in the order the rows were added to the batch
+                List<Message> createdMessages = new ArrayList<>(newMessages.size());
+                try(ResultSet messageResult = preparedStatement.getGeneratedKeys()){
+                    for(Message newMessage : newMessages){
+                        if(!messageResult.next())
+                            throw new SQLException("Missing generated key for batched message");
+                        createdMessages.add(new Message((int) messageResult.getLong(1), newMessage.getPosted_by(),
+                                newMessage.getMessage_text(), newMessage.getTime_posted_epoch()));
+                    }
+                }
+
+                if(ownTransaction)
+                    connection.commit();
+                return createdMessages;
+            }
+            catch(SQLException e){
+                preparedStatement.clearBatch();
+                if(ownTransaction)
+                    connection.rollback();
+                throw e;
+            }
+            finally{
+                if(ownTransaction)
+                    connection.setAutoCommit(true);
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Stores a list of all messages in the database.
+     * @return Returns a list of all message information in the database.
+     */
+    @Override
+    public List<Message> getAllMessages(){
+        List<Message> allMessages = new ArrayList<>();
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.getAllMessages")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(SELECT_ALL_MESSAGES);
+
+            try(ResultSet messageResults = preparedStatement.executeQuery()){
+                while(messageResults.next())
+                    allMessages.add(mapMessage(messageResults));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return allMessages;
+    }
+
+    /**
+     * Gets a message based on the message id given.
+     * @param id The id of the message.
+     * @return If the message is found, the message information is returned. If no message is found, return null.
+     */
+    @Override
+    public Message getMessageByMessageId(int id){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.getMessageByMessageId")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(SELECT_MESSAGE_BY_ID);
+
+            //Sets the parameters of the message in the SQL statement
+            preparedStatement.setInt(1, id);
+
+            try(ResultSet messageResult = preparedStatement.executeQuery()){
+                if(messageResult.next())
+                    return mapMessage(messageResult);
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets every message with one of the ids given, in a single query.
+     * @param ids The ids of the messages.
+     * @return Returns the messages found, in no particular order. Ids with no message are left out.
+     */
+    @Override
+    public List<Message> getMessagesByIds(List<Integer> ids){
+        List<Message> messages = new ArrayList<>(ids.size());
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.getMessagesByIds")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(SELECT_MESSAGES_BY_IDS);
+            preparedStatement.setObject(1, ids.toArray(new Integer[0]));
+
+            try(ResultSet messageResults = preparedStatement.executeQuery()){
+                while(messageResults.next())
+                    messages.add(mapMessage(messageResults));
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Deletes every message with one of the ids given in a single statement, so either all of them are deleted or
+     * none is. The deleted rows are read back from the DELETE itself.
+     * @param ids The ids of the messages.
+     * @param posted_by Only delete messages posted by this account, or 0 to delete any of them.
+     * @return Returns the messages deleted, in no particular order. Returns null if unsuccessful.
+     */
+    @Override
+    public List<Message> deleteMessages(List<Integer> ids, int posted_by){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.deleteMessages")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(posted_by == 0 ? DELETE_MESSAGES_BY_IDS : DELETE_OWN_MESSAGES_BY_IDS);
+            preparedStatement.setObject(1, ids.toArray(new Integer[0]));
+            if(posted_by != 0)
+                preparedStatement.setInt(2, posted_by);
+
+            List<Message> deletedMessages = new ArrayList<>(ids.size());
+            try(ResultSet messageResults = preparedStatement.executeQuery()){
+                while(messageResults.next())
+                    deletedMessages.add(mapMessage(messageResults));
+            }
+            return deletedMessages;
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Deletes the message information based on the message id given. The deleted row is read back from the DELETE
+     * itself (H2's OLD TABLE), so this is a single statement with no window for another request to change the row.
+     * @param id The id of the message.
+     * @return If the message is deleted, the message information is returned. If no message is found, return null.
+     */
+    @Override
+    public Message deleteMessage(int id){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.deleteMessage")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(DELETE_MESSAGE_BY_ID);
+
+            //Sets the parameters of the message in the SQL statement
+            preparedStatement.setInt(1, id);
+
+            try(ResultSet deletedMessage = preparedStatement.executeQuery()){
+                if(deletedMessage.next())
+                    return mapMessage(deletedMessage);
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Updates the message information based on the message id given. The updated row is read back from the UPDATE
+     * itself (H2's FINAL TABLE), so this is a single statement with no window for another request to change the row.
+     * @param id The id of the message.
+     * @param newMessage The new message to update the database with.
+     * @return If the message was successfully updated, the message information is returned. If no message is found, return null.
+     */
+    @Override
+    public Message updateMessage(int id, String newMessage){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.updateMessage")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(UPDATE_MESSAGE_TEXT);
+
+            //Sets the parameters of the message in the SQL statement
+            preparedStatement.setString(1, newMessage);
+            preparedStatement.setInt(2, id);
+
+            try(ResultSet updatedMessage = preparedStatement.executeQuery()){
+                if(updatedMessage.next())
+                    return mapMessage(updatedMessage);
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Updates the message information based on the message id given, reading the row as it was from the UPDATE
+     * itself (H2's OLD TABLE). Inside a transaction the row stays locked until the commit.
+     * @param id The id of the message.
+     * @param newMessage The new message to update the database with.
+     * @return If the message was successfully updated, the message information as it was is returned. If no message
+     * is found, return null.
+     */
+    @Override
+    public Message replaceMessageText(int id, String newMessage){
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.replaceMessageText")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(REPLACE_MESSAGE_TEXT);
+
+            //Sets the parameters of the message in the SQL statement
+            preparedStatement.setString(1, newMessage);
+            preparedStatement.setInt(2, id);
+
+            try(ResultSet previousMessage = preparedStatement.executeQuery()){
+                if(previousMessage.next())
+                    return mapMessage(previousMessage);
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Stores a list of all messages in the database posted by the account id given.
+     * @param account_id The account id to check the messages for.
+     * @return Returns a list of all message information in the database linked to the account id given, in
+     * message_id order.
+     */
+    @Override
+    public List<Message> getAllMessagesByAccountId(int account_id){
+        List<Message> allMessages = new ArrayList<>();
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.getAllMessagesByAccountId")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(SELECT_MESSAGES_BY_ACCOUNT);
+
+            //Sets the parameters of the message in the SQL statement
+            preparedStatement.setInt(1, account_id);
+
+            try(ResultSet messageResults = preparedStatement.executeQuery()){
+                while(messageResults.next())
+                    allMessages.add(mapMessage(messageResults));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return allMessages;
+    }
+
+    /**
+     * Reads every message in the database and passes each one to the sink as soon as it is read.
+     * @param sink The sink receiving the messages.
+     * @throws IOException If the sink failed, or the messages could not be read.
+     */
+    @Override
+    public void streamAllMessages(MessageSink sink) throws IOException{
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.streamAllMessages")){
+            streamMessages(unitOfWork, unitOfWork.prepare(SELECT_ALL_MESSAGES), sink);
+        }
+        catch(SQLException e){
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Reads every message posted by the account id given and passes each one to the sink as soon as it is read.
+     * @param account_id The account id to check the messages for.
+     * @param sink The sink receiving the messages.
+     * @throws IOException If the sink failed, or the messages could not be read.
+     */
+    @Override
+    public void streamAllMessagesByAccountId(int account_id, MessageSink sink) throws IOException{
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.streamAllMessagesByAccountId")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(SELECT_MESSAGES_BY_ACCOUNT);
+
+            //Sets the parameters of the message in the SQL statement
+            preparedStatement.setInt(1, account_id);
+
+            streamMessages(unitOfWork, preparedStatement, sink);
+        }
+        catch(SQLException e){
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Runs a query with lazy query execution switched on for the session, so H2 produces rows as the result set is
+     * read instead of building the whole result first, and hands each row to the sink.
+     */
+    private void streamMessages(UnitOfWork unitOfWork, PreparedStatement preparedStatement, MessageSink sink) throws SQLException, IOException{
+        PreparedStatement lazyOn = unitOfWork.prepare("SET LAZY_QUERY_EXECUTION TRUE");
+        PreparedStatement lazyOff = unitOfWork.prepare("SET LAZY_QUERY_EXECUTION FALSE");
+        lazyOn.execute();
+        try(ResultSet messageResults = preparedStatement.executeQuery()){
+            while(messageResults.next())
+                sink.accept(mapMessage(messageResults));
+        }
+        finally{
+            lazyOff.execute();
+        }
+    }
+
+    /**
+     * Gets up to limit messages that come after the cursor, in cursor order.
+     * @param after The position to start after.
+     * @param limit The maximum number of messages to return.
+     * @return Returns the messages on the page.
+     */
+    @Override
+    public List<Message> getMessagePage(PageCursor after, int limit){
+        List<Message> page = new ArrayList<>();
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.getMessagePage")){
+            PreparedStatement preparedStatement;
+            if(after.isByTime()){
+                preparedStatement = unitOfWork.prepare(SELECT_PAGE_BY_TIME);
+                setTimeKeyset(preparedStatement, 1, after);
+                preparedStatement.setInt(4, limit);
+            }
+            else{
+                preparedStatement = unitOfWork.prepare(SELECT_PAGE_BY_ID);
+                preparedStatement.setInt(1, after.getMessage_id());
+                preparedStatement.setInt(2, limit);
+            }
+
+            try(ResultSet messageResults = preparedStatement.executeQuery()){
+                while(messageResults.next())
+                    page.add(mapMessage(messageResults));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return page;
+    }
+
+    /**
+     * Gets the newest messages in the database.
+     * @param limit The maximum number of messages.
+     * @return Returns up to limit messages, newest (highest message_id) first.
+     */
+    @Override
+    public List<Message> getNewestMessages(int limit){
+        List<Message> newest = new ArrayList<>();
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.getNewestMessages")){
+            PreparedStatement preparedStatement = unitOfWork.prepare(SELECT_NEWEST_MESSAGES);
+            preparedStatement.setInt(1, limit);
+
+            try(ResultSet messageResults = preparedStatement.executeQuery()){
+                while(messageResults.next())
+                    newest.add(mapMessage(messageResults));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return newest;
+    }
+
+    /**
+     * Gets up to limit messages posted by the account id given that come after the cursor, in cursor order.
+     * @param account_id The account id to check the messages for.
+     * @param after The position to start after.
+     * @param limit The maximum number of messages to return.
+     * @return Returns the messages on the page.
+     */
+    @Override
+    public List<Message> getMessagePageByAccountId(int account_id, PageCursor after, int limit){
+        List<Message> page = new ArrayList<>();
+        try(UnitOfWork unitOfWork = UnitOfWork.begin("MessageDAO.getMessagePageByAccountId")){
+            PreparedStatement preparedStatement;
+            if(after.isByTime()){
+                preparedStatement = unitOfWork.prepare(SELECT_ACCOUNT_PAGE_BY_TIME);
+                preparedStatement.setInt(1, account_id);
+                setTimeKeyset(preparedStatement, 2, after);
+                preparedStatement.setInt(5, limit);
+            }
+            else{
+                preparedStatement = unitOfWork.prepare(SELECT_ACCOUNT_PAGE_BY_ID);
+                preparedStatement.setInt(1, account_id);
+                preparedStatement.setInt(2, after.getMessage_id());
+                preparedStatement.setInt(3, limit);
+            }
+
+            try(ResultSet messageResults = preparedStatement.executeQuery()){
+                while(messageResults.next())
+                    page.add(mapMessage(messageResults));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return page;
+    }
+
+    /**
+     * Sets the three parameters of a (time_posted_epoch, message_id) keyset condition starting at the index given.
+     */
+    private void setTimeKeyset(PreparedStatement preparedStatement, int index, PageCursor after) throws SQLException{
+        preparedStatement.setLong(index, after.getTime_posted_epoch());
+        preparedStatement.setLong(index + 1, after.getTime_posted_epoch());
+        preparedStatement.setInt(index + 2, after.getMessage_id());
+    }
+
+    /**
+     * Creates a Message object from the current row of a result set.
+     * @param messageResult The result set, positioned on a message row.
+     * @return The message information in the row.
+     * @throws SQLException If a column could not be read.
+     */
+    private Message mapMessage(ResultSet messageResult) throws SQLException{
+        return new Message(messageResult.getInt("message_id"), messageResult.getInt("posted_by"),
+                messageResult.getString("message_text"), messageResult.getLong("time_posted_epoch"));
+    }
+}
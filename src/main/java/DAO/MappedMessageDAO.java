@@ -0,0 +1,819 @@
+package DAO;
+
+import Model.Message;
+import Util.PageCursor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A MessageDAO that keeps messages in memory-mapped, append-only files in one directory (messages.storage.dir, by
+ * default ./data/messages), instead of the H2 message table. Chosen with -Dmessages.storage=mmap.
+ *
+ * Every message has a fixed-width 24 byte header: its text pointer, message_id, posted_by and time_posted_epoch.
+ * Headers live in index files of messages.storage.segmentRecords slots each, at slot message_id - 1, so finding a
+ * message by id is offset arithmetic. Texts are appended to heap files of messages.storage.heapBytes each, as their
+ * UTF-8 length and bytes, and a header's text pointer gives the heap and offset of its current text. Reads go
+ * straight to the mapped pages, with no query or copy beyond decoding the text.
+ *
+ * Nothing already written is overwritten except a header's text pointer. An update appends the new text and moves the
+ * pointer; a delete sets it to a tombstone. Slots are never reused, so ids stay stable. The texts left behind are
+ * garbage: a background compactor (every messages.storage.compaction.intervalMillis) copies the live texts out of any
+ * full heap that is less than messages.storage.compaction.minLiveRatio live, moves their pointers, and deletes the heap.
+ *
+ * Writers are serialized. Readers take no lock: a text pointer is published with a volatile write after the text and
+ * the rest of the header are written, and a new message becomes visible when the highest id is raised, after the
+ * whole batch it belongs to has been written. Each account's ids are also kept in memory, rebuilt from the headers
+ * when the store is opened, so listing an account does not scan every header, along with a count of the visible
+ * messages in every block of 1024 slots, so scans step over runs of deleted messages. There is no time index, so
+ * pages in time_posted_epoch order scan the headers.
+ *
+ * Writes reach the operating system's page cache when they return, and survive the process crashing. They are only
+ * forced to disk before returning with -Dmessages.storage.sync=true. A batch cut short by a crash may be partly kept.
+ */
+public class MappedMessageDAO implements MessageDAO {
+
+    static final int HEADER_BYTES = 24;
+    private static final int POINTER = 0;
+    private static final int MESSAGE_ID = 8;
+    private static final int POSTED_BY = 12;
+    private static final int EPOCH = 16;
+    //Text pointers: (heap + 1) << 32 | offset, or one of these
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+    //Texts are stored with their length as an unsigned short
+    static final int MAX_TEXT_BYTES = 0xFFFF;
+    //Slots moved by the compactor per hold of the write lock
+    private static final int COMPACTION_CHUNK = 4096;
+    //Slots per entry of blockLive
+    private static final int BLOCK_SLOTS = 1024;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final int heapBytes;
+    private final double minLiveRatio;
+    private final boolean sync;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ScheduledExecutorService compactor;
+
+    //Mapped files, replaced by longer copies when a file is added. A compacted heap's entry is set to null.
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private volatile MappedByteBuffer[] heaps = new MappedByteBuffer[0];
+    //The highest message_id created. Higher slots are not visible to readers.
+    private volatile int maxId;
+    private volatile int messageCount;
+    //Visible messages in each block of BLOCK_SLOTS slots, so scans step over runs of deleted messages. Written under
+    //the write lock, and grown before the highest id is raised.
+    private volatile int[] blockLive = new int[0];
+    private volatile long reclaimedHeaps;
+    private final ConcurrentHashMap<Integer, AccountIds> accounts = new ConcurrentHashMap<>();
+
+    //Held by every write. Guards heapPosition and liveBytes.
+    private final Object writeLock = new Object();
+    //Where the next text goes in the last (active) heap
+    private int heapPosition;
+    //Bytes of each heap referenced by a header
+    private long[] liveBytes = new long[0];
+
+    /**
+     * Opens the store in a directory, creating it if needed.
+     * @param directory The directory holding the store's files.
+     * @param segmentRecords The number of headers per index file. Must not change once the store has been created.
+     * @param heapBytes The size of each new heap file.
+     * @param minLiveRatio Heaps with less than this fraction of their bytes live are compacted.
+     * @param compactionIntervalMillis The time between compactions, or 0 to only compact when compact() is called.
+     * @param sync true to force every write to disk before returning.
+     * @throws UncheckedIOException If the files could not be opened.
+     * @throws IllegalStateException If the store is already open, or was created with another segmentRecords.
+     */
+    public MappedMessageDAO(Path directory, int segmentRecords, int heapBytes, double minLiveRatio,
+            long compactionIntervalMillis, boolean sync){
+        if(segmentRecords < 1 || (long) segmentRecords * HEADER_BYTES > Integer.MAX_VALUE || heapBytes < MAX_TEXT_BYTES + 2
+                || minLiveRatio < 0 || minLiveRatio > 1 || compactionIntervalMillis < 0)
+            throw new IllegalArgumentException("Invalid message storage settings: segmentRecords=" + segmentRecords
+                    + ", heapBytes=" + heapBytes + ", minLiveRatio=" + minLiveRatio + ", compactionIntervalMillis=" + compactionIntervalMillis);
+
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.heapBytes = heapBytes;
+        this.minLiveRatio = minLiveRatio;
+        this.sync = sync;
+        try{
+            Files.createDirectories(directory);
+            this.lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = null;
+            try{
+                lock = this.lockChannel.tryLock();
+            }
+            catch(OverlappingFileLockException e){
+                //Held by another store in this process
+            }
+            if(lock == null){
+                this.lockChannel.close();
+                throw new IllegalStateException("Message storage " + directory + " is already open");
+            }
+            this.lock = lock;
+            load();
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+
+        if(compactionIntervalMillis > 0){
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.compactor.scheduleWithFixedDelay(this::compact, compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        else
+            this.compactor = null;
+    }
+
+    /**
+     * @return A store configured from the messages.storage.* system properties.
+     */
+    public static MappedMessageDAO fromSystemProperties(){
+        return new MappedMessageDAO(Paths.get(System.getProperty("messages.storage.dir", "./data/messages")),
+                Integer.getInteger("messages.storage.segmentRecords", 1 << 18),
+                Integer.getInteger("messages.storage.heapBytes", 64 << 20),
+                Double.parseDouble(System.getProperty("messages.storage.compaction.minLiveRatio", "0.5")),
+                Long.getLong("messages.storage.compaction.intervalMillis", 10000),
+                Boolean.getBoolean("messages.storage.sync"));
+    }
+
+    /**
+     * Maps the existing files, then rebuilds the highest id, the account ids, the heaps' live bytes and the position
+     * in the active heap from the headers.
+     */
+    private void load() throws IOException{
+        List<Integer> segmentNumbers = fileNumbers("index-");
+        for(int i = 0; i < segmentNumbers.size(); i++){
+            if(segmentNumbers.get(i) != i)
+                throw new IllegalStateException("Message storage " + directory + " is missing " + segmentFile(i).getFileName());
+            if(Files.size(segmentFile(i)) != (long) segmentRecords * HEADER_BYTES)
+                throw new IllegalStateException("Message storage " + directory + " was created with another messages.storage.segmentRecords");
+        }
+        List<Integer> heapNumbers = fileNumbers("heap-");
+
+        MappedByteBuffer[] segments = new MappedByteBuffer[segmentNumbers.size()];
+        for(int i = 0; i < segments.length; i++)
+            segments[i] = map(segmentFile(i), (long) segmentRecords * HEADER_BYTES);
+        MappedByteBuffer[] heaps = new MappedByteBuffer[heapNumbers.isEmpty() ? 0 : heapNumbers.get(heapNumbers.size() - 1) + 1];
+        for(int number : heapNumbers)
+            heaps[number] = map(heapFile(number), Files.size(heapFile(number)));
+        this.segments = segments;
+        this.heaps = heaps;
+        this.liveBytes = new long[heaps.length];
+        if(heaps.length == 0)
+            addHeap();
+
+        int active = this.heaps.length - 1;
+        int count = 0;
+        int[] blockLive = new int[(segments.length * segmentRecords + BLOCK_SLOTS - 1) / BLOCK_SLOTS];
+        for(int id = 1; id <= segments.length * segmentRecords; id++){
+            long pointer = headerPointer(segments, id);
+            if(pointer == EMPTY)
+                continue;
+            this.maxId = id;
+            if(pointer == DELETED)
+                continue;
+
+            int entryBytes = entryBytes(pointer);
+            this.liveBytes[heapOf(pointer)] += entryBytes;
+            if(heapOf(pointer) == active)
+                this.heapPosition = Math.max(this.heapPosition, offsetOf(pointer) + entryBytes);
+            accountIds(segment(segments, id).getInt(header(id) + POSTED_BY)).add(id);
+            blockLive[(id - 1) / BLOCK_SLOTS]++;
+            count++;
+        }
+        this.blockLive = blockLive;
+        this.messageCount = count;
+    }
+
+    private List<Integer> fileNumbers(String prefix) throws IOException{
+        List<Integer> numbers = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*.dat")){
+            for(Path file : files){
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring(prefix.length(), name.length() - ".dat".length())));
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private Path segmentFile(int number){
+        return directory.resolve(String.format("index-%06d.dat", number));
+    }
+
+    private Path heapFile(int number){
+        return directory.resolve(String.format("heap-%06d.dat", number));
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException{
+        //The mapping stays valid after the channel is closed
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    //Header and pointer arithmetic
+
+    private MappedByteBuffer segment(MappedByteBuffer[] segments, int id){
+        return segments[(id - 1) / segmentRecords];
+    }
+
+    private int header(int id){
+        return ((id - 1) % segmentRecords) * HEADER_BYTES;
+    }
+
+    private long headerPointer(MappedByteBuffer[] segments, int id){
+        return (long) LONGS.getVolatile(segment(segments, id), header(id) + POINTER);
+    }
+
+    /**
+     * @return The text pointer of a visible message, EMPTY if the id has not been created, or DELETED.
+     */
+    private long pointer(int id){
+        if(id < 1 || id > this.maxId)
+            return EMPTY;
+        return headerPointer(this.segments, id);
+    }
+
+    private static int heapOf(long pointer){
+        return (int) (pointer >>> 32) - 1;
+    }
+
+    private static int offsetOf(long pointer){
+        return (int) pointer;
+    }
+
+    /**
+     * @return id if its block may hold a visible message, or the first id of the next block that may, or an id above
+     * highest if there is none.
+     */
+    private static int nextLive(int[] blockLive, int id, int highest){
+        while(id <= highest && blockLive[(id - 1) / BLOCK_SLOTS] == 0)
+            id = ((id - 1) / BLOCK_SLOTS + 1) * BLOCK_SLOTS + 1;
+        return id;
+    }
+
+    /**
+     * @return id if its block may hold a visible message, or the last id of the previous block that may, or 0 if
+     * there is none.
+     */
+    private static int previousLive(int[] blockLive, int id){
+        while(id >= 1 && blockLive[(id - 1) / BLOCK_SLOTS] == 0)
+            id = (id - 1) / BLOCK_SLOTS * BLOCK_SLOTS;
+        return id;
+    }
+
+    private int entryBytes(long pointer){
+        return 2 + (this.heaps[heapOf(pointer)].getShort(offsetOf(pointer)) & 0xFFFF);
+    }
+
+    //Reads
+
+    /**
+     * @return The message with the id given, or null if it has not been created or was deleted.
+     */
+    private Message read(int id){
+        if(id < 1 || id > this.maxId)
+            return null;
+        MappedByteBuffer segment = segment(this.segments, id);
+        int header = header(id);
+        while(true){
+            long pointer = (long) LONGS.getVolatile(segment, header + POINTER);
+            if(pointer == EMPTY || pointer == DELETED)
+                return null;
+            MappedByteBuffer heap = this.heaps[heapOf(pointer)];
+            //The heap was compacted after the pointer was read, so the pointer has moved since
+            if(heap == null)
+                continue;
+
+            int offset = offsetOf(pointer);
+            byte[] text = new byte[heap.getShort(offset) & 0xFFFF];
+            heap.get(offset + 2, text);
+            return new Message(id, segment.getInt(header + POSTED_BY), new String(text, StandardCharsets.UTF_8),
+                    segment.getLong(header + EPOCH));
+        }
+    }
+
+    @Override
+    public Message getMessageByMessageId(int id){
+        return read(id);
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(List<Integer> ids){
+        List<Message> messages = new ArrayList<>(ids.size());
+        for(int id : new LinkedHashSet<>(ids)){
+            Message message = read(id);
+            if(message != null)
+                messages.add(message);
+        }
+        return messages;
+    }
+
+    @Override
+    public List<Message> getAllMessages(){
+        List<Message> allMessages = new ArrayList<>(this.messageCount);
+        int highest = this.maxId;
+        int[] blockLive = this.blockLive;
+        for(int id = nextLive(blockLive, 1, highest); id <= highest; id = nextLive(blockLive, id + 1, highest)){
+            Message message = read(id);
+            if(message != null)
+                allMessages.add(message);
+        }
+        return allMessages;
+    }
+
+    @Override
+    public void streamAllMessages(MessageSink sink) throws IOException{
+        int highest = this.maxId;
+        int[] blockLive = this.blockLive;
+        for(int id = nextLive(blockLive, 1, highest); id <= highest; id = nextLive(blockLive, id + 1, highest)){
+            Message message = read(id);
+            if(message != null)
+                sink.accept(message);
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessagesByAccountId(int account_id){
+        List<Message> allMessages = new ArrayList<>();
+        AccountIds accountIds = this.accounts.get(account_id);
+        if(accountIds == null)
+            return allMessages;
+
+        int size = accountIds.size;
+        int[] ids = accountIds.ids;
+        for(int i = 0; i < size; i++){
+            Message message = read(ids[i]);
+            if(message != null)
+                allMessages.add(message);
+        }
+        return allMessages;
+    }
+
+    @Override
+    public void streamAllMessagesByAccountId(int account_id, MessageSink sink) throws IOException{
+        for(Message message : getAllMessagesByAccountId(account_id))
+            sink.accept(message);
+    }
+
+    @Override
+    public List<Message> getNewestMessages(int limit){
+        List<Message> newest = new ArrayList<>(Math.min(limit, 1024));
+        //maxId first: blockLive is replaced before maxId is raised, so the array read after it covers every id up to it
+        int highest = this.maxId;
+        int[] blockLive = this.blockLive;
+        for(int id = previousLive(blockLive, highest); id >= 1 && newest.size() < limit; id = previousLive(blockLive, id - 1)){
+            Message message = read(id);
+            if(message != null)
+                newest.add(message);
+        }
+        return newest;
+    }
+
+    @Override
+    public List<Message> getMessagePage(PageCursor after, int limit){
+        int highest = this.maxId;
+        if(after.isByTime())
+            return pageByTime(null, highest, after, limit);
+
+        int[] blockLive = this.blockLive;
+        List<Message> page = new ArrayList<>(Math.min(limit, 1024));
+        for(int id = nextLive(blockLive, Math.max(after.getMessage_id(), 0) + 1, highest); id <= highest && page.size() < limit;
+                id = nextLive(blockLive, id + 1, highest)){
+            Message message = read(id);
+            if(message != null)
+                page.add(message);
+        }
+        return page;
+    }
+
+    @Override
+    public List<Message> getMessagePageByAccountId(int account_id, PageCursor after, int limit){
+        AccountIds accountIds = this.accounts.get(account_id);
+        if(accountIds == null)
+            return new ArrayList<>();
+        int size = accountIds.size;
+        int[] ids = accountIds.ids;
+        if(after.isByTime())
+            return pageByTime(ids, size, after, limit);
+
+        //An account's ids are in increasing order
+        int start = Arrays.binarySearch(ids, 0, size, after.getMessage_id());
+        List<Message> page = new ArrayList<>(Math.min(limit, 1024));
+        for(int i = start >= 0 ? start + 1 : -start - 1; i < size && page.size() < limit; i++){
+            Message message = read(ids[i]);
+            if(message != null)
+                page.add(message);
+        }
+        return page;
+    }
+
+    /**
+     * Finds the first limit messages after the cursor in (time_posted_epoch, message_id) order, reading only the
+     * headers of the messages that do not make the page.
+     * @param ids The candidate ids, or null for every id from 1 to count.
+     * @param count The number of candidates.
+     */
+    private List<Message> pageByTime(int[] ids, int count, PageCursor after, int limit){
+        //The best (epoch, id) pairs so far, worst on top
+        Comparator<long[]> order = Comparator.<long[]>comparingLong(key -> key[0]).thenComparingLong(key -> key[1]);
+        PriorityQueue<long[]> best = new PriorityQueue<>(order.reversed());
+        int highest = this.maxId;
+        int[] blockLive = this.blockLive;
+        MappedByteBuffer[] segments = this.segments;
+        for(int i = 0; i < count; i++){
+            int id;
+            if(ids == null){
+                id = nextLive(blockLive, i + 1, count);
+                if(id > count)
+                    break;
+                i = id - 1;
+            }
+            else
+                id = ids[i];
+            //Account ids are added before their batch is published
+            if(id > highest)
+                continue;
+            long pointer = headerPointer(segments, id);
+            if(pointer == EMPTY || pointer == DELETED)
+                continue;
+            long epoch = segment(segments, id).getLong(header(id) + EPOCH);
+            if(epoch < after.getTime_posted_epoch() || (epoch == after.getTime_posted_epoch() && id <= after.getMessage_id()))
+                continue;
+
+            long[] key = {epoch, id};
+            if(best.size() < limit)
+                best.add(key);
+            else if(order.compare(key, best.peek()) < 0){
+                best.poll();
+                best.add(key);
+            }
+        }
+
+        List<long[]> keys = new ArrayList<>(best);
+        keys.sort(order);
+        List<Message> page = new ArrayList<>(keys.size());
+        for(long[] key : keys){
+            Message message = read((int) key[1]);
+            if(message != null)
+                page.add(message);
+        }
+        return page;
+    }
+
+    //Writes
+
+    @Override
+    public Message createNewMessage(Message newMessage){
+        List<Message> createdMessages = createNewMessages(List.of(newMessage));
+        return createdMessages == null ? null : createdMessages.get(0);
+    }
+
+    @Override
+    public List<Message> createNewMessages(List<Message> newMessages){
+        synchronized(this.writeLock){
+            int firstId = this.maxId + 1;
+            List<Message> createdMessages = new ArrayList<>(newMessages.size());
+            long[] pointers = new long[newMessages.size()];
+            try{
+                for(Message newMessage : newMessages){
+                    int id = firstId + createdMessages.size();
+                    pointers[createdMessages.size()] = appendText(encode(newMessage.getMessage_text()));
+                    writeHeader(id, newMessage, pointers[createdMessages.size()]);
+                    createdMessages.add(new Message(id, newMessage.getPosted_by(), newMessage.getMessage_text(), newMessage.getTime_posted_epoch()));
+                }
+            }
+            catch(IOException | IllegalArgumentException e){
+                System.out.println(e.getMessage());
+                //Clear the headers already written, so they are not found when the store is opened again
+                for(int id = firstId; id < firstId + createdMessages.size(); id++)
+                    LONGS.setVolatile(segment(this.segments, id), header(id) + POINTER, EMPTY);
+                return null;
+            }
+
+            int lastId = firstId + createdMessages.size() - 1;
+            int[] blockLive = this.blockLive;
+            if((lastId - 1) / BLOCK_SLOTS >= blockLive.length)
+                blockLive = Arrays.copyOf(blockLive, Math.max(blockLive.length * 2, (lastId - 1) / BLOCK_SLOTS + 1));
+            for(int i = 0; i < pointers.length; i++){
+                this.liveBytes[heapOf(pointers[i])] += entryBytes(pointers[i]);
+                accountIds(createdMessages.get(i).getPosted_by()).add(firstId + i);
+                blockLive[(firstId + i - 1) / BLOCK_SLOTS]++;
+            }
+            this.blockLive = blockLive;
+            force(firstId, lastId);
+            this.messageCount += createdMessages.size();
+            //Publishes the whole batch at once
+            this.maxId = lastId;
+            return createdMessages;
+        }
+    }
+
+    @Override
+    public Message updateMessage(int id, String newMessage){
+        Message message = replaceMessageText(id, newMessage);
+        if(message != null)
+            message.setMessage_text(newMessage);
+        return message;
+    }
+
+    @Override
+    public Message replaceMessageText(int id, String newMessage){
+        synchronized(this.writeLock){
+            Message message = read(id);
+            if(message == null)
+                return null;
+
+            try{
+                long oldPointer = pointer(id);
+                long pointer = appendText(encode(newMessage));
+                LONGS.setVolatile(segment(this.segments, id), header(id) + POINTER, pointer);
+                this.liveBytes[heapOf(pointer)] += entryBytes(pointer);
+                this.liveBytes[heapOf(oldPointer)] -= entryBytes(oldPointer);
+                force(id, id);
+            }
+            catch(IOException | IllegalArgumentException e){
+                System.out.println(e.getMessage());
+                return null;
+            }
+            return message;
+        }
+    }
+
+    @Override
+    public Message deleteMessage(int id){
+        synchronized(this.writeLock){
+            Message message = read(id);
+            if(message != null){
+                delete(id);
+                force(id, id);
+            }
+            return message;
+        }
+    }
+
+    @Override
+    public List<Message> deleteMessages(List<Integer> ids, int posted_by){
+        synchronized(this.writeLock){
+            List<Message> deletedMessages = new ArrayList<>(ids.size());
+            for(int id : new LinkedHashSet<>(ids)){
+                Message message = read(id);
+                if(message == null || (posted_by != 0 && message.getPosted_by() != posted_by))
+                    continue;
+                delete(id);
+                force(id, id);
+                deletedMessages.add(message);
+            }
+            return deletedMessages;
+        }
+    }
+
+    /**
+     * Replaces a visible message's text pointer with a tombstone. Call holding the write lock.
+     */
+    private void delete(int id){
+        long pointer = pointer(id);
+        LONGS.setVolatile(segment(this.segments, id), header(id) + POINTER, DELETED);
+        this.liveBytes[heapOf(pointer)] -= entryBytes(pointer);
+        this.blockLive[(id - 1) / BLOCK_SLOTS]--;
+        this.messageCount--;
+    }
+
+    private static byte[] encode(String text){
+        if(text == null)
+            throw new IllegalArgumentException("message_text is required");
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > MAX_TEXT_BYTES)
+            throw new IllegalArgumentException("message_text is longer than " + MAX_TEXT_BYTES + " bytes");
+        return bytes;
+    }
+
+    /**
+     * Appends a text to the active heap, starting a new heap if it does not fit. Call holding the write lock.
+     * @return The text's pointer.
+     */
+    private long appendText(byte[] text) throws IOException{
+        MappedByteBuffer heap = this.heaps[this.heaps.length - 1];
+        if(this.heapPosition + 2 + text.length > heap.capacity())
+            heap = addHeap();
+
+        heap.putShort(this.heapPosition, (short) text.length);
+        heap.put(this.heapPosition + 2, text);
+        long pointer = (long) this.heaps.length << 32 | this.heapPosition;
+        this.heapPosition += 2 + text.length;
+        return pointer;
+    }
+
+    /**
+     * Writes a new message's header, text pointer last. Call holding the write lock.
+     */
+    private void writeHeader(int id, Message message, long pointer) throws IOException{
+        if((id - 1) / this.segmentRecords == this.segments.length){
+            MappedByteBuffer[] segments = Arrays.copyOf(this.segments, this.segments.length + 1);
+            segments[segments.length - 1] = map(segmentFile(segments.length - 1), (long) this.segmentRecords * HEADER_BYTES);
+            this.segments = segments;
+        }
+
+        MappedByteBuffer segment = segment(this.segments, id);
+        int header = header(id);
+        segment.putInt(header + MESSAGE_ID, id);
+        segment.putInt(header + POSTED_BY, message.getPosted_by());
+        segment.putLong(header + EPOCH, message.getTime_posted_epoch());
+        LONGS.setVolatile(segment, header + POINTER, pointer);
+    }
+
+    /**
+     * Starts a new heap file and makes it the active heap. Call holding the write lock.
+     */
+    private MappedByteBuffer addHeap() throws IOException{
+        MappedByteBuffer heap = map(heapFile(this.heaps.length), this.heapBytes);
+        MappedByteBuffer[] heaps = Arrays.copyOf(this.heaps, this.heaps.length + 1);
+        heaps[heaps.length - 1] = heap;
+        this.liveBytes = Arrays.copyOf(this.liveBytes, heaps.length);
+        this.heaps = heaps;
+        this.heapPosition = 0;
+        return heap;
+    }
+
+    /**
+     * With messages.storage.sync, forces the headers of the ids given and the active heap to disk. Call holding the
+     * write lock.
+     */
+    private void force(int firstId, int lastId){
+        if(!this.sync)
+            return;
+        for(int segment = (firstId - 1) / this.segmentRecords; segment <= (lastId - 1) / this.segmentRecords; segment++)
+            this.segments[segment].force();
+        this.heaps[this.heaps.length - 1].force();
+    }
+
+    private AccountIds accountIds(int account_id){
+        return this.accounts.computeIfAbsent(account_id, key -> new AccountIds());
+    }
+
+    /**
+     * One account's message ids, in increasing order, including deleted ones. Appended to under the write lock, and
+     * read without it: readers read size before ids.
+     */
+    private static final class AccountIds {
+        private volatile int[] ids = new int[4];
+        private volatile int size;
+
+        private void add(int id){
+            if(this.size == this.ids.length)
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            this.ids[this.size] = id;
+            this.size = this.size + 1;
+        }
+    }
+
+    //Compaction
+
+    /**
+     * Moves the live texts out of every heap other than the active one that is less than minLiveRatio live, then
+     * deletes those heaps. Writers are held up only while a chunk of COMPACTION_CHUNK headers is processed. Runs on the
+     * compactor thread, and can also be called directly.
+     * @return The number of heaps deleted.
+     */
+    public int compact(){
+        boolean[] compacting;
+        int count = 0;
+        synchronized(this.writeLock){
+            compacting = new boolean[this.heaps.length - 1];
+            for(int heap = 0; heap < compacting.length; heap++){
+                if(this.heaps[heap] != null && this.liveBytes[heap] < this.minLiveRatio * this.heaps[heap].capacity()){
+                    compacting[heap] = true;
+                    count++;
+                }
+            }
+        }
+        if(count == 0)
+            return 0;
+
+        try{
+            int highest = this.maxId;
+            for(int start = 1; start <= highest; start += COMPACTION_CHUNK){
+                if(Thread.currentThread().isInterrupted())
+                    return 0;
+                synchronized(this.writeLock){
+                    for(int id = start; id < start + COMPACTION_CHUNK && id <= highest; id++){
+                        long pointer = pointer(id);
+                        if(pointer == EMPTY || pointer == DELETED || heapOf(pointer) >= compacting.length || !compacting[heapOf(pointer)])
+                            continue;
+
+                        MappedByteBuffer heap = this.heaps[heapOf(pointer)];
+                        byte[] text = new byte[heap.getShort(offsetOf(pointer)) & 0xFFFF];
+                        heap.get(offsetOf(pointer) + 2, text);
+                        long moved = appendText(text);
+                        LONGS.setVolatile(segment(this.segments, id), header(id) + POINTER, moved);
+                        this.liveBytes[heapOf(moved)] += 2 + text.length;
+                    }
+                }
+            }
+
+            synchronized(this.writeLock){
+                if(this.sync){
+                    for(MappedByteBuffer segment : this.segments)
+                        segment.force();
+                    this.heaps[this.heaps.length - 1].force();
+                }
+                for(int heap = 0; heap < compacting.length; heap++){
+                    if(!compacting[heap])
+                        continue;
+                    //Readers still holding the old mapping keep it valid after the file is deleted
+                    this.heaps[heap] = null;
+                    this.liveBytes[heap] = 0;
+                    Files.deleteIfExists(heapFile(heap));
+                }
+                this.reclaimedHeaps += count;
+            }
+        }
+        catch(IOException e){
+            System.out.println(e.getMessage());
+            return 0;
+        }
+        return count;
+    }
+
+    @Override
+    public void close(){
+        if(this.compactor != null){
+            this.compactor.shutdownNow();
+            try{
+                this.compactor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized(this.writeLock){
+            try{
+                this.lock.release();
+                this.lockChannel.close();
+            }
+            catch(IOException e){
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return The number of messages stored, not counting deleted ones.
+     */
+    public int getMessageCount(){
+        return this.messageCount;
+    }
+
+    /**
+     * @return The number of heap files in use.
+     */
+    public int getHeapCount(){
+        int count = 0;
+        for(MappedByteBuffer heap : this.heaps){
+            if(heap != null)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of heap files deleted by compaction since the store was opened.
+     */
+    public long getReclaimedHeapCount(){
+        return this.reclaimedHeaps;
+    }
+}
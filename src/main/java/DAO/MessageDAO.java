@@ -1,177 +1,146 @@
 package DAO;
 
 import Model.Message;
-import java.sql.*;
-import Util.ConnectionUtil;
-import java.util.ArrayList;
+import Util.PageCursor;
+import java.io.IOException;
 import java.util.List;
 
-public class MessageDAO {
+/**
+ * Stores messages. Message ids are generated by the store, increase with every message created, and are never reused.
+ *
+ * Two storage engines are available, chosen with the messages.storage system property:
+ * - h2 (the default): the message table in the H2 database (see H2MessageDAO).
+ * - mmap: memory-mapped append-only files (see MappedMessageDAO). Accounts stay in H2.
+ */
+public interface MessageDAO {
 
     /**
-     * Creates a new message and stores it in the database.
+     * @return The storage engine named by the messages.storage system property.
+     */
+    static MessageDAO fromSystemProperties(){
+        String storage = System.getProperty("messages.storage", "h2");
+        switch(storage){
+            case "h2": return new H2MessageDAO();
+            case "mmap": return MappedMessageDAO.fromSystemProperties();
+            default: throw new IllegalArgumentException("Unknown messages.storage: " + storage);
+        }
+    }
+
+    /**
+     * Creates a new message and stores it.
      * @param newMessage The information for the message.
      * @return Returns the message information if successful. Returns null if unsuccessful.
      */
-    public Message createNewMessage(Message newMessage){
-        //Connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
-            //Sets the parameters of the message in the SQL statement
-            preparedStatement.setInt(1, newMessage.getPosted_by());
-            preparedStatement.setString(2, newMessage.getMessage_text());
-            preparedStatement.setLong(3, newMessage.getTime_posted_epoch());
-
-            preparedStatement.executeUpdate();
-
-            //Grabs the auto-incremented message id and creates a new Message object
-            ResultSet messageResult = preparedStatement.getGeneratedKeys();
-            if(messageResult.next()){
-                int generated_message_id = (int) messageResult.getLong(1);
-                return new Message(generated_message_id, newMessage.getPosted_by(), newMessage.getMessage_text(), newMessage.getTime_posted_epoch());
-            }        
-        }
-        catch(SQLException e){
-            System.out.println(e.getMessage());
-        }
+    Message createNewMessage(Message newMessage);
 
-        return null;
-    }
+    /**
+     * Creates several messages at once. Either every message is stored or none is.
+     * @param newMessages The information for the messages.
+     * @return Returns the stored messages, in the same order, with their generated ids. Returns null if unsuccessful.
+     */
+    List<Message> createNewMessages(List<Message> newMessages);
 
     /**
-     * Stores a list of all messages in the database.
-     * @return Returns a list of all message information in the database.
-     */
-    public List<Message> getAllMessages(){
-        //Connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        List<Message> allMessages = new ArrayList<>();
-        try {
-            String sql = "SELECT * FROM message";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
-            ResultSet messageResults = preparedStatement.executeQuery();
-            while(messageResults.next()){
-                Message currentMessage = new Message(messageResults.getInt("message_id"), messageResults.getInt("posted_by"), messageResults.getString("message_text"), messageResults.getLong("time_posted_epoch"));
-                allMessages.add(currentMessage);
-            }
-        }catch(SQLException e){
-            System.out.println(e.getMessage());
-        }
-        return allMessages;
-    }
+     * @return Returns a list of all message information stored.
+     */
+    List<Message> getAllMessages();
 
     /**
      * Gets a message based on the message id given.
      * @param id The id of the message.
      * @return If the message is found, the message information is returned. If no message is found, return null.
      */
-    public Message getMessageByMessageId(int id){
-        //Connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
-            //Sets the parameters of the message in the SQL statement
-            preparedStatement.setInt(1, id);
-
-            ResultSet messageResult = preparedStatement.executeQuery();
-            while(messageResult.next()){
-                Message foundMessage = new Message(messageResult.getInt("message_id"), messageResult.getInt("posted_by"), messageResult.getString("message_text"), messageResult.getLong("time_posted_epoch"));
-                return foundMessage;
-            }
-        }
-        catch(SQLException e){
-            System.out.println(e.getMessage());
-        }
+    Message getMessageByMessageId(int id);
 
-        return null;
-    }
+    /**
+     * Gets every message with one of the ids given.
+     * @param ids The ids of the messages.
+     * @return Returns the messages found, in no particular order. Ids with no message are left out.
+     */
+    List<Message> getMessagesByIds(List<Integer> ids);
+
+    /**
+     * Deletes every message with one of the ids given. Either all of them are deleted or none is.
+     * @param ids The ids of the messages.
+     * @param posted_by Only delete messages posted by this account, or 0 to delete any of them.
+     * @return Returns the messages deleted, in no particular order. Returns null if unsuccessful.
+     */
+    List<Message> deleteMessages(List<Integer> ids, int posted_by);
 
     /**
      * Deletes the message information based on the message id given.
      * @param id The id of the message.
-     * @return If the message is deleted, the message information is returned. If no message is found, return null.
-     */
-    public Message deleteMessage(int id){
-        //Get the information of the message before deleting it
-        Message messageToDelete = getMessageByMessageId(id);
-        //Connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "DELETE FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
-            //Sets the parameters of the message in the SQL statement
-            preparedStatement.setInt(1, id);
-
-            int rowsDeleted = preparedStatement.executeUpdate();
-            if(rowsDeleted > 0)
-                return messageToDelete;
-        }
-        catch(SQLException e){
-            System.out.println(e.getMessage());
-        }
-
-        return null;
-    }
+     * @return If the message is deleted, the message information as it was is returned. If no message is found,
+     * return null.
+     */
+    Message deleteMessage(int id);
 
     /**
-     * Updates the message information based on the message id given.
+     * Updates the text of the message with the message id given.
      * @param id The id of the message.
-     * @param newMessage The new message to update the database with.
+     * @param newMessage The new text.
      * @return If the message was successfully updated, the message information is returned. If no message is found, return null.
      */
-    public Message updateMessage(int id, String newMessage){
-        //Connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    Message updateMessage(int id, String newMessage);
 
-            //Sets the parameters of the message in the SQL statement
-            preparedStatement.setString(1, newMessage);
-            preparedStatement.setInt(2, id);
+    /**
+     * Updates the text of the message with the message id given, like updateMessage(), but returns the message as it
+     * was before, read in the same step as the update.
+     * @param id The id of the message.
+     * @param newMessage The new text.
+     * @return If the message was successfully updated, the message information as it was is returned. If no message is
+     * found, return null.
+     */
+    Message replaceMessageText(int id, String newMessage);
 
-            int rowsUpdated = preparedStatement.executeUpdate();
+    /**
+     * @param account_id The account id to check the messages for.
+     * @return Returns a list of all message information linked to the account id given, in message_id order.
+     */
+    List<Message> getAllMessagesByAccountId(int account_id);
+
+    /**
+     * Reads every message and passes each one to the sink as soon as it is read.
+     * @param sink The sink receiving the messages.
+     * @throws IOException If the sink failed, or the messages could not be read.
+     */
+    void streamAllMessages(MessageSink sink) throws IOException;
 
-            if(rowsUpdated > 0)
-                return getMessageByMessageId(id);
- 
-        }
-        catch(SQLException e){
-            System.out.println(e.getMessage());
-        }
-        return null;
-    }
     /**
-     * Stores a list of all messages in the database posted by the account id given.
+     * Reads every message posted by the account id given and passes each one to the sink as soon as it is read.
      * @param account_id The account id to check the messages for.
-     * @return Returns a list of all message information in the database linked to the account id given.
-     */
-    public List<Message> getAllMessagesByAccountId(int account_id){
-        //Connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        List<Message> allMessages = new ArrayList<>();
-        try {
-            String sql = "SELECT * FROM message WHERE posted_by = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
-            //Sets the parameters of the message in the SQL statement
-            preparedStatement.setInt(1, account_id);
-
-            ResultSet messageResults = preparedStatement.executeQuery();
-            while(messageResults.next()){
-                Message currentMessage = new Message(messageResults.getInt("message_id"), messageResults.getInt("posted_by"), messageResults.getString("message_text"), messageResults.getLong("time_posted_epoch"));
-                allMessages.add(currentMessage);
-            }
-        }catch(SQLException e){
-            System.out.println(e.getMessage());
-        }
-        return allMessages;
+     * @param sink The sink receiving the messages.
+     * @throws IOException If the sink failed, or the messages could not be read.
+     */
+    void streamAllMessagesByAccountId(int account_id, MessageSink sink) throws IOException;
+
+    /**
+     * Gets up to limit messages that come after the cursor, in cursor order.
+     * @param after The position to start after.
+     * @param limit The maximum number of messages to return.
+     * @return Returns the messages on the page.
+     */
+    List<Message> getMessagePage(PageCursor after, int limit);
+
+    /**
+     * Gets the newest messages.
+     * @param limit The maximum number of messages.
+     * @return Returns up to limit messages, newest (highest message_id) first.
+     */
+    List<Message> getNewestMessages(int limit);
+
+    /**
+     * Gets up to limit messages posted by the account id given that come after the cursor, in cursor order.
+     * @param account_id The account id to check the messages for.
+     * @param after The position to start after.
+     * @param limit The maximum number of messages to return.
+     * @return Returns the messages on the page.
+     */
+    List<Message> getMessagePageByAccountId(int account_id, PageCursor after, int limit);
+
+    /**
+     * Releases the files or threads the storage engine holds. The store must not be used afterwards.
+     */
+    default void close(){
     }
 }
@@ -0,0 +1,18 @@
+package DAO;
+
+import Model.Message;
+import java.io.IOException;
+
+/**
+ * Receives messages one at a time as a DAO reads them from a result set, so that a caller can process rows without
+ * holding the whole result in memory.
+ */
+@FunctionalInterface
+public interface MessageSink {
+
+    /**
+     * @param message The message in the current row.
+     * @throws IOException If the sink could not accept the message. Reading stops and the exception is rethrown.
+     */
+    void accept(Message message) throws IOException;
+}
@@ -0,0 +1,36 @@
+package Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Time spent in each DAO method, keyed by an operation name such as "MessageDAO.getMessageByMessageId". DAO methods
+ * are timed by naming their unit of work (see UnitOfWork.begin(String)), which covers borrowing the connection, running
+ * the statements and reading the results.
+ *
+ * Like the connection pool, these metrics are shared by the whole process.
+ */
+public class DbMetrics {
+
+    private static final Map<String, LatencyHistogram> OPERATIONS = new ConcurrentHashMap<>();
+
+    private DbMetrics(){
+    }
+
+    /**
+     * @param operation The DAO method.
+     * @param nanos The time it took, in nanoseconds.
+     */
+    public static void record(String operation, long nanos){
+        OPERATIONS.computeIfAbsent(operation, o -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Visits the latency of every operation recorded so far.
+     * @param visitor Receives the operation name and its latency.
+     */
+    public static void forEach(BiConsumer<String, LatencyHistogram> visitor){
+        OPERATIONS.forEach(visitor);
+    }
+}
@@ -0,0 +1,50 @@
+package Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * A latency histogram that many threads can record into without locking.
+ *
+ * Recording goes into an HdrHistogram Recorder, which is wait-free. Readers swap out the Recorder's interval histogram
+ * and add it to a cumulative one, so only readers (the /metrics scrape) ever take a lock. Values are kept in
+ * microseconds, from 1us to a minute, to two significant digits.
+ */
+public class LatencyHistogram {
+
+    static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+    static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Recorder recorder = new Recorder(HIGHEST_MICROS, SIGNIFICANT_DIGITS);
+    private final Histogram cumulative = new Histogram(HIGHEST_MICROS, SIGNIFICANT_DIGITS);
+    private final LongAdder sumNanos = new LongAdder();
+    private Histogram interval;
+
+    /**
+     * @param nanos The latency to record, in nanoseconds.
+     */
+    public void record(long nanos){
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        recorder.recordValue(Math.max(1, Math.min(HIGHEST_MICROS, micros)));
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * @return Everything recorded so far. The histogram is a copy and can be read freely.
+     */
+    public synchronized Histogram snapshot(){
+        interval = recorder.getIntervalHistogram(interval);
+        cumulative.add(interval);
+        return cumulative.copy();
+    }
+
+    /**
+     * @return The exact total of every recorded latency, in nanoseconds.
+     */
+    public long getSumNanos(){
+        return sumNanos.sum();
+    }
+}
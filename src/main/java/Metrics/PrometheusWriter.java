@@ -0,0 +1,107 @@
+package Metrics;
+
+import java.math.BigDecimal;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Builds a page of metrics in the Prometheus text exposition format (version 0.0.4).
+ *
+ * Each metric family is started with family(), which writes its HELP and TYPE lines, followed by its samples. Latency
+ * histograms are written in seconds, with cumulative counts for the fixed BUCKETS below.
+ */
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    //Histogram bucket bounds, in seconds
+    static final double[] BUCKETS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final String[] BUCKET_LABELS = new String[BUCKETS.length];
+    static {
+        for(int i = 0; i < BUCKETS.length; i++)
+            BUCKET_LABELS[i] = "le=\"" + BigDecimal.valueOf(BUCKETS[i]).stripTrailingZeros().toPlainString() + "\"";
+    }
+
+    private final StringBuilder text = new StringBuilder(4096);
+
+    /**
+     * Starts a metric family.
+     * @param name The metric name.
+     * @param type counter, gauge or histogram.
+     * @param help What the metric measures.
+     * @return This writer.
+     */
+    public PrometheusWriter family(String name, String type, String help){
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Writes one sample.
+     * @param name The metric name.
+     * @param labels The labels, as built by labels(), or an empty string.
+     * @param value The value.
+     * @return This writer.
+     */
+    public PrometheusWriter sample(String name, String labels, double value){
+        text.append(name);
+        if(!labels.isEmpty())
+            text.append('{').append(labels).append('}');
+        text.append(' ');
+        if(value == Math.rint(value) && !Double.isInfinite(value))
+            text.append((long) value);
+        else
+            text.append(value);
+        text.append('\n');
+        return this;
+    }
+
+    /**
+     * Writes the buckets, sum and count of a latency histogram.
+     * @param name The metric name.
+     * @param labels The labels, as built by labels(), or an empty string.
+     * @param latency The histogram.
+     * @return This writer.
+     */
+    public PrometheusWriter histogram(String name, String labels, LatencyHistogram latency){
+        Histogram histogram = latency.snapshot();
+        String separator = labels.isEmpty() ? "" : ",";
+        for(int i = 0; i < BUCKETS.length; i++)
+            sample(name + "_bucket", labels + separator + BUCKET_LABELS[i], histogram.getCountBetweenValues(0, Math.round(BUCKETS[i] * 1e6)));
+        sample(name + "_bucket", labels + separator + "le=\"+Inf\"", histogram.getTotalCount());
+        sample(name + "_sum", labels, latency.getSumNanos() / 1e9);
+        sample(name + "_count", labels, histogram.getTotalCount());
+        return this;
+    }
+
+    /**
+     * @param namesAndValues Label names and values, alternating.
+     * @return The labels formatted for sample() and histogram().
+     */
+    public static String labels(String... namesAndValues){
+        StringBuilder labels = new StringBuilder();
+        for(int i = 0; i < namesAndValues.length; i += 2){
+            if(i > 0)
+                labels.append(',');
+            labels.append(namesAndValues[i]).append("=\"");
+            String value = namesAndValues[i + 1];
+            for(int c = 0; c < value.length(); c++){
+                char character = value.charAt(c);
+                if(character == '\\' || character == '"')
+                    labels.append('\\').append(character);
+                else if(character == '\n')
+                    labels.append("\\n");
+                else
+                    labels.append(character);
+            }
+            labels.append('"');
+        }
+        return labels.toString();
+    }
+
+    @Override
+    public String toString(){
+        return text.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Request counts, status code counts and latency for each route, keyed by HTTP method and route template (such as
+ * "/messages/{message_id}"), so every message id shares one set of metrics.
+ *
+ * Recording a request takes two map lookups and lock-free updates, with no allocation once the route has been seen.
+ */
+public class RequestMetrics {
+
+    private final Map<String, Map<String, Route>> routes = new ConcurrentHashMap<>();
+
+    /**
+     * @param method The HTTP method.
+     * @param route The route template the request matched.
+     * @param status The response status code.
+     * @param nanos The time taken to handle the request, in nanoseconds.
+     */
+    public void record(String method, String route, int status, long nanos){
+        routes.computeIfAbsent(method, m -> new ConcurrentHashMap<>())
+                .computeIfAbsent(route, r -> new Route())
+                .record(status, nanos);
+    }
+
+    /**
+     * Visits the metrics of every route seen so far.
+     * @param visitor Receives each route's method, template and metrics.
+     */
+    public void forEach(RouteVisitor visitor){
+        routes.forEach((method, byRoute) -> byRoute.forEach((route, metrics) -> visitor.visit(method, route, metrics)));
+    }
+
+    /**
+     * Receives the metrics of one route.
+     */
+    @FunctionalInterface
+    public interface RouteVisitor {
+        void visit(String method, String route, Route metrics);
+    }
+
+    /**
+     * The metrics of one route.
+     */
+    public static class Route {
+        private final AtomicLongArray statusCounts = new AtomicLongArray(600);
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        void record(int status, long nanos){
+            statusCounts.incrementAndGet(status >= 100 && status < 600 ? status : 0);
+            latency.record(nanos);
+        }
+
+        /**
+         * @param status A status code from 100 to 599, or 0 for requests answered with any other code.
+         * @return The number of requests answered with the status.
+         */
+        public long getStatusCount(int status){
+            return statusCounts.get(status);
+        }
+
+        public LatencyHistogram getLatency(){
+            return latency;
+        }
+    }
+}
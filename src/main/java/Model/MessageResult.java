@@ -0,0 +1,82 @@
+package Model;
+
+/**
+ * This is a class that models the outcome for one item of a batch request. Batch responses hold one result per
+ * requested item, in request order.
+ */
+public class MessageResult {
+    /**
+     * The status the item would have had as a single request: 200, 400, 403, 404 or 500.
+     */
+    public int status;
+    /**
+     * The message created, found or deleted, or null if the item failed.
+     */
+    public Message message;
+    /**
+     * Why the item failed, or null if it succeeded.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageResult(){
+    }
+
+    public MessageResult(int status, Message message, String error){
+        this.status = status;
+        this.message = message;
+        this.error = error;
+    }
+
+    /**
+     * @param message The message created, found or deleted.
+     * @return A successful result.
+     */
+    public static MessageResult ok(Message message){
+        return new MessageResult(200, message, null);
+    }
+
+    /**
+     * @param status The status of the failure.
+     * @param error Why the item failed.
+     * @return A failed result.
+     */
+    public static MessageResult failed(int status, String error){
+        return new MessageResult(status, null, error);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageResult{" +
+                "status=" + status +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
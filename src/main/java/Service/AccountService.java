@@ -1,42 +1,151 @@
 package Service;
 
+import Cache.BloomFilter;
+import Cache.KnownAccountIds;
+import Cache.LruCache;
 import DAO.AccountDAO;
 import Model.Account;
-import Model.Message;
+import Util.PasswordHasher;
 
 public class AccountService {
     
     public AccountDAO accountDAO;
+    /**
+     * Account ids known to exist, shared with MessageService.
+     */
+    private KnownAccountIds knownAccountIds;
+    /**
+     * Usernames that are probably taken. A username the filter has never seen is definitely free, so its registration
+     * goes straight to the insert. Rebuilt from the table by rebuildUsernameFilter().
+     */
+    private volatile BloomFilter takenUsernames = newUsernameFilter();
+    /**
+     * Whether usernames the filter flagged are really taken, so a flood of registrations for the same taken names is
+     * answered from memory after the first lookup. Invalidated when a username is registered.
+     */
+    private LruCache<String, Boolean> usernameTaken = new LruCache<>(
+            Integer.getInteger("accounts.usernameCache.maxSize", 10000), 0, false);
+    
+    /**
+     * Hashes and verifies passwords on its own CPU-sized executor.
+     */
+    private PasswordHasher passwordHasher;
     
     //Constructors
     public AccountService(){
-        this.accountDAO = new AccountDAO();
+        this(new AccountDAO());
     }
 
     public AccountService(AccountDAO socialMediaDAO){
-        this.accountDAO = socialMediaDAO;
+        this(socialMediaDAO, new KnownAccountIds());
+    }
+
+    public AccountService(AccountDAO accountDAO, KnownAccountIds knownAccountIds){
+        this(accountDAO, knownAccountIds, PasswordHasher.fromSystemProperties());
+    }
+
+    public AccountService(AccountDAO accountDAO, KnownAccountIds knownAccountIds, PasswordHasher passwordHasher){
+        this.accountDAO = accountDAO;
+        this.knownAccountIds = knownAccountIds;
+        this.passwordHasher = passwordHasher;
     }
 
     /**
-     * Registers an account to a database using the DAO.
+     * Registers an account to a database using the DAO. Only a hash of the password is stored.
      * @param newAccount New account information.
-     * @return If account is valid, returns registered account information. If not, return null.
+     * @return If account is valid, returns registered account information, with the password as given. If not, return
+     * null.
      */
     public Account registerNewAccount(Account newAccount){
         //Check conditions
-        if(newAccount.getUsername().isBlank() || newAccount.getPassword().length() < 4 || this.accountDAO.searchAccountByUsername(newAccount.getUsername()) != null)
+        if(newAccount.getUsername().isBlank() || newAccount.getPassword().length() < 4)
+            return null;
+
+        //Only usernames the filter has seen can be taken; the insert itself settles any race
+        String username = newAccount.getUsername();
+        if(this.takenUsernames.mightContain(username) && this.usernameTaken.get(username, this.accountDAO::usernameExists))
+            return null;
+
+        String passwordHash = this.passwordHasher.hash(newAccount.getPassword());
+        Account registeredAccount = this.accountDAO.registerAccount(new Account(username, passwordHash));
+        //Taken either way now: by this account, or by the one that made the insert fail
+        this.takenUsernames.put(username);
+        this.usernameTaken.invalidate(username);
+        if(registeredAccount == null)
             return null;
-        
-        return this.accountDAO.registerAccount(newAccount);
+
+        this.knownAccountIds.add(registeredAccount.getAccount_id());
+        return new Account(registeredAccount.getAccount_id(), username, newAccount.getPassword());
+    }
+
+    /**
+     * Rebuilds the filter of taken usernames from every username in the database. Registrations made while the rebuild
+     * runs may be missing from the new filter, which only means their usernames are checked by the insert, so call
+     * it before the app starts serving.
+     */
+    public void rebuildUsernameFilter(){
+        BloomFilter filter = newUsernameFilter();
+        this.accountDAO.forEachUsername(filter::put);
+        this.takenUsernames = filter;
+        this.usernameTaken.invalidateAll();
     }
 
     /**
-     * Checks if the account's credentials are valid.
+     * @return An empty filter sized with accounts.usernameFilter.expectedUsernames and
+     * accounts.usernameFilter.falsePositiveRate (1 million usernames at 1% by default, about 1.2MB).
+     */
+    private static BloomFilter newUsernameFilter(){
+        return new BloomFilter(Long.getLong("accounts.usernameFilter.expectedUsernames", 1000000),
+                Double.parseDouble(System.getProperty("accounts.usernameFilter.falsePositiveRate", "0.01")));
+    }
+
+    /**
+     * @return The filter of taken usernames, for reading its statistics.
+     */
+    public BloomFilter getUsernameFilter(){
+        return this.takenUsernames;
+    }
+
+    /**
+     * @return The cache of usernames the filter flagged, for reading its statistics.
+     */
+    public LruCache<String, Boolean> getUsernameCache(){
+        return this.usernameTaken;
+    }
+
+    /**
+     * Checks if the account's credentials are valid. The password is verified against the stored hash; a password
+     * stored in plaintext or hashed with an old work factor is replaced by a current hash once it has been verified.
      * @param currentAccount The account information to check.
-     * @return If the account is found, returns the account data. If not, return null.
+     * @return If the account is found, returns the account data, with the password as given. If not, return null.
      */
     public Account loginAccount(Account currentAccount){
-        return this.accountDAO.checkAccountCredentials(currentAccount.getUsername(), currentAccount.getPassword());
+        if(currentAccount.getUsername() == null || currentAccount.getPassword() == null)
+            return null;
+
+        Account storedAccount = this.accountDAO.searchAccountByUsername(currentAccount.getUsername());
+        if(storedAccount == null){
+            this.passwordHasher.verifyNothing(currentAccount.getPassword());
+            return null;
+        }
+        if(!this.passwordHasher.verify(currentAccount.getPassword(), storedAccount.getPassword()))
+            return null;
+
+        if(this.passwordHasher.needsRehash(storedAccount.getPassword())){
+            //If a concurrent login already replaced it, its hash is kept
+            this.accountDAO.updatePassword(storedAccount.getAccount_id(), storedAccount.getPassword(),
+                    this.passwordHasher.hash(currentAccount.getPassword()));
+        }
+
+        this.knownAccountIds.add(storedAccount.getAccount_id());
+        return new Account(storedAccount.getAccount_id(), storedAccount.getUsername(), currentAccount.getPassword());
+    }
+
+    /**
+     * @return The password hasher, for reading its statistics.
+     */
+    public PasswordHasher getPasswordHasher(){
+        return this.passwordHasher;
     }
 
 }
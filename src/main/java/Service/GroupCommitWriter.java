@@ -0,0 +1,221 @@
+package Service;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for new messages. Concurrent inserts are queued and a single flusher thread writes them as one JDBC
+ * batch in one transaction, so many requests share the cost of a commit. A batch is flushed once it holds
+ * maxBatchSize messages, or lingerMicros after its first message arrived, whichever comes first.
+ *
+ * Each caller blocks until its own message has been committed and gets it back with its generated message_id. If a
+ * batch fails (for example one message breaks a constraint), its messages are retried one at a time so that only the
+ * bad message fails.
+ *
+ * Enabled with -Dmessages.groupCommit.enabled=true, and tuned with messages.groupCommit.maxBatchSize and
+ * messages.groupCommit.lingerMicros.
+ */
+public class GroupCommitWriter {
+
+    private final MessageDAO messageDAO;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<PendingMessage> queue;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    //Flush statistics
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder messageCount = new LongAdder();
+    private final LongAdder fallbackCount = new LongAdder();
+
+    public GroupCommitWriter(MessageDAO messageDAO, int maxBatchSize, long lingerMicros){
+        if(maxBatchSize < 1 || lingerMicros < 0)
+            throw new IllegalArgumentException("Invalid group commit settings: maxBatchSize=" + maxBatchSize + ", lingerMicros=" + lingerMicros);
+
+        this.messageDAO = messageDAO;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        //Callers block on a full queue, which pushes back on request threads instead of growing without bound
+        this.queue = new LinkedBlockingQueue<>(maxBatchSize * 16);
+
+        this.flusher = new Thread(this::flushLoop, "message-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * @return A writer configured from the messages.groupCommit.* system properties, or null if group commit is off.
+     */
+    public static GroupCommitWriter fromSystemProperties(MessageDAO messageDAO){
+        if(!Boolean.getBoolean("messages.groupCommit.enabled"))
+            return null;
+
+        return new GroupCommitWriter(messageDAO,
+                Integer.getInteger("messages.groupCommit.maxBatchSize", 64),
+                Long.getLong("messages.groupCommit.lingerMicros", 200));
+    }
+
+    /**
+     * Queues a message for the next batch and waits for it to be committed.
+     * @param newMessage The information for the message.
+     * @return The stored message with its generated id, or null if it could not be stored.
+     */
+    public Message insert(Message newMessage){
+        if(!running)
+            return this.messageDAO.createNewMessage(newMessage);
+
+        PendingMessage pending = new PendingMessage(newMessage);
+        try{
+            queue.put(pending);
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        //The flusher may have exited between the running check and the put. If it never took the message, write it here.
+        if(!running && queue.remove(pending))
+            return this.messageDAO.createNewMessage(newMessage);
+        return pending.result.join();
+    }
+
+    private void flushLoop(){
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while(running || !queue.isEmpty()){
+            try{
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null)
+                    continue;
+                batch.add(first);
+
+                //Keep collecting until the batch is full or the linger time since the first message is up
+                long deadline = System.nanoTime() + lingerNanos;
+                while(batch.size() < maxBatchSize){
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if(next == null)
+                        break;
+                    batch.add(next);
+                }
+            }
+            catch(InterruptedException e){
+                running = false;
+            }
+
+            if(!batch.isEmpty()){
+                flush(batch);
+                batch.clear();
+            }
+        }
+        failQueued();
+    }
+
+    /**
+     * Completes every message still queued with null, so that no caller waits on a flusher that has stopped.
+     */
+    private void failQueued(){
+        List<PendingMessage> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        for(PendingMessage pending : abandoned)
+            pending.result.complete(null);
+    }
+
+    private void flush(List<PendingMessage> batch){
+        try{
+            List<Message> newMessages = new ArrayList<>(batch.size());
+            for(PendingMessage pending : batch)
+                newMessages.add(pending.message);
+
+            List<Message> createdMessages = this.messageDAO.createNewMessages(newMessages);
+            batchCount.increment();
+            messageCount.add(batch.size());
+
+            if(createdMessages != null){
+                for(int i = 0; i < batch.size(); i++)
+                    batch.get(i).result.complete(createdMessages.get(i));
+                return;
+            }
+
+            //The whole transaction was rolled back, so retry each message on its own
+            fallbackCount.increment();
+            for(PendingMessage pending : batch)
+                pending.result.complete(this.messageDAO.createNewMessage(pending.message));
+        }
+        catch(RuntimeException e){
+            for(PendingMessage pending : batch)
+                pending.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Flushes whatever is queued and stops the flusher thread. Later inserts are written directly. Messages the
+     * flusher has not taken within 5 seconds are not stored, and their callers get null.
+     */
+    public void shutdown(){
+        running = false;
+        try{
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        failQueued();
+    }
+
+    /**
+     * @return The number of batches flushed.
+     */
+    public long getBatchCount(){
+        return batchCount.sum();
+    }
+
+    /**
+     * @return The number of messages written through batches.
+     */
+    public long getMessageCount(){
+        return messageCount.sum();
+    }
+
+    /**
+     * @return The number of batches that failed and were retried one message at a time.
+     */
+    public long getFallbackCount(){
+        return fallbackCount.sum();
+    }
+
+    /**
+     * @return The mean number of messages per flushed batch.
+     */
+    public double getMeanBatchSize(){
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : (double) messageCount.sum() / batches;
+    }
+
+    public int getMaxBatchSize(){
+        return maxBatchSize;
+    }
+
+    public long getLingerMicros(){
+        return TimeUnit.NANOSECONDS.toMicros(lingerNanos);
+    }
+
+    /**
+     * A queued message and the future its caller is waiting on.
+     */
+    private static class PendingMessage {
+        private final Message message;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingMessage(Message message){
+            this.message = message;
+        }
+    }
+}
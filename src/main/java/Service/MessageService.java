@@ -1,34 +1,100 @@
 package Service;
 
+import Cache.KnownAccountIds;
+import Cache.LruCache;
+import Cache.RecentMessages;
+import Cache.SearchIndex;
+import Cache.TimelineStore;
+import Cache.VersionCounters;
 import DAO.AccountDAO;
 import DAO.MessageDAO;
+import DAO.MessageSink;
 import Model.Message;
+import Model.MessagePage;
+import Model.MessageResult;
+import Util.PageCursor;
+import Util.UnitOfWork;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 public class MessageService {
+    /**
+     * The largest page size a client may ask for.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * The most items a client may send in one batch request.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
     public AccountDAO accountDAO;
     public MessageDAO messageDAO;
+    /**
+     * Batches message inserts into group commits. Null unless messages.groupCommit.enabled is set.
+     */
+    private GroupCommitWriter groupCommitWriter;
+    /**
+     * Account ids known to exist, so that posting a message rarely needs to look up its account.
+     */
+    private KnownAccountIds knownAccountIds;
+    /**
+     * Read-through cache of single messages by id, including ids that were not found. Every change to a message
+     * invalidates its id once the change has been committed.
+     */
+    private LruCache<Integer, Message> messageCache = new LruCache<>(
+            Integer.getInteger("messages.cache.maxSize", 10000),
+            Long.getLong("messages.cache.ttlMillis", 0),
+            !"false".equals(System.getProperty("messages.cache.negative")));
+    /**
+     * Each account's messages, newest first, so the most viewed accounts are listed without a query. Kept current by
+     * every create, update and delete once it has been committed.
+     */
+    private TimelineStore timelines = TimelineStore.fromSystemProperties();
+    /**
+     * The newest messages of the global feed, so GET /messages?latest=N is served without a query. Kept current by
+     * every create, update and delete once it has been committed.
+     */
+    private RecentMessages recentMessages = RecentMessages.fromSystemProperties();
+    /**
+     * Global and per-account change counters, from which list responses get their ETags.
+     */
+    private VersionCounters versions = new VersionCounters();
+    /**
+     * Inverted index over message_text for GET /messages/search. Built by buildSearchIndex(), and kept current by
+     * every create, update and delete once it has been committed.
+     */
+    private SearchIndex searchIndex = new SearchIndex();
     
     //Constructors
     public MessageService(){
-        this.accountDAO = new AccountDAO();
-        this.messageDAO = new MessageDAO();
+        this(new AccountDAO(), MessageDAO.fromSystemProperties());
     }
 
     public MessageService(AccountDAO accountDAO){
-        this.accountDAO = accountDAO;
-        this.messageDAO = new MessageDAO();
+        this(accountDAO, MessageDAO.fromSystemProperties());
     }
 
     public MessageService(MessageDAO messageDAO){
-        this.accountDAO = new AccountDAO();
-        this.messageDAO = messageDAO;
+        this(new AccountDAO(), messageDAO);
     }
 
     public MessageService(AccountDAO accountDAO, MessageDAO messageDAO){
+        this(accountDAO, messageDAO, new KnownAccountIds());
+    }
+
+    public MessageService(AccountDAO accountDAO, MessageDAO messageDAO, KnownAccountIds knownAccountIds){
         this.accountDAO = accountDAO;
         this.messageDAO = messageDAO;
+        this.knownAccountIds = knownAccountIds;
+        this.groupCommitWriter = GroupCommitWriter.fromSystemProperties(messageDAO);
     }
 
     /**
@@ -36,13 +102,259 @@ public class MessageService {
      * @param newMessage New message information.
      * @return If account is valid, returns registered message information. If not, return null.
      */
+    @SuppressWarnings("try")
     public Message createMessage(Message newMessage){
         //Check conditions
-        if(newMessage.getMessage_text().isBlank() || newMessage.getMessage_text().length() >= 255 || this.accountDAO.searchAccountByID(newMessage.getPosted_by()) == null)
+        if(newMessage.getMessage_text().isBlank() || newMessage.getMessage_text().length() >= 255)
             return null;
-    
 
-        return this.messageDAO.createNewMessage(newMessage);
+        Message createdMessage = null;
+        //With group commit the insert happens on the flusher's connection, so don't hold one while waiting for it
+        if(this.groupCommitWriter != null){
+            if(!accountExists(newMessage.getPosted_by()))
+                return null;
+
+            createdMessage = this.groupCommitWriter.insert(newMessage);
+        }
+        else{
+            //The account check and the insert share one connection
+            try(UnitOfWork ignored = UnitOfWork.begin()){
+                if(!accountExists(newMessage.getPosted_by()))
+                    return null;
+
+                createdMessage = this.messageDAO.createNewMessage(newMessage);
+            }
+            catch(SQLException e){
+                System.out.println(e.getMessage());
+            }
+        }
+
+        if(createdMessage != null){
+            this.timelines.messageCreated(createdMessage);
+            this.recentMessages.messageCreated(createdMessage);
+            this.searchIndex.messageCreated(createdMessage);
+            messageChanged(createdMessage);
+        }
+        return createdMessage;
+    }
+
+    /**
+     * Registers several new messages to the database with one batch insert in a single transaction. Each message is
+     * validated on its own, and the valid ones are stored together: either all of them or none.
+     * @param newMessages New message information.
+     * @return One result per message, in the same order: the registered message, or why it was not registered.
+     */
+    @SuppressWarnings("try")
+    public List<MessageResult> createMessages(List<Message> newMessages){
+        MessageResult[] results = new MessageResult[newMessages.size()];
+        List<Message> validMessages = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        List<Message> createdMessages = null;
+
+        //The account checks and the insert share one connection
+        try(UnitOfWork ignored = UnitOfWork.begin()){
+            for(int i = 0; i < results.length; i++){
+                Message newMessage = newMessages.get(i);
+                if(newMessage == null || newMessage.getMessage_text() == null || newMessage.getMessage_text().isBlank()
+                        || newMessage.getMessage_text().length() >= 255)
+                    results[i] = MessageResult.failed(400, "message_text must be 1 to 254 characters");
+                else if(!accountExists(newMessage.getPosted_by()))
+                    results[i] = MessageResult.failed(400, "posted_by is not an existing account");
+                else{
+                    validMessages.add(newMessage);
+                    validIndexes.add(i);
+                }
+            }
+
+            if(!validMessages.isEmpty())
+                createdMessages = this.messageDAO.createNewMessages(validMessages);
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+
+        for(int i = 0; i < validIndexes.size(); i++){
+            if(createdMessages == null){
+                results[validIndexes.get(i)] = MessageResult.failed(500, "The batch could not be stored");
+                continue;
+            }
+            Message createdMessage = createdMessages.get(i);
+            this.timelines.messageCreated(createdMessage);
+            this.recentMessages.messageCreated(createdMessage);
+            this.searchIndex.messageCreated(createdMessage);
+            messageChanged(createdMessage);
+            results[validIndexes.get(i)] = MessageResult.ok(createdMessage);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Returns the messages with the ids given, read with a single query.
+     * @param ids The message ids. May repeat.
+     * @return One result per id, in the same order: the message, or 404 if there is none.
+     */
+    public List<MessageResult> getMessagesByIds(List<Integer> ids){
+        Map<Integer, Message> found = new HashMap<>();
+        for(Message message : this.messageDAO.getMessagesByIds(new ArrayList<>(new LinkedHashSet<>(ids))))
+            found.put(message.getMessage_id(), message);
+
+        List<MessageResult> results = new ArrayList<>(ids.size());
+        for(int id : ids){
+            Message message = found.get(id);
+            results.add(message != null ? MessageResult.ok(message) : MessageResult.failed(404, "No message with this id"));
+        }
+        return results;
+    }
+
+    /**
+     * Deletes the messages with the ids given, with a single statement.
+     * @param ids The message ids. May repeat.
+     * @param posted_by Only delete messages posted by this account, or 0 to delete any of them.
+     * @return One result per id, in the same order: the message deleted, 403 if it was posted by another account, or
+     * 404 if there is none.
+     */
+    public List<MessageResult> deleteMessages(List<Integer> ids, int posted_by){
+        List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Message> deletedMessages = this.messageDAO.deleteMessages(distinctIds, posted_by);
+        List<MessageResult> results = new ArrayList<>(ids.size());
+        if(deletedMessages == null){
+            for(int i = 0; i < ids.size(); i++)
+                results.add(MessageResult.failed(500, "The messages could not be deleted"));
+            return results;
+        }
+
+        Map<Integer, Message> deleted = new HashMap<>();
+        for(Message deletedMessage : deletedMessages){
+            deleted.put(deletedMessage.getMessage_id(), deletedMessage);
+            this.timelines.messageDeleted(deletedMessage);
+            this.recentMessages.messageDeleted(deletedMessage);
+            this.searchIndex.messageDeleted(deletedMessage);
+            messageChanged(deletedMessage);
+        }
+
+        //Tell messages owned by someone else apart from missing ones
+        Map<Integer, Message> notOwned = new HashMap<>();
+        if(posted_by != 0 && deleted.size() < distinctIds.size()){
+            distinctIds.removeAll(deleted.keySet());
+            for(Message message : this.messageDAO.getMessagesByIds(distinctIds))
+                notOwned.put(message.getMessage_id(), message);
+        }
+
+        for(int id : ids){
+            if(deleted.containsKey(id))
+                results.add(MessageResult.ok(deleted.get(id)));
+            else if(notOwned.containsKey(id))
+                results.add(MessageResult.failed(403, "The message was posted by another account"));
+            else
+                results.add(MessageResult.failed(404, "No message with this id"));
+        }
+        return results;
+    }
+
+    /**
+     * Called after a message has been created, updated or deleted, the change has been committed, and the timelines,
+     * the recent-messages ring and the search index have been updated.
+     * @param message The message as it is after the change, or as it was before a delete.
+     */
+    private void messageChanged(Message message){
+        //Drops the id even if it was cached as missing
+        this.messageCache.invalidate(message.getMessage_id());
+        //Last, so a reader that sees the new version also sees the change everywhere (see VersionCounters)
+        this.versions.changed(message.getPosted_by());
+    }
+
+    /**
+     * Checks that a message's author exists, going to the database only for ids not already known.
+     * @param account_id The account id to check.
+     * @return true if the account exists.
+     */
+    private boolean accountExists(int account_id){
+        if(this.knownAccountIds.contains(account_id))
+            return true;
+        if(!this.accountDAO.accountExists(account_id))
+            return false;
+
+        this.knownAccountIds.add(account_id);
+        return true;
+    }
+
+    /**
+     * @return The account ids known to exist, for reading the cache hit and miss counts.
+     */
+    public KnownAccountIds getKnownAccountIds(){
+        return this.knownAccountIds;
+    }
+
+    /**
+     * @return The single-message cache, for reading its hit ratio, evictions and load times.
+     */
+    public LruCache<Integer, Message> getMessageCache(){
+        return this.messageCache;
+    }
+
+    /**
+     * @return The timeline store, for reading its hit counts, size and evictions.
+     */
+    public TimelineStore getTimelines(){
+        return this.timelines;
+    }
+
+    /**
+     * @return The change counters, for building ETags. Read a version before reading the messages it covers.
+     */
+    public VersionCounters getVersions(){
+        return this.versions;
+    }
+
+    /**
+     * @return The recent-messages ring, for reading its hit counts.
+     */
+    public RecentMessages getRecentMessages(){
+        return this.recentMessages;
+    }
+
+    /**
+     * Loads the newest messages into the recent-messages ring. Called once at startup, before any message is written.
+     */
+    public void primeRecentMessages(){
+        this.recentMessages.prime(this.messageDAO.getNewestMessages(this.recentMessages.getCapacity()));
+    }
+
+    /**
+     * @return The search index, for reading its size and query counts.
+     */
+    public SearchIndex getSearchIndex(){
+        return this.searchIndex;
+    }
+
+    /**
+     * Indexes every message for search. Called once at startup, and again by a search if an earlier build failed.
+     * Messages written while it runs are indexed once it finishes.
+     * @return true if the index is ready.
+     */
+    public synchronized boolean buildSearchIndex(){
+        if(!this.searchIndex.beginBuild())
+            return this.searchIndex.isReady();
+
+        boolean complete = false;
+        try{
+            this.messageDAO.streamAllMessages(this.searchIndex::index);
+            complete = true;
+        }
+        catch(IOException e){
+            System.out.println(e.getMessage());
+        }
+        finally{
+            this.searchIndex.finishBuild(complete);
+        }
+        return complete;
+    }
+
+    /**
+     * @return The group commit writer, or null if group commit is off.
+     */
+    public GroupCommitWriter getGroupCommitWriter(){
+        return this.groupCommitWriter;
     }
 
     /**
@@ -53,13 +365,35 @@ public class MessageService {
         return this.messageDAO.getAllMessages();
     }
 
+    /**
+     * Returns the newest messages in the database, from the recent-messages ring when it holds enough of them.
+     * @param count The number of messages wanted.
+     * @return Up to count messages, newest (highest message_id) first.
+     */
+    public List<Message> getLatestMessages(int count){
+        return this.recentMessages.getLatest(count, this.messageDAO::getNewestMessages);
+    }
+
+    /**
+     * Returns the newest messages whose text matches a search.
+     * @param query The parsed search.
+     * @param limit The maximum number of messages returned.
+     * @return Up to limit matching messages, newest (highest message_id) first, or null if the search index could not
+     * be built.
+     */
+    public List<Message> searchMessages(SearchIndex.Query query, int limit){
+        if(!this.searchIndex.isReady() && !buildSearchIndex())
+            return null;
+        return this.searchIndex.search(query, limit, this.messageDAO::getMessagesByIds);
+    }
+
     /**
      * Returns message information based on the message id given.
      * @param id The message id of the message.
      * @return If found, returns the message information. If not, return null.
      */
     public Message getMessageByMessageId(int id){
-        return this.messageDAO.getMessageByMessageId(id);
+        return this.messageCache.get(id, this.messageDAO::getMessageByMessageId);
     }
 
     /**
@@ -68,7 +402,14 @@ public class MessageService {
      * @return If deleted, returns the message deleted. If no message deleted, return null.
      */
     public Message deleteMessage(int id){
-        return this.messageDAO.deleteMessage(id);
+        Message deletedMessage = this.messageDAO.deleteMessage(id);
+        if(deletedMessage != null){
+            this.timelines.messageDeleted(deletedMessage);
+            this.recentMessages.messageDeleted(deletedMessage);
+            this.searchIndex.messageDeleted(deletedMessage);
+            messageChanged(deletedMessage);
+        }
+        return deletedMessage;
     }
 
     /**
@@ -79,18 +420,111 @@ public class MessageService {
      */
     public Message updateMessage(int id, String message){
         //Check conditions
-        if(message.isBlank() || message.length() >= 255 || this.messageDAO.getMessageByMessageId(id) == null)
+        if(message.isBlank() || message.length() >= 255)
             return null;
 
-        return this.messageDAO.updateMessage(id, message);
+        Message previousMessage;
+        Message updatedMessage;
+        //The update and its search index change share one transaction. The row stays locked until the commit, so
+        //concurrent updates of one message reach the index in commit order, each with the text it replaced
+        try(UnitOfWork unitOfWork = UnitOfWork.begin()){
+            Connection connection = unitOfWork.getConnection();
+            connection.setAutoCommit(false);
+            try{
+                //A message deleted since shows up as no row updated
+                previousMessage = this.messageDAO.replaceMessageText(id, message);
+                if(previousMessage == null){
+                    connection.rollback();
+                    return null;
+                }
+                updatedMessage = new Message(previousMessage.getMessage_id(), previousMessage.getPosted_by(), message,
+                        previousMessage.getTime_posted_epoch());
+                this.searchIndex.messageUpdated(previousMessage, updatedMessage);
+                try{
+                    connection.commit();
+                }
+                catch(SQLException e){
+                    //Puts the old text's terms back, since the update never happened
+                    this.searchIndex.messageUpdated(updatedMessage, previousMessage);
+                    throw e;
+                }
+            }
+            catch(SQLException e){
+                connection.rollback();
+                throw e;
+            }
+            finally{
+                connection.setAutoCommit(true);
+            }
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+            return null;
+        }
+
+        this.timelines.messageUpdated(updatedMessage);
+        this.recentMessages.messageUpdated(updatedMessage);
+        messageChanged(updatedMessage);
+        return updatedMessage;
     }
 
     /**
-     * Returns a list of all messages in the database posted by the account id given.
+     * Returns a list of all messages in the database posted by the account id given, from the account's timeline when
+     * it holds all of them.
      * @param account_id The account id to check the messages for.
-     * @return A list of all messages posted by the account id given.
+     * @return A list of all messages posted by the account id given. The list must not be modified.
      */
     public List<Message> getAllMessagesByAccountId(int account_id){
-        return this.messageDAO.getAllMessagesByAccountId(account_id);
+        return this.timelines.getMessages(account_id, this.messageDAO::getAllMessagesByAccountId);
+    }
+
+    /**
+     * Passes every message in the database to the sink as it is read, without building a list.
+     * @param sink The sink receiving the messages.
+     * @throws IOException If the sink failed, or the messages could not be read.
+     */
+    public void streamAllMessages(MessageSink sink) throws IOException{
+        this.messageDAO.streamAllMessages(sink);
+    }
+
+    /**
+     * Passes every message posted by the account id given to the sink as it is read, without building a list.
+     * @param account_id The account id to check the messages for.
+     * @param sink The sink receiving the messages.
+     * @throws IOException If the sink failed, or the messages could not be read.
+     */
+    public void streamAllMessagesByAccountId(int account_id, MessageSink sink) throws IOException{
+        this.messageDAO.streamAllMessagesByAccountId(account_id, sink);
+    }
+
+    /**
+     * Returns one page of all messages in the database.
+     * @param after The cursor to start after.
+     * @param limit The maximum number of messages on the page.
+     * @return The page, with a cursor to the next page if there are more messages.
+     */
+    public MessagePage getMessagePage(PageCursor after, int limit){
+        //Fetch one extra row to find out whether there is another page
+        return toPage(this.messageDAO.getMessagePage(after, limit + 1), after.isByTime(), limit);
+    }
+
+    /**
+     * Returns one page of the messages posted by the account id given.
+     * @param account_id The account id to check the messages for.
+     * @param after The cursor to start after.
+     * @param limit The maximum number of messages on the page.
+     * @return The page, with a cursor to the next page if there are more messages.
+     */
+    public MessagePage getMessagePageByAccountId(int account_id, PageCursor after, int limit){
+        return toPage(this.messageDAO.getMessagePageByAccountId(account_id, after, limit + 1), after.isByTime(), limit);
+    }
+
+    private MessagePage toPage(List<Message> rows, boolean byTime, int limit){
+        if(rows.size() <= limit)
+            return new MessagePage(rows, null);
+
+        List<Message> messages = rows.subList(0, limit);
+        Message last = messages.get(limit - 1);
+        return new MessagePage(messages, PageCursor.after(byTime, last.getTime_posted_epoch(), last.getMessage_id()).encode());
     }
 }
@@ -0,0 +1,250 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed set of worker threads with a bounded queue in front of them, so one kind of work can only ever tie up its
+ * own threads. When every thread is busy and the queue is full, submit() throws RejectedExecutionException straight
+ * away instead of letting callers pile up.
+ *
+ * Idle workers exit after a minute and are started again on demand.
+ *
+ * When requests are handled on virtual threads (see ServerThreads), moving work onto a pool of platform threads would
+ * undo them: every JDBC call would block a platform thread again. An inline bulkhead therefore runs each task on the
+ * calling thread instead, once it holds one of threads permits. Up to queueCapacity callers wait for a permit, and the
+ * rest are rejected just like a full pool rejects them, so the kinds of work stay isolated from each other.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int threads;
+    private final int queueCapacity;
+    //Null for an inline bulkhead, which runs tasks on the caller's thread under permits instead
+    private final ThreadPoolExecutor executor;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+
+    /**
+     * A unit of work run on one of the bulkhead's threads.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * @param name The name of the bulkhead, used for its thread names and in metrics.
+     * @param threads The number of worker threads.
+     * @param queueCapacity The number of tasks that may wait for a thread. With 0, a task is rejected unless a thread is
+     * free to take it.
+     */
+    public Bulkhead(String name, int threads, int queueCapacity){
+        this(name, threads, queueCapacity, false);
+    }
+
+    /**
+     * @param name The name of the bulkhead, used for its thread names and in metrics.
+     * @param threads The number of worker threads, or of tasks run at once by an inline bulkhead.
+     * @param queueCapacity The number of tasks that may wait for a thread. With 0, a task is rejected unless a thread is
+     * free to take it.
+     * @param inline true to run tasks on the calling thread rather than on worker threads.
+     */
+    public Bulkhead(String name, int threads, int queueCapacity, boolean inline){
+        if(threads < 1 || queueCapacity < 0)
+            throw new IllegalArgumentException("Invalid bulkhead " + name + ": threads=" + threads + ", queueCapacity=" + queueCapacity);
+
+        this.name = name;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        if(inline){
+            this.executor = null;
+            this.permits = new Semaphore(threads, true);
+            return;
+        }
+        this.permits = null;
+        BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "bulkhead-" + name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param name The name of the bulkhead, which selects the executor.[name].threads and executor.[name].queue system
+     * properties.
+     * @param threads The number of worker threads if executor.[name].threads is not set.
+     * @param queueCapacity The queue capacity if executor.[name].queue is not set.
+     * @return A bulkhead sized from the system properties, inline when requests are handled on virtual threads.
+     */
+    public static Bulkhead fromSystemProperties(String name, int threads, int queueCapacity){
+        return new Bulkhead(name,
+                Integer.getInteger("executor." + name + ".threads", threads),
+                Integer.getInteger("executor." + name + ".queue", queueCapacity),
+                ServerThreads.isVirtual());
+    }
+
+    /**
+     * Runs a task on one of the bulkhead's threads.
+     * @param task The task.
+     * @return A future completed when the task finishes, exceptionally if it threw.
+     * @throws RejectedExecutionException If every thread is busy and the queue is full.
+     */
+    public CompletableFuture<Void> submit(Task task){
+        return call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs a task that produces a value on one of the bulkhead's threads.
+     * @param task The task.
+     * @return A future completed with the task's value, or exceptionally if it threw.
+     * @throws RejectedExecutionException If every thread is busy and the queue is full.
+     */
+    public <T> CompletableFuture<T> call(Callable<T> task){
+        if(executor == null)
+            return callInline(task);
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        try{
+            executor.execute(() -> {
+                queueWaitNanos.add(System.nanoTime() - queuedAt);
+                try{
+                    future.complete(task.call());
+                }
+                catch(Throwable e){
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch(RejectedExecutionException e){
+            rejected.increment();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Runs a task on the calling thread once a permit is free.
+     * @return A future already completed with the task's value, or exceptionally if it threw.
+     * @throws RejectedExecutionException If every permit is taken and queueCapacity callers are already waiting.
+     */
+    private <T> CompletableFuture<T> callInline(Callable<T> task){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if(!permits.tryAcquire()){
+            if(waiting.incrementAndGet() > queueCapacity){
+                waiting.decrementAndGet();
+                rejected.increment();
+                throw new RejectedExecutionException("Bulkhead " + name + " is full: " + queueCapacity + " callers already waiting");
+            }
+            long queuedAt = System.nanoTime();
+            try{
+                permits.acquire();
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return future;
+            }
+            finally{
+                waiting.decrementAndGet();
+                queueWaitNanos.add(System.nanoTime() - queuedAt);
+            }
+        }
+
+        running.incrementAndGet();
+        try{
+            future.complete(task.call());
+        }
+        catch(Throwable e){
+            future.completeExceptionally(e);
+        }
+        finally{
+            running.decrementAndGet();
+            completed.increment();
+            permits.release();
+        }
+        return future;
+    }
+
+    /**
+     * Stops the worker threads once the queued tasks have run. An inline bulkhead has no threads to stop.
+     */
+    public void shutdown(){
+        if(executor != null)
+            executor.shutdown();
+    }
+
+    /**
+     * @return true if tasks run on the calling thread rather than on worker threads.
+     */
+    public boolean isInline(){
+        return executor == null;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public int getThreads(){
+        return threads;
+    }
+
+    public int getQueueCapacity(){
+        return queueCapacity;
+    }
+
+    /**
+     * @return The number of threads currently running a task.
+     */
+    public int getActiveCount(){
+        return executor == null ? running.get() : executor.getActiveCount();
+    }
+
+    /**
+     * @return The number of tasks waiting for a thread.
+     */
+    public int getQueuedCount(){
+        return executor == null ? waiting.get() : executor.getQueue().size();
+    }
+
+    /**
+     * @return The number of tasks turned away because the bulkhead was full.
+     */
+    public long getRejectedCount(){
+        return rejected.sum();
+    }
+
+    /**
+     * @return The number of tasks that have finished.
+     */
+    public long getCompletedCount(){
+        return executor == null ? completed.sum() : executor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return The total time tasks spent queued before a thread picked them up, in nanoseconds.
+     */
+    public long getTotalQueueWaitNanos(){
+        return queueWaitNanos.sum();
+    }
+}
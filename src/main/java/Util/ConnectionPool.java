@@ -0,0 +1,578 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded JDBC connection pool. At most maxSize physical connections are ever open at once, and callers that
+ * cannot get one within the acquire timeout receive a SQLTimeoutException instead of waiting forever.
+ *
+ * Connections handed out by the pool are proxies: calling close() on them closes any statements still open from that
+ * borrow and returns the physical connection to the pool instead of closing it. A background housekeeper closes
+ * connections that have been idle for too long (never going below minSize) and reports connections that have been
+ * borrowed for longer than the leak threshold.
+ *
+ * Each physical connection also keeps a small LRU cache of prepared statements keyed by SQL, which UnitOfWork uses so
+ * that a query is parsed once per connection rather than once per call.
+ */
+public class ConnectionPool {
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    /**
+     * One permit per connection that may be borrowed. Waiting callers queue on this semaphore.
+     */
+    private final Semaphore permits;
+    /**
+     * Idle connections, most recently used first so that cold connections drift to the tail and get evicted.
+     */
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean shutdown;
+
+    //Acquire statistics
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder leaksDetected = new LongAdder();
+
+    //Statement cache statistics
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+            long idleTimeoutMillis, long leakThresholdMillis){
+        this(dataSource, minSize, maxSize, acquireTimeoutMillis, idleTimeoutMillis, leakThresholdMillis, 32);
+    }
+
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+            long idleTimeoutMillis, long leakThresholdMillis, int statementCacheSize){
+        if(minSize < 0 || maxSize < 1 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, leakThresholdMillis) / 2);
+        this.housekeeper.scheduleWithFixedDelay(this::houseKeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new physical connection if no idle one is available.
+     * @return A pooled connection. Closing it returns it to the pool.
+     * @throws SQLException If no connection became available within the acquire timeout, or a new connection could
+     * not be opened.
+     */
+    public Connection getConnection() throws SQLException{
+        return borrow().getConnection();
+    }
+
+    /**
+     * Borrows a pooled connection from the pool.
+     * @return The pooled connection, which must be released exactly once.
+     * @throws SQLException If no connection became available within the acquire timeout, or a new connection could
+     * not be opened.
+     */
+    PooledConnection borrow() throws SQLException{
+        long start = System.nanoTime();
+        try{
+            if(!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)){
+                acquireTimeouts.increment();
+                throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection (active="
+                        + getActiveCount() + ", idle=" + getIdleCount() + ", waiting=" + getWaitingCount() + ")");
+            }
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try{
+            PooledConnection pooled = takeIdle();
+            if(pooled == null)
+                pooled = open();
+
+            pooled.markBorrowed();
+            borrowed.add(pooled);
+            recordAcquire(System.nanoTime() - start);
+            return pooled;
+        }
+        catch(SQLException | RuntimeException e){
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection that is still usable, discarding any that are broken.
+     */
+    private PooledConnection takeIdle(){
+        PooledConnection pooled;
+        while((pooled = idle.pollFirst()) != null){
+            if(pooled.isUsable())
+                return pooled;
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException{
+        Connection physical = dataSource.getConnection();
+        totalConnections.incrementAndGet();
+        return new PooledConnection(this, physical);
+    }
+
+    /**
+     * Returns a borrowed connection to the pool. Called by PooledConnection when its proxy is closed.
+     */
+    void release(PooledConnection pooled){
+        borrowed.remove(pooled);
+        if(!shutdown && pooled.resetForReuse()){
+            idle.offerFirst(pooled);
+            //shutdown() may have drained the idle connections between the check and the offer
+            if(shutdown && idle.remove(pooled))
+                discard(pooled);
+        }
+        else
+            discard(pooled);
+        permits.release();
+    }
+
+    private void discard(PooledConnection pooled){
+        pooled.closePhysical();
+        totalConnections.decrementAndGet();
+    }
+
+    private void recordAcquire(long nanos){
+        acquireCount.increment();
+        acquireNanos.add(nanos);
+        long max;
+        while(nanos > (max = maxAcquireNanos.get()) && !maxAcquireNanos.compareAndSet(max, nanos));
+    }
+
+    /**
+     * Evicts connections idle for longer than the idle timeout while keeping at least minSize open, tops the pool
+     * back up to minSize, and reports connections that look leaked.
+     */
+    void houseKeep(){
+        long now = System.currentTimeMillis();
+
+        //Idle connections are ordered most recently used first, so walk from the tail.
+        Iterator<PooledConnection> coldest = idle.descendingIterator();
+        while(coldest.hasNext() && totalConnections.get() > minSize){
+            PooledConnection pooled = coldest.next();
+            if(now - pooled.getLastUsedMillis() < idleTimeoutMillis)
+                break;
+            if(idle.removeLastOccurrence(pooled))
+                discard(pooled);
+        }
+
+        while(totalConnections.get() < minSize && permits.tryAcquire()){
+            try{
+                idle.offerLast(open());
+            }
+            catch(SQLException e){
+                System.out.println(e.getMessage());
+                break;
+            }
+            finally{
+                permits.release();
+            }
+        }
+
+        for(PooledConnection pooled : borrowed){
+            long heldFor = now - pooled.getBorrowedAtMillis();
+            if(heldFor > leakThresholdMillis && pooled.flagLeak()){
+                leaksDetected.increment();
+                System.out.println("Possible connection leak: connection held for " + heldFor + "ms by thread "
+                        + pooled.getBorrowerName());
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the housekeeper. Borrowed connections are closed as they are returned.
+     */
+    public void shutdown(){
+        shutdown = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while((pooled = idle.pollFirst()) != null)
+            discard(pooled);
+    }
+
+    /**
+     * @return The number of connections currently borrowed.
+     */
+    public int getActiveCount(){
+        return borrowed.size();
+    }
+
+    /**
+     * @return The number of open connections waiting in the pool.
+     */
+    public int getIdleCount(){
+        return idle.size();
+    }
+
+    /**
+     * @return The approximate number of callers blocked waiting for a connection.
+     */
+    public int getWaitingCount(){
+        return permits.getQueueLength();
+    }
+
+    /**
+     * @return The number of physical connections currently open, borrowed or idle.
+     */
+    public int getTotalCount(){
+        return totalConnections.get();
+    }
+
+    public int getMinSize(){
+        return minSize;
+    }
+
+    public int getMaxSize(){
+        return maxSize;
+    }
+
+    /**
+     * @return The number of successful acquisitions since the pool was created.
+     */
+    public long getAcquireCount(){
+        return acquireCount.sum();
+    }
+
+    /**
+     * @return The mean time spent in getConnection(), in nanoseconds.
+     */
+    public double getMeanAcquireNanos(){
+        long count = acquireCount.sum();
+        return count == 0 ? 0 : (double) acquireNanos.sum() / count;
+    }
+
+    /**
+     * @return The total time spent in getConnection(), in nanoseconds.
+     */
+    public long getTotalAcquireNanos(){
+        return acquireNanos.sum();
+    }
+
+    /**
+     * @return The longest time a single getConnection() call has taken, in nanoseconds.
+     */
+    public long getMaxAcquireNanos(){
+        return maxAcquireNanos.get();
+    }
+
+    /**
+     * @return The number of getConnection() calls that gave up after the acquire timeout.
+     */
+    public long getAcquireTimeoutCount(){
+        return acquireTimeouts.sum();
+    }
+
+    /**
+     * @return The number of borrowed connections that have been reported as possible leaks.
+     */
+    public long getLeakCount(){
+        return leaksDetected.sum();
+    }
+
+    /**
+     * @return The number of prepared statements served from a connection's statement cache.
+     */
+    public long getStatementCacheHits(){
+        return statementCacheHits.sum();
+    }
+
+    /**
+     * @return The number of prepared statements that had to be parsed because they were not cached.
+     */
+    public long getStatementCacheMisses(){
+        return statementCacheMisses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", waiting=" + getWaitingCount() +
+                ", total=" + getTotalCount() +
+                ", max=" + maxSize +
+                ", meanAcquireMicros=" + (long) (getMeanAcquireNanos() / 1000) +
+                ", maxAcquireMicros=" + getMaxAcquireNanos() / 1000 +
+                '}';
+    }
+
+    /**
+     * A physical connection owned by the pool, along with the bookkeeping needed to lend it out.
+     */
+    static class PooledConnection {
+        private final ConnectionPool pool;
+        private final Connection physical;
+        private volatile Connection proxy;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+        private volatile long borrowedAtMillis;
+        private volatile String borrowerName;
+        private volatile boolean leakReported;
+        /**
+         * Prepared statements kept open on the physical connection, least recently used first. Only the thread that
+         * has borrowed the connection touches it.
+         */
+        private final Map<String, PreparedStatement> statementCache;
+
+        PooledConnection(ConnectionPool pool, Connection physical){
+            this.pool = pool;
+            this.physical = physical;
+            int capacity = pool.statementCacheSize;
+            this.statementCache = new LinkedHashMap<>(16, 0.75f, true){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest){
+                    if(size() <= capacity)
+                        return false;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Returns a prepared statement for the SQL from this connection's cache, preparing it on a miss. The statement
+         * stays owned by the cache and must not be closed by the caller.
+         * @param sql The SQL to prepare.
+         * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS.
+         * @return A statement with its parameters cleared.
+         * @throws SQLException If the statement could not be prepared.
+         */
+        PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException{
+            String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+            PreparedStatement statement = statementCache.get(key);
+            if(statement != null && !statement.isClosed()){
+                pool.statementCacheHits.increment();
+                statement.clearParameters();
+                return statement;
+            }
+
+            pool.statementCacheMisses.increment();
+            statement = physical.prepareStatement(sql, autoGeneratedKeys);
+            if(pool.statementCacheSize > 0)
+                statementCache.put(key, statement);
+            return statement;
+        }
+
+        /**
+         * @return The connection handed out to callers for the current borrow.
+         */
+        Connection getConnection(){
+            return proxy;
+        }
+
+        Connection getPhysical(){
+            return physical;
+        }
+
+        void markBorrowed(){
+            borrowedAtMillis = System.currentTimeMillis();
+            borrowerName = Thread.currentThread().getName();
+            leakReported = false;
+            proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{ Connection.class }, new Handle(this));
+        }
+
+        /**
+         * Returns the physical connection to a clean state after a borrow.
+         * @return true if the connection can be reused, false if it should be discarded.
+         */
+        boolean resetForReuse(){
+            lastUsedMillis = System.currentTimeMillis();
+            try{
+                if(physical.isClosed())
+                    return false;
+                if(!physical.getAutoCommit()){
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                return true;
+            }
+            catch(SQLException e){
+                System.out.println(e.getMessage());
+                return false;
+            }
+        }
+
+        boolean isUsable(){
+            try{
+                return !physical.isClosed();
+            }
+            catch(SQLException e){
+                return false;
+            }
+        }
+
+        void closePhysical(){
+            for(PreparedStatement statement : statementCache.values())
+                closeQuietly(statement);
+            statementCache.clear();
+            try{
+                physical.close();
+            }
+            catch(SQLException e){
+                System.out.println(e.getMessage());
+            }
+        }
+
+        private static void closeQuietly(Statement statement){
+            try{
+                statement.close();
+            }
+            catch(SQLException e){
+                System.out.println(e.getMessage());
+            }
+        }
+
+        /**
+         * @return true the first time a leak is flagged during the current borrow.
+         */
+        boolean flagLeak(){
+            if(leakReported)
+                return false;
+            leakReported = true;
+            return true;
+        }
+
+        long getLastUsedMillis(){
+            return lastUsedMillis;
+        }
+
+        long getBorrowedAtMillis(){
+            return borrowedAtMillis;
+        }
+
+        String getBorrowerName(){
+            return borrowerName;
+        }
+
+        void release(){
+            pool.release(this);
+        }
+    }
+
+    /**
+     * Invocation handler behind the Connection proxies. close() closes the statements created through the proxy and
+     * returns the connection to the pool once; every other call is forwarded to the physical connection until then.
+     * unwrap() and isWrapperFor() only ever expose the proxy, so callers cannot get around the pool.
+     */
+    private static class Handle implements InvocationHandler {
+        private PooledConnection pooled;
+        private final List<Statement> openStatements = new ArrayList<>();
+
+        Handle(PooledConnection pooled){
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch(method.getName()){
+                case "close":
+                    synchronized(this){
+                        if(pooled != null){
+                            PooledConnection released = pooled;
+                            pooled = null;
+                            closeStatements();
+                            released.release();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return pooled == null || pooled.getPhysical().isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled + "]";
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                case "unwrap":
+                    if(((Class<?>) args[0]).isInstance(proxy))
+                        return proxy;
+                    throw new SQLException("Pooled connections do not wrap " + ((Class<?>) args[0]).getName());
+                default:
+                    PooledConnection current = pooled;
+                    if(current == null)
+                        throw new SQLException("Connection has already been returned to the pool");
+                    try{
+                        Object result = method.invoke(current.getPhysical(), args);
+                        if(result instanceof Statement){
+                            synchronized(this){
+                                openStatements.add((Statement) result);
+                            }
+                        }
+                        return result;
+                    }
+                    catch(InvocationTargetException e){
+                        throw e.getCause();
+                    }
+            }
+        }
+
+        private void closeStatements(){
+            for(Statement statement : openStatements){
+                try{
+                    statement.close();
+                }
+                catch(SQLException e){
+                    System.out.println(e.getMessage());
+                }
+            }
+            openStatements.clear();
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 
@@ -13,7 +13,13 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections come from a bounded ConnectionPool, so every connection obtained
+ * from getConnection() must be closed to hand it back to the pool. The pool can
+ * be sized with the db.pool.* system properties.
+ *
+ * When requests run on virtual threads (see ServerThreads), or db.limiter.enabled
+ * is set, a DbLimiter sized with the db.limiter.* system properties bounds how
+ * many threads may use or wait for the pool at once.
  */
 public class ConnectionUtil {
 
@@ -21,7 +27,7 @@ public class ConnectionUtil {
 	 * url will represent our connection string. Since this is an in-memory db, we
 	 * will represent a file location to store the data
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,21 +38,46 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource that opens the physical connections handed out by the pool.
+	 */
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * Pool of connections shared by every DAO.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * Limiter in front of the pool, or null if callers go straight to the pool.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static DbLimiter limiter;
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * static initialization block to establish credentials for the DataSource and size the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("db.pool.minSize", 2),
+				Integer.getInteger("db.pool.maxSize", 10),
+				Long.getLong("db.pool.acquireTimeoutMillis", 5000),
+				Long.getLong("db.pool.idleTimeoutMillis", 60000),
+				Long.getLong("db.pool.leakThresholdMillis", 30000),
+				Integer.getInteger("db.pool.statementCacheSize", 32));
+
+		if (Boolean.parseBoolean(System.getProperty("db.limiter.enabled", String.valueOf(ServerThreads.isVirtual())))) {
+			limiter = new DbLimiter(
+					Integer.getInteger("db.limiter.maxConcurrent", pool.getMaxSize()),
+					Integer.getInteger("db.limiter.maxWaiting", 1000),
+					Long.getLong("db.limiter.timeoutMillis", 5000));
+		}
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, which must be closed to return it to the pool
 	 */
 	public static Connection getConnection() {
 		try {
@@ -58,16 +89,51 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * Returns a connection obtained from getConnection() to the pool. Safe to call with null.
+	 * @param connection the connection to return
+	 */
+	public static void close(Connection connection) {
+		if (connection == null)
+			return;
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the connection pool, for reading its active/idle/waiting counts and acquire statistics
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * @return the limiter in front of the pool, or null if it is not enabled
+	 */
+	public static DbLimiter getLimiter() {
+		return limiter;
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file in resources, then re-applies the schema migrations (indexes) on the
+	 * fresh tables. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+			Connection connection = pool.getConnection();
+			try {
+				RunScript.execute(connection, sqlReader);
+				SchemaMigrator.reapplyAll(connection);
+			} finally {
+				connection.close();
+			}
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 		}
 	}
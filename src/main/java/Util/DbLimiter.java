@@ -0,0 +1,110 @@
+package Util;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds how many threads may work with the database at once, and how many may wait for their turn.
+ *
+ * With a platform thread pool the number of threads already bounds how many callers can queue on the connection pool.
+ * With virtual threads every request has its own thread, so a burst could park thousands of them on the pool, each
+ * holding on to its request until the acquire timeout. The limiter turns callers away as soon as maxWaiting are already
+ * queued, and makes the rest wait at most timeoutMillis.
+ *
+ * UnitOfWork acquires a permit when the outermost unit of work begins and releases it when it closes, so a nested
+ * unit of work never waits on a permit its own thread holds.
+ */
+public class DbLimiter {
+
+    private final int maxConcurrent;
+    private final int maxWaiting;
+    private final long timeoutMillis;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * @param maxConcurrent The number of threads that may use the database at once.
+     * @param maxWaiting The number of threads that may wait for a permit before more are turned away.
+     * @param timeoutMillis How long a thread waits for a permit.
+     */
+    public DbLimiter(int maxConcurrent, int maxWaiting, long timeoutMillis){
+        if(maxConcurrent < 1 || maxWaiting < 0)
+            throw new IllegalArgumentException("Invalid limits: maxConcurrent=" + maxConcurrent + ", maxWaiting=" + maxWaiting);
+
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaiting = maxWaiting;
+        this.timeoutMillis = timeoutMillis;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Takes a permit, waiting for one if none is free.
+     * @throws SQLException If too many threads are already waiting, or no permit became free within the timeout.
+     */
+    public void acquire() throws SQLException{
+        if(permits.tryAcquire())
+            return;
+
+        if(waiting.incrementAndGet() > maxWaiting){
+            waiting.decrementAndGet();
+            rejected.increment();
+            throw new SQLTransientConnectionException("Database busy: " + maxWaiting + " callers already waiting");
+        }
+        try{
+            if(!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)){
+                timeouts.increment();
+                throw new SQLTransientConnectionException("Database busy: no permit within " + timeoutMillis + "ms");
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for the database", e);
+        }finally{
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a permit taken by acquire().
+     */
+    public void release(){
+        permits.release();
+    }
+
+    public int getMaxConcurrent(){
+        return maxConcurrent;
+    }
+
+    /**
+     * @return The number of permits currently held.
+     */
+    public int getActiveCount(){
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return The number of threads currently waiting for a permit.
+     */
+    public int getWaitingCount(){
+        return waiting.get();
+    }
+
+    /**
+     * @return The number of callers turned away because too many were already waiting.
+     */
+    public long getRejectedCount(){
+        return rejected.sum();
+    }
+
+    /**
+     * @return The number of callers that gave up after waiting timeoutMillis.
+     */
+    public long getTimeoutCount(){
+        return timeouts.sum();
+    }
+}
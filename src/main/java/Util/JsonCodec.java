@@ -0,0 +1,159 @@
+package Util;
+
+import Model.Account;
+import Model.Message;
+import Model.MessagePage;
+import Model.MessageResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The one JSON serialization component of the app. It owns a single, fully configured ObjectMapper, so Jackson's
+ * serializer and deserializer caches are built once and shared by every request, and it keeps ready-made readers and
+ * writers for the types the handlers send and receive. ObjectMapper, ObjectReader and ObjectWriter are all thread-safe
+ * once configured.
+ *
+ * It is also registered as Javalin's JsonMapper, so ctx.json() and ctx.bodyAsClass() go through the same mapper. As
+ * with Javalin's default mapper, a String is taken to be JSON already and passed through unchanged.
+ *
+ * Setting -Djson.blackbird=true registers Jackson's Blackbird module, which replaces reflective property access with
+ * generated lambdas.
+ */
+public class JsonCodec implements JsonMapper {
+
+    private final ObjectMapper mapper;
+
+    private final ObjectReader accountReader;
+    private final ObjectReader messageReader;
+    private final ObjectReader messageListReader;
+    private final ObjectWriter accountWriter;
+    private final ObjectWriter messageWriter;
+    private final ObjectWriter messageListWriter;
+    private final ObjectWriter messagePageWriter;
+    private final ObjectWriter messageResultListWriter;
+
+    public JsonCodec(){
+        this(Boolean.getBoolean("json.blackbird"));
+    }
+
+    public JsonCodec(boolean blackbird){
+        this.mapper = new ObjectMapper();
+        //Bodies are written to the response stream, which Javalin closes once the handler is done
+        this.mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if(blackbird)
+            this.mapper.registerModule(new BlackbirdModule());
+
+        this.accountReader = mapper.readerFor(Account.class);
+        this.messageReader = mapper.readerFor(Message.class);
+        this.messageListReader = mapper.readerFor(new TypeReference<List<Message>>(){});
+        this.accountWriter = mapper.writerFor(Account.class);
+        this.messageWriter = mapper.writerFor(Message.class);
+        this.messageListWriter = mapper.writerFor(new TypeReference<List<Message>>(){});
+        this.messagePageWriter = mapper.writerFor(MessagePage.class);
+        this.messageResultListWriter = mapper.writerFor(new TypeReference<List<MessageResult>>(){});
+    }
+
+    public ObjectMapper getMapper(){
+        return mapper;
+    }
+
+    /**
+     * @return The factory for writing JSON token by token, sharing the mapper's buffers.
+     */
+    public JsonFactory getFactory(){
+        return mapper.getFactory();
+    }
+
+    public ObjectReader getAccountReader(){
+        return accountReader;
+    }
+
+    public ObjectReader getMessageReader(){
+        return messageReader;
+    }
+
+    public ObjectReader getMessageListReader(){
+        return messageListReader;
+    }
+
+    public ObjectWriter getAccountWriter(){
+        return accountWriter;
+    }
+
+    public ObjectWriter getMessageWriter(){
+        return messageWriter;
+    }
+
+    public ObjectWriter getMessageListWriter(){
+        return messageListWriter;
+    }
+
+    public ObjectWriter getMessagePageWriter(){
+        return messagePageWriter;
+    }
+
+    public ObjectWriter getMessageResultListWriter(){
+        return messageResultListWriter;
+    }
+
+    @Override
+    public String toJsonString(Object obj, Type type){
+        if(obj instanceof String)
+            return (String) obj;
+
+        try{
+            return mapper.writerFor(mapper.constructType(type)).writeValueAsString(obj);
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type){
+        if(obj instanceof String)
+            return new ByteArrayInputStream(((String) obj).getBytes(StandardCharsets.UTF_8));
+
+        try{
+            return new ByteArrayInputStream(mapper.writerFor(mapper.constructType(type)).writeValueAsBytes(obj));
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType){
+        try{
+            return mapper.readValue(json, mapper.constructType(targetType));
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType){
+        try{
+            return mapper.readValue(json, mapper.constructType(targetType));
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+}
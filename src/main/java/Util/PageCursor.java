@@ -0,0 +1,104 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * A position in a keyset-paginated list of messages. A page starts strictly after the cursor's position, so a page
+ * costs one index range scan no matter how deep into the list it is.
+ *
+ * Messages are ordered either by message_id, or by time_posted_epoch with message_id breaking ties. Clients see
+ * cursors only in their opaque, URL-safe encoded form.
+ */
+public class PageCursor {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final boolean byTime;
+    private final long time_posted_epoch;
+    private final int message_id;
+
+    private PageCursor(boolean byTime, long time_posted_epoch, int message_id){
+        this.byTime = byTime;
+        this.time_posted_epoch = time_posted_epoch;
+        this.message_id = message_id;
+    }
+
+    /**
+     * @param byTime true to order by time_posted_epoch, false to order by message_id.
+     * @return A cursor positioned before the first message.
+     */
+    public static PageCursor first(boolean byTime){
+        return new PageCursor(byTime, Long.MIN_VALUE, 0);
+    }
+
+    /**
+     * @param byTime true to order by time_posted_epoch, false to order by message_id.
+     * @param time_posted_epoch The time of the last message on the previous page.
+     * @param message_id The id of the last message on the previous page.
+     * @return A cursor positioned just after that message.
+     */
+    public static PageCursor after(boolean byTime, long time_posted_epoch, int message_id){
+        return new PageCursor(byTime, time_posted_epoch, message_id);
+    }
+
+    /**
+     * Parses the value of an "after" query parameter. It can either be a cursor previously returned as next_cursor,
+     * or a plain number holding the sort key to start after (a message_id, or a time_posted_epoch when ordering by
+     * time).
+     * @param value The parameter value.
+     * @param byTime true if the list is ordered by time_posted_epoch.
+     * @return The cursor.
+     * @throws IllegalArgumentException If the value is not a valid cursor for this ordering.
+     */
+    public static PageCursor parse(String value, boolean byTime){
+        if(value == null || value.isEmpty())
+            return first(byTime);
+
+        //A plain sort key value
+        if(value.chars().allMatch(Character::isDigit)){
+            if(byTime)
+                return after(true, Long.parseLong(value), Integer.MAX_VALUE);
+            return after(false, Long.MIN_VALUE, Integer.parseInt(value));
+        }
+
+        String decoded = new String(DECODER.decode(value), StandardCharsets.UTF_8);
+        String[] parts = decoded.split(":");
+        if(byTime && parts.length == 3 && parts[0].equals("t"))
+            return after(true, Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+        if(!byTime && parts.length == 2 && parts[0].equals("m"))
+            return after(false, Long.MIN_VALUE, Integer.parseInt(parts[1]));
+
+        throw new IllegalArgumentException("Invalid cursor: " + value);
+    }
+
+    /**
+     * @return The opaque form of this cursor handed to clients as next_cursor.
+     */
+    public String encode(){
+        String raw = byTime ? "t:" + time_posted_epoch + ":" + message_id : "m:" + message_id;
+        return ENCODER.encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isByTime(){
+        return byTime;
+    }
+
+    public long getTime_posted_epoch(){
+        return time_posted_epoch;
+    }
+
+    public int getMessage_id(){
+        return message_id;
+    }
+
+    @Override
+    public String toString() {
+        return "PageCursor{" +
+                "byTime=" + byTime +
+                ", time_posted_epoch=" + time_posted_epoch +
+                ", message_id=" + message_id +
+                '}';
+    }
+}
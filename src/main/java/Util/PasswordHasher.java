@@ -0,0 +1,193 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes and verifies passwords with PBKDF2-HMAC-SHA256.
+ *
+ * A hash is stored as "pbkdf2-sha256$iterations$salt$hash" (base64 salt and hash), so every stored password carries its
+ * own cost and a change to auth.password.iterations only affects passwords hashed afterwards. needsRehash() tells the
+ * caller when a stored password should be replaced: when it was hashed with another cost, or when it is a plaintext
+ * password stored before hashing was introduced.
+ *
+ * Hashing is deliberately slow, so it runs on its own Bulkhead with one thread per CPU (executor.hash.threads and
+ * executor.hash.queue). However many requests log in at once, hashing can only use the CPUs. The calling thread waits
+ * for the result, so callers must not run on threads shared with other requests (the controller runs /login and
+ * /register on their own auth bulkhead); when the hashing bulkhead is full, the caller gets a
+ * RejectedExecutionException straight away.
+ */
+public class PasswordHasher {
+
+    public static final String SCHEME = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+    private final Bulkhead executor;
+    //A hash of a random password, verified against when the username is unknown so it takes as long as a real check
+    private volatile String dummyHash;
+
+    //Hashing statistics
+    private final LongAdder hashCount = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+
+    /**
+     * @param iterations The PBKDF2 iteration count (the work factor) for new hashes.
+     * @param executor The bulkhead hashing runs on.
+     */
+    public PasswordHasher(int iterations, Bulkhead executor){
+        if(iterations < 1)
+            throw new IllegalArgumentException("Invalid iteration count: " + iterations);
+
+        this.iterations = iterations;
+        this.executor = executor;
+    }
+
+    /**
+     * @return A hasher using auth.password.iterations (600000 by default) on a bulkhead sized to the number of CPUs.
+     */
+    public static PasswordHasher fromSystemProperties(){
+        return new PasswordHasher(Integer.getInteger("auth.password.iterations", 600000),
+                Bulkhead.fromSystemProperties("hash", Runtime.getRuntime().availableProcessors(), 64));
+    }
+
+    /**
+     * Hashes a password with a new random salt and the current work factor.
+     * @param password The password.
+     * @return The encoded hash.
+     * @throws RejectedExecutionException If the hashing bulkhead is full.
+     */
+    public String hash(String password){
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = await(executor.call(() -> pbkdf2(password, salt, iterations, HASH_BITS)));
+        return SCHEME + "$" + iterations + "$" + Base64.getEncoder().encodeToString(salt) + "$" + Base64.getEncoder().encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against a stored password, in constant time for the stored form.
+     * @param password The password given.
+     * @param stored The stored hash, or a legacy plaintext password.
+     * @return true if the password matches.
+     * @throws RejectedExecutionException If the hashing bulkhead is full.
+     */
+    public boolean verify(String password, String stored){
+        if(!isHash(stored))
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+
+        String[] parts = stored.split("\\$");
+        if(parts.length != 4)
+            return false;
+        int storedIterations;
+        byte[] salt;
+        byte[] expected;
+        try{
+            storedIterations = Integer.parseInt(parts[1]);
+            salt = Base64.getDecoder().decode(parts[2]);
+            expected = Base64.getDecoder().decode(parts[3]);
+        }
+        catch(IllegalArgumentException e){
+            return false;
+        }
+        byte[] actual = await(executor.call(() -> pbkdf2(password, salt, storedIterations, expected.length * 8)));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * Spends the time of a real verification without a stored password, so a login for an unknown username cannot be
+     * told apart by how long it takes.
+     * @param password The password given.
+     */
+    public void verifyNothing(String password){
+        String hash = dummyHash;
+        if(hash == null){
+            byte[] random = new byte[SALT_BYTES];
+            RANDOM.nextBytes(random);
+            hash = dummyHash = hash(Base64.getEncoder().encodeToString(random));
+        }
+        verify(password, hash);
+    }
+
+    /**
+     * @param stored A stored password.
+     * @return true if the stored password is plaintext, or was hashed with a different work factor than the current one.
+     */
+    public boolean needsRehash(String stored){
+        if(!isHash(stored))
+            return true;
+        int start = SCHEME.length() + 1;
+        int end = stored.indexOf('$', start);
+        return end < 0 || !stored.substring(start, end).equals(String.valueOf(iterations));
+    }
+
+    private static boolean isHash(String stored){
+        return stored.startsWith(SCHEME + "$");
+    }
+
+    private byte[] pbkdf2(String password, byte[] salt, int iterations, int bits) throws GeneralSecurityException{
+        long start = System.nanoTime();
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, bits);
+        try{
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        }
+        finally{
+            spec.clearPassword();
+            hashCount.increment();
+            hashNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Waits for a hash computed on the bulkhead.
+     */
+    private static byte[] await(CompletableFuture<byte[]> future){
+        try{
+            return future.get();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        }
+        catch(ExecutionException e){
+            throw new IllegalStateException("Could not hash a password", e.getCause());
+        }
+    }
+
+    public int getIterations(){
+        return iterations;
+    }
+
+    /**
+     * @return The bulkhead hashing runs on, for reading its statistics.
+     */
+    public Bulkhead getExecutor(){
+        return executor;
+    }
+
+    /**
+     * @return The number of PBKDF2 computations, for hashing and verifying.
+     */
+    public long getHashCount(){
+        return hashCount.sum();
+    }
+
+    /**
+     * @return The total time spent computing PBKDF2, in nanoseconds.
+     */
+    public long getTotalHashNanos(){
+        return hashNanos.sum();
+    }
+}
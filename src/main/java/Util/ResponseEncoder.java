@@ -0,0 +1,242 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Negotiates a Content-Encoding from a request's Accept-Encoding header and compresses response bodies with it.
+ *
+ * Bodies smaller than responses.compression.minBytes (1024 by default) are sent as they are, since compressing them
+ * saves little and costs a full deflate. gzip uses responses.compression.gzipLevel (6 by default). Brotli is not
+ * offered: the JDK has no Brotli encoder, and the one Javalin uses needs a native library.
+ *
+ * Every body sent is recorded per encoding, with its size before and after compression and the CPU time compression
+ * took on the calling thread, so the bytes saved and the CPU spent per response can be read from /metrics. Bodies
+ * reused from a cache are counted separately and cost no CPU.
+ */
+public class ResponseEncoder {
+
+    /**
+     * A content coding the server can send.
+     */
+    public enum Encoding {
+        IDENTITY("identity"),
+        GZIP("gzip");
+
+        private final String token;
+
+        Encoding(String token){
+            this.token = token;
+        }
+
+        /**
+         * @return The name of the coding, as it appears in Accept-Encoding and Content-Encoding.
+         */
+        public String getToken(){
+            return token;
+        }
+    }
+
+    /**
+     * A response body in its final encoding. The bytes must not be modified.
+     */
+    public static final class Encoded {
+        private final byte[] body;
+        private final Encoding encoding;
+        private final int uncompressedLength;
+
+        private Encoded(byte[] body, Encoding encoding, int uncompressedLength){
+            this.body = body;
+            this.encoding = encoding;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+        public byte[] getBody(){
+            return body;
+        }
+
+        public Encoding getEncoding(){
+            return encoding;
+        }
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int minBytes;
+    private final int gzipLevel;
+
+    //Statistics, indexed by Encoding.ordinal()
+    private final LongAdder[] encoded = adders();
+    private final LongAdder[] reused = adders();
+    private final LongAdder[] uncompressedBytes = adders();
+    private final LongAdder[] sentBytes = adders();
+    private final LongAdder[] cpuNanos = adders();
+
+    /**
+     * @param minBytes The smallest body that is compressed.
+     * @param gzipLevel The deflate level for gzip, from 1 (fastest) to 9 (smallest).
+     */
+    public ResponseEncoder(int minBytes, int gzipLevel){
+        if(minBytes < 0 || gzipLevel < 1 || gzipLevel > 9)
+            throw new IllegalArgumentException("Invalid compression settings: minBytes=" + minBytes + ", gzipLevel=" + gzipLevel);
+
+        this.minBytes = minBytes;
+        this.gzipLevel = gzipLevel;
+    }
+
+    /**
+     * @return An encoder configured from responses.compression.minBytes and responses.compression.gzipLevel.
+     */
+    public static ResponseEncoder fromSystemProperties(){
+        return new ResponseEncoder(Integer.getInteger("responses.compression.minBytes", 1024),
+                Integer.getInteger("responses.compression.gzipLevel", 6));
+    }
+
+    /**
+     * Picks the encoding for a response. gzip is used when the client accepts it with a non-zero quality, by name or
+     * through "*".
+     * @param acceptEncoding The Accept-Encoding header, or null.
+     * @return The encoding to use for bodies large enough to compress.
+     */
+    public Encoding negotiate(String acceptEncoding){
+        if(acceptEncoding == null)
+            return Encoding.IDENTITY;
+
+        boolean gzip = false;
+        boolean wildcard = false;
+        boolean gzipRefused = false;
+        for(String coding : acceptEncoding.split(",")){
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = quality(parts) > 0;
+            if(name.equals("gzip") || name.equals("x-gzip")){
+                gzip = accepted;
+                gzipRefused = !accepted;
+            }
+            else if(name.equals("*"))
+                wildcard = accepted;
+        }
+        return gzip || (wildcard && !gzipRefused) ? Encoding.GZIP : Encoding.IDENTITY;
+    }
+
+    private static double quality(String[] parameters){
+        for(int i = 1; i < parameters.length; i++){
+            String parameter = parameters[i].trim();
+            if(parameter.startsWith("q=") || parameter.startsWith("Q=")){
+                try{
+                    return Double.parseDouble(parameter.substring(2));
+                }
+                catch(NumberFormatException e){
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Encodes a body, compressing it if the encoding calls for it and it is large enough.
+     * @param body The body, uncompressed.
+     * @param encoding The negotiated encoding.
+     * @return The body in the encoding it is sent with.
+     */
+    public Encoded encode(byte[] body, Encoding encoding){
+        if(encoding == Encoding.IDENTITY || body.length < minBytes)
+            return record(new Encoded(body, Encoding.IDENTITY, body.length), 0);
+
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try(OutputStream gzip = compress(compressed)){
+            gzip.write(body);
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return record(new Encoded(compressed.toByteArray(), encoding, body.length), THREADS.getCurrentThreadCpuTime() - cpuStart);
+    }
+
+    /**
+     * Wraps a stream so everything written to it is gzip compressed at the configured level. Flushing it flushes the
+     * compressed data written so far, so it can be used for streamed responses. Streamed bodies are not counted in the
+     * statistics, since their size is not known up front.
+     * @param out The stream receiving the compressed data.
+     * @return The compressing stream. Closing it finishes the gzip stream and closes out.
+     * @throws IOException If the gzip header could not be written.
+     */
+    public OutputStream compress(OutputStream out) throws IOException{
+        return new GZIPOutputStream(out, 8192, true){
+            {
+                def.setLevel(gzipLevel);
+            }
+        };
+    }
+
+    /**
+     * Records a body sent again from a cache, without encoding it.
+     * @param body The cached body.
+     */
+    public void reused(Encoded body){
+        reused[body.encoding.ordinal()].increment();
+        uncompressedBytes[body.encoding.ordinal()].add(body.uncompressedLength);
+        sentBytes[body.encoding.ordinal()].add(body.body.length);
+    }
+
+    private Encoded record(Encoded body, long cpu){
+        int encoding = body.encoding.ordinal();
+        encoded[encoding].increment();
+        uncompressedBytes[encoding].add(body.uncompressedLength);
+        sentBytes[encoding].add(body.body.length);
+        cpuNanos[encoding].add(cpu);
+        return body;
+    }
+
+    private static LongAdder[] adders(){
+        LongAdder[] adders = new LongAdder[Encoding.values().length];
+        for(int i = 0; i < adders.length; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    /**
+     * @return The number of bodies encoded with the encoding.
+     */
+    public long getEncodedCount(Encoding encoding){
+        return encoded[encoding.ordinal()].sum();
+    }
+
+    /**
+     * @return The number of bodies with the encoding sent again from a cache.
+     */
+    public long getReusedCount(Encoding encoding){
+        return reused[encoding.ordinal()].sum();
+    }
+
+    /**
+     * @return The total size before compression of the bodies sent with the encoding, including those sent again from a
+     * cache. The bytes saved are this less getSentBytes().
+     */
+    public long getUncompressedBytes(Encoding encoding){
+        return uncompressedBytes[encoding.ordinal()].sum();
+    }
+
+    /**
+     * @return The total size of the bodies sent with the encoding, including those sent again from a cache.
+     */
+    public long getSentBytes(Encoding encoding){
+        return sentBytes[encoding.ordinal()].sum();
+    }
+
+    /**
+     * @return The total CPU time spent compressing bodies with the encoding, in nanoseconds.
+     */
+    public long getCpuNanos(Encoding encoding){
+        return cpuNanos[encoding.ordinal()].sum();
+    }
+}
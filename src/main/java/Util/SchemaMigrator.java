@@ -0,0 +1,133 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.h2.tools.RunScript;
+
+/**
+ * Applies versioned, forward-only schema migrations. Each migration is a SQL script in src/main/resources/db/migration
+ * named V{version}__{description}.sql. Applied versions are recorded in the schema_version table, and a migration is
+ * never run twice or rolled back. To change the schema, add a new migration to the end of MIGRATIONS; never edit one
+ * that has already shipped.
+ *
+ * H2 commits every DDL statement as it runs, so a migration that fails part way cannot be rolled back and is left
+ * partly applied, unrecorded. Every statement in a migration must therefore be safe to run again (create ... if not
+ * exists, drop ... if exists), so that the next start can re-run the whole script.
+ *
+ * This is separate from ConnectionUtil.resetTestDatabase, which drops and recreates the tables for the tests and then
+ * re-applies every migration.
+ */
+public class SchemaMigrator {
+
+    /**
+     * Every migration, in the order it must be applied.
+     */
+    private static final String[] MIGRATIONS = {
+            "V1__create_account_and_message.sql",
+            "V2__message_timeline_index.sql",
+            "V3__message_time_index.sql",
+            "V4__message_newest_index.sql"
+    };
+
+    /**
+     * Applies every migration that has not been applied to the database yet.
+     * @throws IllegalStateException If a migration failed. The application should not start on a half-migrated schema.
+     */
+    public static void migrate(){
+        Connection connection = ConnectionUtil.getConnection();
+        try{
+            migrate(connection);
+        }
+        catch(SQLException | IOException e){
+            throw new IllegalStateException("Schema migration failed", e);
+        }
+        finally{
+            ConnectionUtil.close(connection);
+        }
+    }
+
+    /**
+     * Forgets which migrations have been applied and applies all of them again. Used after the tables have been
+     * dropped and recreated.
+     */
+    static void reapplyAll(Connection connection) throws SQLException, IOException{
+        try(Statement statement = connection.createStatement()){
+            statement.execute("DROP TABLE IF EXISTS schema_version");
+        }
+        migrate(connection);
+    }
+
+    private static void migrate(Connection connection) throws SQLException, IOException{
+        try(Statement statement = connection.createStatement()){
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version int primary key, " +
+                    "description varchar(255), " +
+                    "applied_on timestamp default current_timestamp)");
+        }
+
+        Set<Integer> applied = new HashSet<>();
+        try(Statement statement = connection.createStatement();
+            ResultSet versions = statement.executeQuery("SELECT version FROM schema_version")){
+            while(versions.next())
+                applied.add(versions.getInt(1));
+        }
+
+        for(String migration : MIGRATIONS){
+            int version = versionOf(migration);
+            if(applied.contains(version))
+                continue;
+
+            apply(connection, migration, version);
+            System.out.println("Applied schema migration " + migration);
+        }
+    }
+
+    /**
+     * Runs one migration script and records it. The record is only committed once the whole script has run, but the
+     * script's DDL is committed statement by statement, which is why migrations must be safe to re-run.
+     */
+    private static void apply(Connection connection, String migration, int version) throws SQLException, IOException{
+        InputStream script = SchemaMigrator.class.getResourceAsStream("/db/migration/" + migration);
+        if(script == null)
+            throw new IOException("Missing migration script " + migration);
+
+        connection.setAutoCommit(false);
+        try(Reader reader = new InputStreamReader(script, StandardCharsets.UTF_8)){
+            RunScript.execute(connection, reader);
+
+            try(PreparedStatement preparedStatement = connection.prepareStatement(
+                    "INSERT INTO schema_version (version, description) VALUES (?, ?)")){
+                preparedStatement.setInt(1, version);
+                preparedStatement.setString(2, descriptionOf(migration));
+                preparedStatement.executeUpdate();
+            }
+            connection.commit();
+        }
+        catch(SQLException | IOException e){
+            connection.rollback();
+            throw e;
+        }
+        finally{
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static int versionOf(String migration){
+        return Integer.parseInt(migration.substring(1, migration.indexOf("__")));
+    }
+
+    private static String descriptionOf(String migration){
+        return migration.substring(migration.indexOf("__") + 2, migration.length() - ".sql".length()).replace('_', ' ');
+    }
+}
@@ -0,0 +1,53 @@
+package Util;
+
+import org.eclipse.jetty.server.LowResourceMonitor;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Builds the Jetty server that Javalin runs handlers on.
+ *
+ * By default handlers run on a bounded pool of platform threads, sized like Javalin's own default server (8 to
+ * server.maxThreads threads, 250 unless set). Starting the JVM with -Dserver.virtualThreads=true runs every request
+ * on its own virtual thread instead, so a handler blocked on a JDBC call no longer holds on to a platform thread.
+ * Virtual threads need Java 21; on older runtimes a warning is printed and the platform pool is used.
+ *
+ * Virtual threads remove the thread pool's bound on how many requests reach the database at once, so while they are
+ * in use ConnectionUtil puts a DbLimiter in front of the connection pool.
+ */
+public class ServerThreads {
+
+    private static final boolean VIRTUAL_REQUESTED = Boolean.getBoolean("server.virtualThreads");
+    private static final boolean VIRTUAL = VIRTUAL_REQUESTED && VirtualThreads.areSupported();
+
+    private ServerThreads(){
+    }
+
+    /**
+     * @return A new Jetty server without connectors, which Javalin adds when it is started.
+     */
+    public static Server createServer(){
+        if(VIRTUAL_REQUESTED && !VIRTUAL)
+            System.out.println("Virtual threads need Java 21 or later, running on " + System.getProperty("java.version")
+                    + ". Handling requests on platform threads instead.");
+
+        QueuedThreadPool threadPool = new QueuedThreadPool(Integer.getInteger("server.maxThreads", 250),
+                Integer.getInteger("server.minThreads", 8), 60000);
+        threadPool.setName("JettyServerThreadPool");
+        threadPool.setUseVirtualThreads(VIRTUAL);
+
+        Server server = new Server(threadPool);
+        server.addBean(new LowResourceMonitor(server));
+        server.insertHandler(new StatisticsHandler());
+        return server;
+    }
+
+    /**
+     * @return True if requests are handled on virtual threads.
+     */
+    public static boolean isVirtual(){
+        return VIRTUAL;
+    }
+}
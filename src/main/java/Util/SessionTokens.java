@@ -0,0 +1,266 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies signed session tokens, so a client that has logged in once can prove which account it acts for
+ * without its credentials being checked against the database again.
+ *
+ * A token is "kid.accountId.expiry.signature": the id of the key that signed it, the account id, the expiry in epoch
+ * seconds, and a base64url HMAC-SHA256 of the first three parts. Verifying one is a map lookup, one HMAC and a
+ * constant-time comparison.
+ *
+ * Keys live in a keyring. New tokens are signed with the current key, and any key still in the ring verifies. Keys can
+ * be given with auth.tokens.keys as "kid:base64secret" pairs separated by commas, the first one signing, so that
+ * several instances accept each other's tokens; rotating them is then a matter of putting a new key first and
+ * dropping old ones once their tokens have expired. Without configured keys, a random key is generated and replaced
+ * every auth.tokens.rotationSeconds, and a replaced key keeps verifying until the tokens it signed have expired.
+ * Tokens last auth.tokens.ttlSeconds.
+ */
+public class SessionTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final long ttlSeconds;
+    private final long rotationMillis;
+    private final boolean required;
+
+    //Keys by id, replaced as a whole when the ring changes
+    private volatile Map<String, SigningKey> keys;
+    private volatile SigningKey current;
+
+    //Token statistics
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder valid = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * @param keys Key ids and secrets, the first one signing. If empty, a random key is generated and rotated.
+     * @param ttlSeconds How long a token is valid.
+     * @param rotationSeconds How often a generated key is replaced. Ignored with configured keys.
+     * @param required true if mutating requests must carry a token.
+     */
+    public SessionTokens(Map<String, byte[]> keys, long ttlSeconds, long rotationSeconds, boolean required){
+        if(ttlSeconds < 1 || rotationSeconds < 1)
+            throw new IllegalArgumentException("Invalid token settings: ttlSeconds=" + ttlSeconds + ", rotationSeconds=" + rotationSeconds);
+
+        this.ttlSeconds = ttlSeconds;
+        this.required = required;
+        Map<String, SigningKey> ring = new LinkedHashMap<>();
+        for(Map.Entry<String, byte[]> key : keys.entrySet()){
+            if(key.getKey().isEmpty() || key.getKey().indexOf('.') >= 0)
+                throw new IllegalArgumentException("Invalid key id: " + key.getKey());
+            ring.put(key.getKey(), new SigningKey(key.getKey(), key.getValue(), System.currentTimeMillis()));
+        }
+
+        if(ring.isEmpty()){
+            this.rotationMillis = rotationSeconds * 1000;
+            SigningKey generated = generateKey();
+            ring.put(generated.id, generated);
+            this.current = generated;
+        }
+        else{
+            //Configured keys are rotated by changing the configuration
+            this.rotationMillis = Long.MAX_VALUE;
+            this.current = ring.values().iterator().next();
+        }
+        this.keys = Collections.unmodifiableMap(ring);
+    }
+
+    /**
+     * @return Session tokens configured from the auth.tokens.* system properties.
+     */
+    public static SessionTokens fromSystemProperties(){
+        Map<String, byte[]> keys = new LinkedHashMap<>();
+        String configured = System.getProperty("auth.tokens.keys", "");
+        for(String pair : configured.split(",")){
+            if(pair.isBlank())
+                continue;
+            int colon = pair.indexOf(':');
+            if(colon < 0)
+                throw new IllegalArgumentException("auth.tokens.keys entries must be kid:base64secret");
+            keys.put(pair.substring(0, colon).trim(), Base64.getDecoder().decode(pair.substring(colon + 1).trim()));
+        }
+
+        return new SessionTokens(keys,
+                Long.getLong("auth.tokens.ttlSeconds", 3600),
+                Long.getLong("auth.tokens.rotationSeconds", 3600),
+                Boolean.getBoolean("auth.tokens.required"));
+    }
+
+    /**
+     * Issues a token for an account, rotating the signing key first if it is due.
+     * @param accountId The account the token is for.
+     * @return The token.
+     */
+    public String issue(int accountId){
+        SigningKey key = current;
+        if(System.currentTimeMillis() - key.createdMillis >= rotationMillis)
+            key = rotateIfDue();
+
+        String payload = key.id + "." + accountId + "." + (System.currentTimeMillis() / 1000 + ttlSeconds);
+        issued.increment();
+        return payload + "." + ENCODER.encodeToString(key.sign(payload));
+    }
+
+    /**
+     * Checks a token's signature and expiry. The signature is compared in constant time.
+     * @param token The token.
+     * @return The account id the token was issued to, or -1 if it is malformed, forged, signed by an unknown key or
+     * expired.
+     */
+    public int verify(String token){
+        int signatureStart = token.lastIndexOf('.');
+        int kidEnd = token.indexOf('.');
+        int accountEnd = kidEnd < 0 ? -1 : token.indexOf('.', kidEnd + 1);
+        if(kidEnd <= 0 || accountEnd < 0 || signatureStart <= accountEnd){
+            invalid.increment();
+            return -1;
+        }
+
+        SigningKey key = keys.get(token.substring(0, kidEnd));
+        int accountId;
+        long expiry;
+        try{
+            accountId = Integer.parseInt(token, kidEnd + 1, accountEnd, 10);
+            expiry = Long.parseLong(token, accountEnd + 1, signatureStart, 10);
+        }
+        catch(NumberFormatException e){
+            invalid.increment();
+            return -1;
+        }
+        //Compared in its encoded form, so a signature spelled with different unused base64 bits is not accepted
+        if(key == null || !MessageDigest.isEqual(
+                ENCODER.encode(key.sign(token.substring(0, signatureStart))),
+                token.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII))){
+            invalid.increment();
+            return -1;
+        }
+        if(expiry <= System.currentTimeMillis() / 1000){
+            expired.increment();
+            return -1;
+        }
+
+        valid.increment();
+        return accountId;
+    }
+
+    /**
+     * Rotates the signing key unless another thread already has since it became due.
+     */
+    private synchronized SigningKey rotateIfDue(){
+        if(System.currentTimeMillis() - current.createdMillis < rotationMillis)
+            return current;
+        return rotate();
+    }
+
+    /**
+     * Replaces the signing key with a new random one and drops keys whose tokens have all expired.
+     * @return The new signing key.
+     */
+    public synchronized SigningKey rotate(){
+        long now = System.currentTimeMillis();
+        SigningKey generated = generateKey();
+        Map<String, SigningKey> ring = new LinkedHashMap<>();
+        ring.put(generated.id, generated);
+        for(SigningKey key : keys.values()){
+            //A key signed its last token when it was replaced, and that token expires ttlSeconds later
+            if(key.retiredMillis == Long.MAX_VALUE)
+                key.retiredMillis = now;
+            if(now - key.retiredMillis < ttlSeconds * 1000)
+                ring.put(key.id, key);
+        }
+        this.keys = Collections.unmodifiableMap(ring);
+        this.current = generated;
+        return generated;
+    }
+
+    private static SigningKey generateKey(){
+        byte[] secret = new byte[32];
+        RANDOM.nextBytes(secret);
+        byte[] id = new byte[6];
+        RANDOM.nextBytes(id);
+        return new SigningKey(ENCODER.encodeToString(id), secret, System.currentTimeMillis());
+    }
+
+    /**
+     * @return true if mutating requests must carry a token. Otherwise a token is only checked when one is sent.
+     */
+    public boolean isRequired(){
+        return required;
+    }
+
+    /**
+     * @return The number of keys that currently verify tokens.
+     */
+    public int getKeyCount(){
+        return keys.size();
+    }
+
+    public long getIssuedCount(){
+        return issued.sum();
+    }
+
+    public long getValidCount(){
+        return valid.sum();
+    }
+
+    /**
+     * @return The number of tokens rejected as malformed, forged or signed by an unknown key.
+     */
+    public long getInvalidCount(){
+        return invalid.sum();
+    }
+
+    public long getExpiredCount(){
+        return expired.sum();
+    }
+
+    /**
+     * One key of the keyring. Macs are not thread-safe, so each thread keeps its own.
+     */
+    public static final class SigningKey {
+        private final String id;
+        private final long createdMillis;
+        private volatile long retiredMillis = Long.MAX_VALUE;
+        private final ThreadLocal<Mac> mac;
+
+        private SigningKey(String id, byte[] secret, long createdMillis){
+            this.id = id;
+            this.createdMillis = createdMillis;
+            SecretKeySpec spec = new SecretKeySpec(secret, ALGORITHM);
+            this.mac = ThreadLocal.withInitial(() -> {
+                try{
+                    Mac instance = Mac.getInstance(ALGORITHM);
+                    instance.init(spec);
+                    return instance;
+                }
+                catch(GeneralSecurityException e){
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        private byte[] sign(String payload){
+            return mac.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        public String getId(){
+            return id;
+        }
+    }
+}
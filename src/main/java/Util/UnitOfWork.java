@@ -0,0 +1,137 @@
+package Util;
+
+import Metrics.DbMetrics;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * A unit of work borrows one pooled connection for the duration of a service or DAO call and hands out cached
+ * prepared statements on it.
+ *
+ * Units of work nest per thread: if begin() is called while one is already open on the current thread, the open one
+ * is reused, so a service method that begins a unit of work runs every DAO call it makes on the same connection. The
+ * connection goes back to the pool when the outermost unit of work is closed.
+ *
+ * Statements returned by prepare() belong to the connection's statement cache and must not be closed. Result sets
+ * obtained from them should be closed (try-with-resources) before the same SQL is prepared again.
+ *
+ * A unit of work begun with an operation name (begin("MessageDAO.getAllMessages")) is timed from begin() to close()
+ * and recorded in DbMetrics, whether or not it is nested in another one.
+ *
+ * If ConnectionUtil has a DbLimiter, the outermost unit of work holds one of its permits from begin() to close().
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private final ConnectionPool.PooledConnection pooled;
+    private int depth = 1;
+
+    //The operation name and start time of each nesting level, for DbMetrics
+    private String[] operations = new String[4];
+    private long[] startNanos = new long[4];
+
+    private UnitOfWork(ConnectionPool.PooledConnection pooled){
+        this.pooled = pooled;
+    }
+
+    /**
+     * Joins the unit of work open on this thread, or borrows a connection and starts a new one.
+     * @return The unit of work, which must be closed.
+     * @throws SQLException If no connection could be borrowed from the pool.
+     */
+    public static UnitOfWork begin() throws SQLException{
+        return begin(null);
+    }
+
+    /**
+     * Joins the unit of work open on this thread, or borrows a connection and starts a new one, timing it as the
+     * given operation.
+     * @param operation The name its time is recorded under in DbMetrics, or null to not record it.
+     * @return The unit of work, which must be closed.
+     * @throws SQLException If no connection could be borrowed from the pool, or the DbLimiter turned the caller away.
+     */
+    public static UnitOfWork begin(String operation) throws SQLException{
+        long start = System.nanoTime();
+        UnitOfWork current = CURRENT.get();
+        if(current != null){
+            current.depth++;
+            current.enter(operation, start);
+            return current;
+        }
+
+        DbLimiter limiter = ConnectionUtil.getLimiter();
+        if(limiter != null)
+            limiter.acquire();
+        UnitOfWork unitOfWork;
+        try{
+            unitOfWork = new UnitOfWork(ConnectionUtil.getPool().borrow());
+        }catch(SQLException | RuntimeException e){
+            if(limiter != null)
+                limiter.release();
+            throw e;
+        }
+        CURRENT.set(unitOfWork);
+        unitOfWork.enter(operation, start);
+        return unitOfWork;
+    }
+
+    private void enter(String operation, long start){
+        int level = depth - 1;
+        if(level == operations.length){
+            operations = Arrays.copyOf(operations, level * 2);
+            startNanos = Arrays.copyOf(startNanos, level * 2);
+        }
+        operations[level] = operation;
+        startNanos[level] = start;
+    }
+
+    /**
+     * @param sql The SQL to prepare.
+     * @return A cached prepared statement for the SQL with its parameters cleared.
+     * @throws SQLException If the statement could not be prepared.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException{
+        return pooled.prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * @param sql The INSERT to prepare.
+     * @return A cached prepared statement for the SQL that returns generated keys.
+     * @throws SQLException If the statement could not be prepared.
+     */
+    public PreparedStatement prepareInsert(String sql) throws SQLException{
+        return pooled.prepare(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    /**
+     * @return The connection backing this unit of work. It must not be closed directly.
+     */
+    public Connection getConnection(){
+        return pooled.getConnection();
+    }
+
+    /**
+     * Leaves the unit of work, returning the connection to the pool if this was the outermost one.
+     */
+    @Override
+    public void close(){
+        int level = depth - 1;
+        if(operations[level] != null){
+            DbMetrics.record(operations[level], System.nanoTime() - startNanos[level]);
+            operations[level] = null;
+        }
+
+        if(--depth > 0)
+            return;
+
+        CURRENT.remove();
+        ConnectionUtil.close(pooled.getConnection());
+        DbLimiter limiter = ConnectionUtil.getLimiter();
+        if(limiter != null)
+            limiter.release();
+    }
+}
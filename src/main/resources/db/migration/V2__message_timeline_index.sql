@@ -0,0 +1,2 @@
+-- Serves a user's timeline (GET /accounts/{account_id}/messages) as an ordered range scan.
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch, message_id);
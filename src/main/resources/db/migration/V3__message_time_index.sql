@@ -0,0 +1,2 @@
+-- Serves the global feed ordered by time (GET /messages?order_by=time_posted_epoch) as an ordered range scan.
+create index if not exists message_time_idx on message (time_posted_epoch, message_id);
@@ -0,0 +1,2 @@
+-- Serves the newest messages (GET /messages?latest=N, and priming the recent-messages ring) as an ordered index read.
+create index if not exists message_newest_idx on message (message_id desc);
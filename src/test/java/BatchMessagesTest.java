@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BatchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a valid message, a blank message and a
+     * message from an unknown account, then GET localhost:8080/messages?ids=1,2,99
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: results 200, 400 and 400 for the batch, then 200, 200 and 404 for the ids
+     */
+    @Test
+    public void createAndGetMessagesBatch() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1,\"message_text\":\"batch message\",\"time_posted_epoch\":1669947793}," +
+                        "{\"posted_by\":1,\"message_text\":\" \",\"time_posted_epoch\":1669947793}," +
+                        "{\"posted_by\":5050,\"message_text\":\"unknown account\",\"time_posted_epoch\":1669947793}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> postResponse = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, postResponse.statusCode());
+        List<MessageResult> created = objectMapper.readValue(postResponse.body(), new TypeReference<List<MessageResult>>(){});
+        Assert.assertEquals(3, created.size());
+        Assert.assertEquals(200, created.get(0).getStatus());
+        Assert.assertEquals(new Message(2, 1, "batch message", 1669947793), created.get(0).getMessage());
+        Assert.assertEquals(400, created.get(1).getStatus());
+        Assert.assertEquals(400, created.get(2).getStatus());
+        Assert.assertNotNull(created.get(2).getError());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?ids=1,2,99"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, getResponse.statusCode());
+        List<MessageResult> found = objectMapper.readValue(getResponse.body(), new TypeReference<List<MessageResult>>(){});
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), found.get(0).getMessage());
+        Assert.assertEquals(new Message(2, 1, "batch message", 1669947793), found.get(1).getMessage());
+        Assert.assertEquals(404, found.get(2).getStatus());
+        Assert.assertNull(found.get(2).getMessage());
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages?ids=1,42 then GET localhost:8080/messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: results 200 with the deleted message and 404, then an empty list
+     */
+    @Test
+    public void deleteMessagesBatch() throws IOException, InterruptedException {
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?ids=1,42"))
+                .DELETE()
+                .build();
+        HttpResponse<String> deleteResponse = webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, deleteResponse.statusCode());
+        List<MessageResult> deleted = objectMapper.readValue(deleteResponse.body(), new TypeReference<List<MessageResult>>(){});
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), deleted.get(0).getMessage());
+        Assert.assertEquals(404, deleted.get(1).getStatus());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(getResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertTrue(messages.isEmpty());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=1,abc
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesBatchInvalidIds() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?ids=1,abc"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.Bulkhead;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BulkheadTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    List<Connection> heldConnections = new ArrayList<>();
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with a bulk bulkhead of one thread and no queue,
+     * and create a new webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("executor.bulk.threads", "1");
+        System.setProperty("executor.bulk.queue", "0");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        heldConnections.forEach(ConnectionUtil::close);
+        app.stop();
+        System.clearProperty("executor.bulk.threads");
+        System.clearProperty("executor.bulk.queue");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages while every pooled connection is held, so its handler
+     * blocks on the only bulk thread, then a second GET localhost:8080/messages
+     *
+     * Expected Response:
+     *  Status Code: 503 for the second request, straight away
+     *  Status Code: 200 for the first request, once the connections are released
+     */
+    @Test
+    public void fullBulkheadRejectsWithServiceUnavailable() throws IOException, InterruptedException, ExecutionException {
+        for(int i = 0; i < ConnectionUtil.getPool().getMaxSize(); i++)
+            heldConnections.add(ConnectionUtil.getConnection());
+
+        HttpRequest getAllMessages = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        CompletableFuture<HttpResponse<String>> blocked = webClient.sendAsync(getAllMessages, HttpResponse.BodyHandlers.ofString());
+        Thread.sleep(500);
+
+        HttpResponse<String> rejected = webClient.send(getAllMessages, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(503, rejected.statusCode());
+        Assert.assertFalse(blocked.isDone());
+
+        heldConnections.forEach(ConnectionUtil::close);
+        heldConnections.clear();
+        Assert.assertEquals(200, blocked.get().statusCode());
+    }
+
+    /**
+     * Running tasks on an inline bulkhead of one permit and no queue, as used with virtual threads, while another
+     * thread holds the permit
+     *
+     * Expected Result:
+     *  A task runs on the calling thread, and a second task is rejected straight away while the permit is held
+     */
+    @Test
+    public void inlineBulkheadRunsOnCallerAndRejectsWhenFull() throws InterruptedException, ExecutionException {
+        Bulkhead inline = new Bulkhead("inline", 1, 0, true);
+        Assert.assertEquals(Thread.currentThread(), inline.call(Thread::currentThread).get());
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> inline.submit(() -> {
+            started.countDown();
+            release.await();
+        }));
+        holder.start();
+        started.await();
+
+        Assert.assertThrows(RejectedExecutionException.class, () -> inline.submit(() -> {}));
+        Assert.assertEquals(1, inline.getActiveCount());
+        Assert.assertEquals(1, inline.getRejectedCount());
+
+        release.countDown();
+        holder.join();
+        Assert.assertEquals(2, inline.getCompletedCount());
+    }
+}
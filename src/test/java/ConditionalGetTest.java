@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages, again with If-None-Match set to its ETag, then once more
+     * after a POST localhost:8080/messages
+     *
+     * Expected Response:
+     *  Status Code: 304 with no body for the second request
+     *  Status Code: 200 with a new ETag and the new message for the third request
+     */
+    @Test
+    public void getAllMessagesNotModifiedUntilChanged() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(etag);
+
+        HttpResponse<String> second = get("/messages", etag);
+        Assert.assertEquals(304, second.statusCode());
+        Assert.assertEquals("", second.body());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"new message\",\"time_posted_epoch\":1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> third = get("/messages", etag);
+        Assert.assertEquals(200, third.statusCode());
+        Assert.assertNotEquals(etag, third.headers().firstValue("ETag").orElse(null));
+        List<Message> messages = objectMapper.readValue(third.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages, then again with If-None-Match set to its ETag
+     * after a PATCH localhost:8080/messages/1, and GET localhost:8080/messages?latest=1 with the same ETag
+     *
+     * Expected Response:
+     *  Status Code: 200 with the updated message for the second request
+     *  Status Code: 200 for the third request, whose query gives it a different ETag
+     */
+    @Test
+    public void getAccountMessagesModifiedByUpdate() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/accounts/1/messages", null);
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        Assert.assertEquals(304, get("/accounts/1/messages", etag).statusCode());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> second = get("/accounts/1/messages", etag);
+        Assert.assertEquals(200, second.statusCode());
+        List<Message> messages = objectMapper.readValue(second.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals("updated message", messages.get(0).getMessage_text());
+
+        String allEtag = get("/messages", null).headers().firstValue("ETag").orElse(null);
+        Assert.assertEquals(200, get("/messages?latest=1", allEtag).statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if(ifNoneMatch != null)
+            request.header("If-None-Match", ifNoneMatch);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.H2MessageDAO;
+import Model.Message;
+import Service.GroupCommitWriter;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessageGroupCommitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with group commit switched on, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("messages.groupCommit.enabled", "true");
+        System.setProperty("messages.groupCommit.lingerMicros", "2000");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("messages.groupCommit.enabled");
+        System.clearProperty("messages.groupCommit.lingerMicros");
+    }
+
+    /**
+     * Sending concurrent http requests to POST localhost:8080/messages, one of them for a user that doesn't exist
+     *
+     * Expected Response:
+     *  Status Code: 200 for every valid message, each with its own message_id; 400 for the invalid one
+     */
+    @Test
+    public void createMessagesConcurrently() throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for(int i = 0; i < 20; i++)
+            responses.add(webClient.sendAsync(postMessage(1, "group commit " + i), HttpResponse.BodyHandlers.ofString()));
+        HttpResponse<String> invalid = webClient.send(postMessage(3, "no such user"), HttpResponse.BodyHandlers.ofString());
+
+        Set<Integer> messageIds = new HashSet<>();
+        for(CompletableFuture<HttpResponse<String>> response : responses){
+            HttpResponse<String> created = response.join();
+            Assert.assertEquals(200, created.statusCode());
+            Message message = objectMapper.readValue(created.body(), Message.class);
+            Assert.assertTrue(message.getMessage_text().startsWith("group commit "));
+            messageIds.add(message.getMessage_id());
+        }
+        Assert.assertEquals(20, messageIds.size());
+        Assert.assertFalse(messageIds.contains(1));
+
+        Assert.assertEquals(400, invalid.statusCode());
+        Assert.assertEquals("", invalid.body());
+    }
+
+    /**
+     * Inserting through a group commit writer that has been shut down
+     *
+     * Expected Result:
+     *  The message is written directly and returned with its message_id, instead of waiting on the stopped flusher
+     */
+    @Test(timeout = 10000)
+    public void insertAfterShutdown() {
+        GroupCommitWriter writer = new GroupCommitWriter(new H2MessageDAO(), 4, 1000);
+        writer.shutdown();
+        Message created = writer.insert(new Message(1, "after shutdown", 1669947792));
+        Assert.assertEquals(new Message(2, 1, "after shutdown", 1669947792), created);
+    }
+
+    private HttpRequest postMessage(int postedBy, String text){
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+}
@@ -0,0 +1,43 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Cache.LruCache;
+
+public class LruCacheTest {
+
+    /**
+     * Loading 8 keys that all hash to the same stripe into a cache of 8 entries
+     *
+     * Expected Result:
+     *  Every key stays cached, since a cache that small is not split into one-entry stripes
+     */
+    @Test
+    public void smallCacheKeepsKeysOfOneStripe() {
+        LruCache<Integer, Integer> cache = new LruCache<>(8, 0, false);
+        for(int i = 0; i < 8; i++)
+            cache.get(i * 16, key -> key);
+
+        Assert.assertEquals(8, cache.size());
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
+    /**
+     * Loading 100 keys into a cache of 100 entries, which does not divide evenly over its stripes
+     *
+     * Expected Result:
+     *  Every key stays cached, and one more key evicts an entry
+     */
+    @Test
+    public void sizeThatIsNotAMultipleOfTheStripesIsKept() {
+        LruCache<Integer, Integer> cache = new LruCache<>(100, 0, false);
+        for(int i = 0; i < 100; i++)
+            cache.get(i, key -> key);
+
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(0, cache.getEvictionCount());
+
+        cache.get(100, key -> key);
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+}
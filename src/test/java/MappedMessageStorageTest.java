@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MappedMessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MappedMessageStorageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path storage;
+
+    /**
+     * Before every test, reset the database, point messages.storage at a new empty mmap store, restart the Javalin
+     * app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        storage = Files.createTempDirectory("messages");
+        System.setProperty("messages.storage", "mmap");
+        System.setProperty("messages.storage.dir", storage.toString());
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        start();
+    }
+
+    /**
+     * After every test, stop the app and delete the store's files.
+     */
+    @After
+    public void tearDown() throws IOException {
+        app.stop();
+        System.clearProperty("messages.storage");
+        System.clearProperty("messages.storage.dir");
+        try(Stream<Path> files = Files.walk(storage)){
+            for(Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(file);
+        }
+    }
+
+    private void start() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/messages twice, PATCH localhost:8080/messages/1 and
+     * DELETE localhost:8080/messages/2, restarting the app on the same store, then GET localhost:8080/messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the updated first message, read back from the files after the restart
+     */
+    @Test
+    public void messagesKeptAcrossRestart() throws IOException, InterruptedException {
+        Message first = objectMapper.readValue(send("POST", "/messages",
+                "{\"posted_by\":1,\"message_text\":\"stored in a file\",\"time_posted_epoch\":1669947793}"), Message.class);
+        Message second = objectMapper.readValue(send("POST", "/messages",
+                "{\"posted_by\":1,\"message_text\":\"deleted soon\",\"time_posted_epoch\":1669947794}"), Message.class);
+        Assert.assertEquals(new Message(1, 1, "stored in a file", 1669947793), first);
+        Assert.assertEquals(2, second.getMessage_id());
+        send("PATCH", "/messages/1", "{\"message_text\":\"updated in a file\"}");
+        send("DELETE", "/messages/2", null);
+
+        app.stop();
+        start();
+
+        List<Message> messages = objectMapper.readValue(send("GET", "/messages", null), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "updated in a file", 1669947793)), messages);
+        List<Message> accountMessages = objectMapper.readValue(send("GET", "/accounts/1/messages", null), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(messages, accountMessages);
+        Message third = objectMapper.readValue(send("POST", "/messages",
+                "{\"posted_by\":1,\"message_text\":\"after restart\",\"time_posted_epoch\":1669947795}"), Message.class);
+        Assert.assertEquals(3, third.getMessage_id());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 on an empty store
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: empty, since the seeded H2 message is not in the store
+     */
+    @Test
+    public void emptyStore() throws IOException, InterruptedException {
+        Assert.assertEquals("", send("GET", "/messages/1", null));
+    }
+
+    /**
+     * Creating 1500 messages in a store with 128 KiB heaps, updating the first 700 and deleting the next 300, then
+     * compacting, and reopening the store
+     *
+     * Expected Result:
+     *  The heaps left mostly dead are deleted, and every message reads back with its current text, before and after
+     *  the store is reopened
+     */
+    @Test
+    public void compactionKeepsLiveMessages() {
+        Path directory = storage.resolve("compacted");
+        String padding = "x".repeat(190);
+        List<Message> expected = new ArrayList<>();
+
+        MappedMessageDAO store = new MappedMessageDAO(directory, 1024, 1 << 17, 0.5, 0, false);
+        List<Message> newMessages = new ArrayList<>();
+        for(int i = 1; i <= 1500; i++)
+            newMessages.add(new Message(1 + i % 3, "message " + i + " " + padding, 1669947792 + i));
+        Assert.assertEquals(1500, store.createNewMessages(newMessages).size());
+        Assert.assertTrue("heaps: " + store.getHeapCount(), store.getHeapCount() >= 3);
+
+        for(int id = 1; id <= 1500; id++){
+            Message message = store.getMessageByMessageId(id);
+            if(id <= 700){
+                Assert.assertNotNull(store.updateMessage(id, "updated " + id + " " + padding));
+                message.setMessage_text("updated " + id + " " + padding);
+                expected.add(message);
+            }
+            else if(id <= 1000)
+                Assert.assertNotNull(store.deleteMessage(id));
+            else
+                expected.add(message);
+        }
+
+        //Moved texts go to the active heap, which may need a new heap of its own
+        int heapsBefore = store.getHeapCount();
+        int reclaimed = store.compact();
+        int heapsAfter = store.getHeapCount();
+        Assert.assertTrue("reclaimed: " + reclaimed, reclaimed >= 1);
+        Assert.assertEquals(reclaimed, store.getReclaimedHeapCount());
+        Assert.assertTrue("heaps: " + heapsBefore + " -> " + heapsAfter, heapsAfter < heapsBefore);
+        assertStoreHolds(store, expected);
+        store.close();
+
+        MappedMessageDAO reopened = new MappedMessageDAO(directory, 1024, 1 << 17, 0.5, 0, false);
+        try{
+            Assert.assertEquals(heapsAfter, reopened.getHeapCount());
+            assertStoreHolds(reopened, expected);
+        }
+        finally{
+            reopened.close();
+        }
+    }
+
+    private void assertStoreHolds(MappedMessageDAO store, List<Message> expected){
+        Assert.assertEquals(expected.size(), store.getMessageCount());
+        Assert.assertEquals(expected, store.getAllMessages());
+        for(Message message : expected)
+            Assert.assertEquals(message, store.getMessageByMessageId(message.getMessage_id()));
+        Assert.assertNull(store.getMessageByMessageId(701));
+        Assert.assertNull(store.getMessageByMessageId(1000));
+    }
+
+    private String send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return response.body();
+    }
+}
@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/1 and GET localhost:8080/messages/100, then
+     * GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text counting both requests under one route template, with their latency and the
+     *  time spent in the DAO and in message cache loads
+     */
+    @Test
+    public void metricsCountRequestsByRouteTemplate() throws IOException, InterruptedException {
+        get("/messages/1");
+        get("/messages/100");
+        //Requests are recorded just after their response is sent
+        Thread.sleep(200);
+
+        HttpResponse<String> response = get("/metrics");
+        String metrics = response.body();
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        Assert.assertTrue(metrics, metrics.contains("http_requests_total{method=\"GET\",route=\"/messages/{message_id}\",status=\"200\"} 2\n"));
+        Assert.assertTrue(metrics, metrics.contains("http_request_duration_seconds_count{method=\"GET\",route=\"/messages/{message_id}\"} 2\n"));
+        Assert.assertTrue(metrics, metrics.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"/messages/{message_id}\",le=\"+Inf\"} 2\n"));
+        Assert.assertTrue(metrics, metrics.contains("db_operation_duration_seconds_count{operation=\"MessageDAO.getMessageByMessageId\"}"));
+        Assert.assertTrue(metrics, metrics.contains("# TYPE db_pool_connections gauge\n"));
+        Assert.assertTrue(metrics, metrics.contains("# TYPE message_cache_load_seconds summary\n"));
+        Assert.assertTrue(metrics, metrics.contains("message_cache_load_seconds_count 2\n"));
+        Assert.assertTrue(metrics, metrics.contains("message_cache_load_seconds_sum "));
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
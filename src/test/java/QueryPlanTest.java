@@ -0,0 +1,102 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.H2MessageDAO;
+import Util.ConnectionUtil;
+
+public class QueryPlanTest {
+    Connection connection;
+
+    /**
+     * Before every test, reset the database, which also applies the schema migrations.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        connection = ConnectionUtil.getConnection();
+    }
+
+    @After
+    public void tearDown() {
+        ConnectionUtil.close(connection);
+    }
+
+    /**
+     * Every keyed query run by the DAOs should be answered from an index rather than a table scan.
+     */
+    @Test
+    public void daoQueriesUseAnIndex() throws SQLException {
+        String[] queries = {
+                AccountDAO.SELECT_ACCOUNT_BY_ID,
+                AccountDAO.ACCOUNT_EXISTS,
+                AccountDAO.SELECT_ACCOUNT_BY_USERNAME,
+                AccountDAO.USERNAME_EXISTS,
+                H2MessageDAO.SELECT_MESSAGE_BY_ID,
+                H2MessageDAO.DELETE_MESSAGE_BY_ID,
+                H2MessageDAO.UPDATE_MESSAGE_TEXT,
+                H2MessageDAO.SELECT_MESSAGES_BY_ACCOUNT,
+                H2MessageDAO.SELECT_PAGE_BY_ID,
+                H2MessageDAO.SELECT_PAGE_BY_TIME,
+                H2MessageDAO.SELECT_ACCOUNT_PAGE_BY_ID,
+                H2MessageDAO.SELECT_ACCOUNT_PAGE_BY_TIME,
+                H2MessageDAO.SELECT_NEWEST_MESSAGES,
+                H2MessageDAO.SELECT_MESSAGES_BY_IDS,
+                H2MessageDAO.DELETE_MESSAGES_BY_IDS,
+                H2MessageDAO.DELETE_OWN_MESSAGES_BY_IDS
+        };
+
+        for(String query : queries){
+            String plan = explain(query);
+            Assert.assertFalse("Query scans the whole table:\n" + plan, plan.contains(".tableScan"));
+        }
+    }
+
+    /**
+     * Paging the global feed by time should read the time index in order instead of sorting.
+     */
+    @Test
+    public void timePageIsIndexSorted() throws SQLException {
+        String plan = explain(H2MessageDAO.SELECT_PAGE_BY_TIME);
+        Assert.assertTrue(plan, plan.contains("MESSAGE_TIME_IDX"));
+        Assert.assertTrue(plan, plan.contains("index sorted"));
+    }
+
+    /**
+     * An account's messages should be looked up by posted_by in an index and come back oldest first by message_id, as
+     * the timeline loader expects, whichever index H2 picks.
+     */
+    @Test
+    public void accountMessagesAreIndexedAndOrderedById() throws SQLException {
+        String plan = explain(H2MessageDAO.SELECT_MESSAGES_BY_ACCOUNT);
+        Assert.assertTrue(plan, plan.contains(": POSTED_BY = ?1 */"));
+        Assert.assertTrue(plan, plan.contains("ORDER BY 1"));
+    }
+
+    /**
+     * The newest messages should be read from the descending id index in order instead of sorting the whole table.
+     */
+    @Test
+    public void newestMessagesAreIndexSorted() throws SQLException {
+        String plan = explain(H2MessageDAO.SELECT_NEWEST_MESSAGES);
+        Assert.assertTrue(plan, plan.contains("MESSAGE_NEWEST_IDX"));
+        Assert.assertTrue(plan, plan.contains("index sorted"));
+    }
+
+    private String explain(String query) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement("EXPLAIN " + query);
+        for(int i = 1; i <= preparedStatement.getParameterMetaData().getParameterCount(); i++)
+            preparedStatement.setObject(i, 1);
+
+        ResultSet plan = preparedStatement.executeQuery();
+        plan.next();
+        return plan.getString(1);
+    }
+}
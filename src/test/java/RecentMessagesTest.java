@@ -0,0 +1,75 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Cache.RecentMessages;
+import Model.Message;
+
+public class RecentMessagesTest {
+    RecentMessages recentMessages;
+    Message kept;
+
+    /**
+     * Before every test, create a ring of four messages and prime it with one message.
+     */
+    @Before
+    public void setUp() {
+        recentMessages = new RecentMessages(4);
+        kept = new Message(1, 1, "kept", 1669947792);
+        recentMessages.prime(List.of(kept));
+    }
+
+    /**
+     * Publishing a message's delete to the recent-messages ring before its create, as happens when the creating
+     * request is slow to publish
+     *
+     * Expected Result:
+     *  The late create does not bring the deleted message back
+     */
+    @Test
+    public void lateCreateAfterDeleteStaysDeleted() {
+        Message deleted = new Message(2, 1, "deleted before its create was published", 1669947793);
+
+        recentMessages.messageDeleted(deleted);
+        recentMessages.messageCreated(deleted);
+
+        Assert.assertEquals(List.of(kept), recentMessages.getLatest(4, count -> null));
+    }
+
+    /**
+     * Publishing a message's update to the recent-messages ring before its create
+     *
+     * Expected Result:
+     *  The late create does not bring back the text from before the update
+     */
+    @Test
+    public void lateCreateAfterUpdateKeepsUpdatedText() {
+        Message created = new Message(2, 1, "text before the update", 1669947793);
+        Message updated = new Message(2, 1, "updated before the create was published", 1669947793);
+
+        recentMessages.messageUpdated(updated);
+        recentMessages.messageCreated(created);
+
+        Assert.assertEquals(List.of(updated, kept), recentMessages.getLatest(4, count -> null));
+    }
+
+    /**
+     * Publishing a message's update to the recent-messages ring after it was deleted
+     *
+     * Expected Result:
+     *  The late update does not bring the deleted message back
+     */
+    @Test
+    public void lateUpdateAfterDeleteStaysDeleted() {
+        Message created = new Message(2, 1, "text before the update", 1669947793);
+        Message updated = new Message(2, 1, "updated after the delete was published", 1669947793);
+
+        recentMessages.messageCreated(created);
+        recentMessages.messageDeleted(created);
+        recentMessages.messageUpdated(updated);
+
+        Assert.assertEquals(List.of(kept), recentMessages.getLatest(4, count -> null));
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ResponseCompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and add enough messages for the full list to be compressed, restart the
+     * Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try(Connection connection = ConnectionUtil.getConnection()){
+            PreparedStatement ps = connection.prepareStatement("insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, 1669947793)");
+            for(int i = 0; i < 50; i++){
+                ps.setString(1, "compressible message " + i);
+                ps.executeUpdate();
+            }
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending two http requests to GET localhost:8080/messages with Accept-Encoding: gzip, and one without
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same gzip bytes for both gzip requests, which decompress to the uncompressed list
+     *  Headers: Content-Encoding: gzip and a different ETag than the uncompressed response
+     */
+    @Test
+    public void getAllMessagesGzipped() throws IOException, InterruptedException {
+        HttpResponse<byte[]> first = get("/messages", "gzip, deflate");
+        HttpResponse<byte[]> second = get("/messages", "gzip, deflate");
+        HttpResponse<byte[]> identity = get("/messages", null);
+
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals("gzip", first.headers().firstValue("Content-Encoding").orElse(null));
+        Assert.assertTrue(first.body().length < identity.body().length);
+        Assert.assertArrayEquals(first.body(), second.body());
+        Assert.assertFalse(identity.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertNotEquals(identity.headers().firstValue("ETag"), first.headers().firstValue("ETag"));
+
+        byte[] decompressed = new GZIPInputStream(new ByteArrayInputStream(first.body())).readAllBytes();
+        Assert.assertArrayEquals(identity.body(), decompressed);
+        List<Message> messages = objectMapper.readValue(decompressed, new TypeReference<List<Message>>(){});
+        Assert.assertEquals(51, messages.size());
+
+        String metrics = new String(get("/metrics", null).body());
+        Assert.assertTrue(metrics, metrics.contains("response_bodies_total{encoding=\"gzip\",source=\"encoded\"} 1\n"));
+        Assert.assertTrue(metrics, metrics.contains("response_bodies_total{encoding=\"gzip\",source=\"cache\"} 1\n"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 and GET localhost:8080/messages?latest=1 with
+     * Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Headers: no Content-Encoding, since the bodies are below the compression threshold
+     */
+    @Test
+    public void smallResponsesNotCompressed() throws IOException, InterruptedException {
+        for(String path : Arrays.asList("/messages/1", "/messages?latest=1")){
+            HttpResponse<byte[]> response = get(path, "gzip");
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertFalse(path, response.headers().firstValue("Content-Encoding").isPresent());
+        }
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if(acceptEncoding != null)
+            request.header("Accept-Encoding", acceptEncoding);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
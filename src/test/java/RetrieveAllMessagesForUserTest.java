@@ -89,4 +89,51 @@ public class RetrieveAllMessagesForUserTest {
         List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
         Assert.assertTrue(actualResult.isEmpty());
     }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/1/messages before and after creating, updating and deleting
+     * a message of account 1, so the list is read from the account's timeline once it has been filled
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of a list of messages reflecting every change, oldest first
+     */
+    @Test
+    public void getAllMessagesFromUserReflectsChanges() throws IOException, InterruptedException {
+        Message existing = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(List.of(existing), getMessagesOfAccount1());
+
+        HttpRequest createRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", \"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(createRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(List.of(existing, new Message(2, 1, "hello message", 1669947793)), getMessagesOfAccount1());
+
+        HttpRequest updateRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(updateRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(List.of(existing, new Message(2, 1, "updated message", 1669947793)), getMessagesOfAccount1());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(List.of(new Message(2, 1, "updated message", 1669947793)), getMessagesOfAccount1());
+    }
+
+    private List<Message> getMessagesOfAccount1() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
 }
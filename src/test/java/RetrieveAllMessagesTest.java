@@ -7,7 +7,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -98,6 +100,91 @@ public class RetrieveAllMessagesTest {
     }
 
 
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON represenation of a list of message objects, written as the rows are read
+     */
+    @Test
+    public void getAllMessagesStreamed() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=true"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+
+    /**
+     * Sending several http requests to POST localhost:8080/messages at once, a DELETE localhost:8080/messages/{message_id}
+     * for one of them, then GET localhost:8080/messages?latest=5
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON represenation of the five newest remaining messages, newest first, the same as the full list
+     */
+    @Test
+    public void getLatestMessages() throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<String>>> posts = new ArrayList<>();
+        for(int i = 0; i < 8; i++){
+            HttpRequest postRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"latest " + i + "\",\"time_posted_epoch\":1669947793}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            posts.add(webClient.sendAsync(postRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+        for(CompletableFuture<HttpResponse<String>> post : posts)
+            Assert.assertEquals(200, post.join().statusCode());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/8"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?latest=5"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> latest = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+
+        HttpRequest allRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        List<Message> expectedResult = objectMapper.readValue(webClient.send(allRequest, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<List<Message>>(){});
+        expectedResult.sort(Comparator.comparingInt(Message::getMessage_id).reversed());
+        Assert.assertEquals(expectedResult.subList(0, 5), latest);
+        Assert.assertEquals(9, latest.get(0).getMessage_id());
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?latest=0
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getLatestMessagesInvalidCount() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?latest=0"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
 
     private void removeInitialMessage(){
         try {
@@ -87,4 +87,64 @@ public class RetrieveMessageByMessageIdTest {
     }
 
 
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1, then PATCH localhost:8080/messages/1, then
+     * GET localhost:8080/messages/1 again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the updated message, not the one read before the update
+     */
+    @Test
+    public void getMessageGivenMessageIdAfterUpdate() throws IOException, InterruptedException {
+        getMessage(1);
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> response = getMessage(1);
+        Assert.assertEquals(200, response.statusCode());
+        Message expectedResult = new Message(1, 1, "updated message", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/2 (message id 2 does not exist yet), then
+     * POST localhost:8080/messages, then GET localhost:8080/messages/2 again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: empty the first time, then the new message
+     */
+    @Test
+    public void getMessageGivenMessageIdAfterCreate() throws IOException, InterruptedException {
+        Assert.assertTrue(getMessage(2).body().isEmpty());
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> response = getMessage(2);
+        Assert.assertEquals(200, response.statusCode());
+        Message expectedResult = new Message(2, 1, "hello message", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(response.body(), Message.class));
+    }
+
+    private HttpResponse<String> getMessage(int messageId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
 }
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagePageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Three more messages are posted so that there are four in total.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for(int i = 2; i <= 4; i++){
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"test message " + i + "\", " +
+                            "\"time_posted_epoch\": " + (1669947800 - i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=3, then following next_cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a page with messages 1-3 and a cursor, then a page with message 4 and no cursor
+     */
+    @Test
+    public void getMessagePagesByMessageId() throws IOException, InterruptedException {
+        MessagePage firstPage = getPage("http://localhost:8080/messages?limit=3");
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947798));
+        expectedResult.add(new Message(3, 1, "test message 3", 1669947797));
+        Assert.assertEquals(expectedResult, firstPage.getMessages());
+        Assert.assertNotNull(firstPage.getNext_cursor());
+
+        MessagePage secondPage = getPage("http://localhost:8080/messages?limit=3&after=" + firstPage.getNext_cursor());
+        List<Message> expectedSecondPage = new ArrayList<>();
+        expectedSecondPage.add(new Message(4, 1, "test message 4", 1669947796));
+        Assert.assertEquals(expectedSecondPage, secondPage.getMessages());
+        Assert.assertNull(secondPage.getNext_cursor());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/1/messages?limit=2&order_by=time_posted_epoch, then
+     * following next_cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the account's messages ordered by time, two per page
+     */
+    @Test
+    public void getAccountMessagePagesByTime() throws IOException, InterruptedException {
+        MessagePage firstPage = getPage("http://localhost:8080/accounts/1/messages?limit=2&order_by=time_posted_epoch");
+        Assert.assertEquals(2, firstPage.getMessages().size());
+        Assert.assertEquals(1, firstPage.getMessages().get(0).getMessage_id());
+        Assert.assertEquals(4, firstPage.getMessages().get(1).getMessage_id());
+
+        MessagePage secondPage = getPage("http://localhost:8080/accounts/1/messages?limit=2&order_by=time_posted_epoch&after="
+                + firstPage.getNext_cursor());
+        Assert.assertEquals(2, secondPage.getMessages().size());
+        Assert.assertEquals(3, secondPage.getMessages().get(0).getMessage_id());
+        Assert.assertEquals(2, secondPage.getMessages().get(1).getMessage_id());
+        Assert.assertNull(secondPage.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=0
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void getMessagePageInvalidLimit() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=0"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertTrue(response.body().toString().isEmpty());
+    }
+
+    private MessagePage getPage(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body().toString(), MessagePage.class);
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and add a few messages to search, restart the Javalin app, and create a
+     * new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try(Connection connection = ConnectionUtil.getConnection()){
+            PreparedStatement ps = connection.prepareStatement("insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, 1669947793)");
+            for(String text : Arrays.asList("The quick brown fox", "Brown, quick fox jumps!", "a lazy dog")){
+                ps.setString(1, text);
+                ps.executeUpdate();
+            }
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=FOX+quick
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages with both terms, in any case, newest first
+     */
+    @Test
+    public void searchAllTerms() throws IOException, InterruptedException {
+        Assert.assertEquals(Arrays.asList(3, 2), search("FOX+quick"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q="quick brown"
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the message with the terms next to each other, in order
+     */
+    @Test
+    public void searchPhrase() throws IOException, InterruptedException {
+        Assert.assertEquals(Arrays.asList(2), search("%22quick%20brown%22"));
+        Assert.assertEquals(Arrays.asList(3, 2), search("quick+brown"));
+    }
+
+    /**
+     * Sending http requests to PATCH localhost:8080/messages/2, DELETE localhost:8080/messages/3 and
+     * POST localhost:8080/messages, then searching
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: results reflecting the new text, without the deleted message and with the new one, and no
+     *  stale index entries left for the updated message
+     */
+    @Test
+    public void searchAfterChanges() throws IOException, InterruptedException {
+        Assert.assertEquals(Arrays.asList(3, 2), search("fox"));
+
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"a slow green turtle\"}"))
+                .header("Content-Type", "application/json")
+                .build());
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .DELETE()
+                .build());
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"another fox\",\"time_posted_epoch\":1669947794}"))
+                .header("Content-Type", "application/json")
+                .build());
+
+        Assert.assertEquals(Arrays.asList(5), search("fox"));
+        Assert.assertEquals(Arrays.asList(2), search("turtle"));
+        Assert.assertEquals(new ArrayList<>(), search("jumps"));
+
+        //The old text's terms were removed from the index, so no search had to check and drop message 2
+        HttpResponse<String> metrics = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertTrue(metrics.body(), metrics.body().contains("search_candidates_total{result=\"rejected\"} 0\n"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/search with no q, a q without terms, and an invalid limit
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchInvalidQuery() throws IOException, InterruptedException {
+        for(String query : Arrays.asList("", "?q=%22%20%22", "?q=fox&limit=0")){
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/search" + query))
+                    .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(query, 400, response.statusCode());
+        }
+    }
+
+    private List<Integer> search(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=" + query))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Integer> ids = new ArrayList<>();
+        for(Message message : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}))
+            ids.add(message.getMessage_id());
+        return ids;
+    }
+
+    private void send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with session tokens required, and create a new
+     * webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("auth.tokens.required", "true");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("auth.tokens.required");
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/login, then POST localhost:8080/messages with the token it issued
+     *
+     * Expected Response:
+     *  Status Code: 200 for both, with the token in the X-Session-Token header of the login response
+     */
+    @Test
+    public void loginTokenAuthorizesCreateMessage() throws IOException, InterruptedException {
+        String token = login("testuser1", "password");
+        Assert.assertNotNull(token);
+
+        HttpResponse<String> response = webClient.send(createMessage(1, "Bearer " + token), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages without a token, and with a token whose last character
+     * was changed
+     *
+     * Expected Response:
+     *  Status Code: 401 for both
+     */
+    @Test
+    public void createMessageWithoutValidTokenUnauthorized() throws IOException, InterruptedException {
+        HttpResponse<String> noToken = webClient.send(createMessage(1, null), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(401, noToken.statusCode());
+
+        String token = login("testuser1", "password");
+        String tampered = token.substring(0, token.length() - 1) + (token.endsWith("A") ? "B" : "A");
+        HttpResponse<String> badToken = webClient.send(createMessage(1, "Bearer " + tampered), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(401, badToken.statusCode());
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages/1 with a token issued to an account that did not
+     * post message 1
+     *
+     * Expected Response:
+     *  Status Code: 403, and the message is still there
+     */
+    @Test
+    public void deleteMessageOfAnotherAccountForbidden() throws IOException, InterruptedException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"user2\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        String token = login("user2", "password");
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .header("Authorization", "Bearer " + token)
+                .build();
+        Assert.assertEquals(403, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertTrue(response.body().contains("\"message_id\":1"));
+    }
+
+    private String login(String username, String password) throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"" + username + "\", \"password\": \"" + password + "\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue(SocialMediaController.TOKEN_HEADER).orElse(null);
+    }
+
+    private HttpRequest createMessage(int postedBy, String authorization){
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\": " + postedBy + ", " +
+                        "\"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json");
+        if(authorization != null)
+            builder.header("Authorization", authorization);
+        return builder.build();
+    }
+}
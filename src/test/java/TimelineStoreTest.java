@@ -0,0 +1,74 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Cache.TimelineStore;
+import Model.Message;
+
+public class TimelineStoreTest {
+    TimelineStore timelines;
+    Message kept;
+
+    /**
+     * Before every test, create a timeline store and load account 1's timeline with one message.
+     */
+    @Before
+    public void setUp() {
+        timelines = new TimelineStore(10, 1 << 20);
+        kept = new Message(1, 1, "kept", 1669947792);
+        Assert.assertEquals(List.of(kept), timelines.getMessages(1, accountId -> List.of(kept)));
+    }
+
+    /**
+     * Publishing a message's delete to the timelines before its create, as happens when the creating request is slow
+     * to publish
+     *
+     * Expected Result:
+     *  The late create does not bring the deleted message back into the account's timeline
+     */
+    @Test
+    public void lateCreateAfterDeleteStaysDeleted() {
+        Message deleted = new Message(2, 1, "deleted before its create was published", 1669947793);
+
+        timelines.messageDeleted(deleted);
+        timelines.messageCreated(deleted);
+
+        Assert.assertEquals(List.of(kept), timelines.getMessages(1, accountId -> null));
+    }
+
+    /**
+     * Publishing a message's update to the timelines before its create
+     *
+     * Expected Result:
+     *  The late create adds the message with its updated text
+     */
+    @Test
+    public void lateCreateAfterUpdateKeepsUpdatedText() {
+        Message created = new Message(2, 1, "text before the update", 1669947793);
+        Message updated = new Message(2, 1, "updated before the create was published", 1669947793);
+
+        timelines.messageUpdated(updated);
+        timelines.messageCreated(created);
+
+        Assert.assertEquals(List.of(kept, updated), timelines.getMessages(1, accountId -> null));
+    }
+
+    /**
+     * Publishing a message's update to the timelines after its create
+     *
+     * Expected Result:
+     *  The message in the account's timeline has its updated text
+     */
+    @Test
+    public void updateReplacesCreatedMessage() {
+        Message created = new Message(2, 1, "text before the update", 1669947793);
+        Message updated = new Message(2, 1, "text after the update", 1669947793);
+
+        timelines.messageCreated(created);
+        timelines.messageUpdated(updated);
+
+        Assert.assertEquals(List.of(kept, updated), timelines.getMessages(1, accountId -> null));
+    }
+}
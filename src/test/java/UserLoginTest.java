@@ -12,6 +12,7 @@ import org.junit.Test;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
+import DAO.AccountDAO;
 import Model.Account;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
@@ -119,4 +120,41 @@ public class UserLoginTest {
         Assert.assertEquals("", response.body().toString());
 
     }
+
+    /**
+     * Sending an http request to POST localhost:8080/login twice for the test account, whose password is stored in
+     * plaintext by the test database, then once with the wrong password
+     *
+     * Expected Response:
+     *  Status Code: 200 for both valid logins, 401 for the wrong password
+     *  The stored password is replaced by a PBKDF2 hash after the first login
+     */
+    @Test
+    public void loginRehashesPlaintextPassword() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        String storedPassword = new AccountDAO().searchAccountByUsername("testuser1").getPassword();
+        Assert.assertTrue(storedPassword.startsWith("pbkdf2-sha256$"));
+
+        HttpResponse response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Account actualResult = new ObjectMapper().readValue(response.body().toString(), Account.class);
+        Assert.assertEquals(new Account(1, "testuser1", "password"), actualResult);
+
+        HttpRequest wrongPasswordRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"pass\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(401, webClient.send(wrongPasswordRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
 }
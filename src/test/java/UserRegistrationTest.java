@@ -141,4 +141,37 @@ public class UserRegistrationTest {
         Assert.assertEquals("", response.body().toString());
 
     }
+
+    /**
+     * Sending http requests to POST localhost:8080/register three times with the username of the account created by
+     * the test database, then GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 400 for every registration
+     *  Response Body: Prometheus text showing the username was flagged by the filter each time, and only looked up in
+     *  the database the first time
+     */
+    @Test
+    public void registerUserDuplicateUsernameFloodAnsweredFromMemory() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        for(int i = 0; i < 3; i++){
+            HttpResponse response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(400, response.statusCode());
+            Assert.assertEquals("", response.body().toString());
+        }
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        String metrics = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString()).body();
+        Assert.assertTrue(metrics.contains("username_filter_requests_total{result=\"maybe\"} 3\n"));
+        Assert.assertTrue(metrics.contains("username_cache_requests_total{result=\"miss\"} 1\n"));
+        Assert.assertTrue(metrics.contains("username_cache_requests_total{result=\"hit\"} 2\n"));
+    }
 }